@@ -1,6 +1,5 @@
 package analysis;
 
-import edu.stanford.nlp.simple.Sentence;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -11,6 +10,7 @@ import org.apache.http.impl.client.HttpClients;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import prep.Lemmatizer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -25,10 +25,13 @@ public class DSMClassifiers {
     public static final Double LSA_TRESH = 0.13;
     public static final Double GLOVE_TRESH = 0.04;
 
+    // Lemmatizer shared with the indexers, so that repeated terms are only annotated once
+    private static final Lemmatizer lemmatizer = Lemmatizer.getInstance();
+
     public static int w2vVote(String pivot, String comparison, String feature)throws IOException, JSONException {
-        pivot = new Sentence(pivot).lemma(0);
-        comparison = new Sentence(comparison).lemma(0);
-        feature = new Sentence(feature).lemma(0);
+        pivot = lemmatizer.lemma(pivot);
+        comparison = lemmatizer.lemma(comparison);
+        feature = lemmatizer.lemma(feature);
         if (Double.compare(getSimilarityDiff(pivot, comparison, feature, "W2V"), W2V_TRESH) > 0) {
             return 1;
         }else{
@@ -1,26 +1,59 @@
 package analysis;
 
 import indexation.GraphIndexer;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
-import org.apache.lucene.store.FSDirectory;
-import edu.stanford.nlp.simple.Sentence;
+import prep.Lemmatizer;
 import prep.Property;
+import search.LookupCollector;
+import search.SearcherRegistry;
+import search.ShardedReader;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A collection of discriminativity classifiers based on dictionary models
  */
 public class DictionaryClassifiers {
+    private static final long REFRESH_INTERVAL_SECONDS = 60;
+
+    // Searchers and cached properties of the indexes used by roleBasedVote, registered under their location.
+    // Opened by the first vote, and closed by closeIndexes or when the JVM exits
+    private static SearcherRegistry searchers;
+    // Locations of the indexes registered with searchers, so that votes only register their index once
+    private static final Map<String, Path> registered = new ConcurrentHashMap<>();
+    // Refreshes the registered indexes in case they have been rebuilt, on a daemon thread so that it doesn't keep
+    // the JVM running
+    private static ScheduledExecutorService refresher;
+    // Lemmatizer shared with the indexers, so that repeated terms are only annotated once
+    private static final Lemmatizer lemmatizer = Lemmatizer.getInstance();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                closeIndexes();
+            } catch (IOException e) {
+                System.err.println("Failed to close the indexes of role based votes");
+                e.printStackTrace();
+            }
+        }));
+    }
+
     public static int wordNetVote(String pivot, String comparison, String feature, String indexLocation) {
-        pivot = new Sentence(pivot).lemma(0);
-        comparison = new Sentence(comparison).lemma(0);
-        feature = new Sentence(feature).lemma(0);
+        pivot = lemmatizer.lemma(pivot);
+        comparison = lemmatizer.lemma(comparison);
+        feature = lemmatizer.lemma(feature);
         if (discriminativeQuery(pivot, comparison, feature, indexLocation)) {
             return 1;
         } else {
@@ -29,9 +62,9 @@ public class DictionaryClassifiers {
     }
 
     public static int wikipediaVote(String pivot, String comparison, String feature, String indexLocation) {
-        pivot = new Sentence(pivot).lemma(0);
-        comparison = new Sentence(comparison).lemma(0);
-        feature = new Sentence(feature).lemma(0);
+        pivot = lemmatizer.lemma(pivot);
+        comparison = lemmatizer.lemma(comparison);
+        feature = lemmatizer.lemma(feature);
         if (discriminativeQuery(pivot, comparison, feature, indexLocation)) {
             return 1;
         } else {
@@ -41,9 +74,9 @@ public class DictionaryClassifiers {
 
 
     public static int visualGenomeVote(String pivot, String comparison, String feature, String indexLocation) {
-        pivot = new Sentence(pivot).lemma(0);
-        comparison = new Sentence(comparison).lemma(0);
-        feature = new Sentence(feature).lemma(0);
+        pivot = lemmatizer.lemma(pivot);
+        comparison = lemmatizer.lemma(comparison);
+        feature = lemmatizer.lemma(feature);
         if (discriminativeQuery(pivot, comparison, feature, indexLocation)) {
             return 1;
         } else {
@@ -52,9 +85,9 @@ public class DictionaryClassifiers {
     }
 
     public static int vgRelationshipVote(String pivot, String comparison, String feature, String indexLocation) {
-        pivot = new Sentence(pivot).lemma(0);
-        comparison = new Sentence(comparison).lemma(0);
-        feature = new Sentence(feature).lemma(0);
+        pivot = lemmatizer.lemma(pivot);
+        comparison = lemmatizer.lemma(comparison);
+        feature = lemmatizer.lemma(feature);
         if (discriminativeQuery(pivot, comparison, feature, indexLocation)) {
             return 1;
         } else {
@@ -95,20 +128,26 @@ public class DictionaryClassifiers {
         BooleanQuery queryPivot = builderPivot.build();
         BooleanQuery queryComparison = builderComparison.build();
 
-        DirectoryReader reader;
+        IndexReader reader;
         IndexSearcher searcher;
         try {
-            reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexLocation)));
+            reader = ShardedReader.open(Paths.get(indexLocation));
             searcher = new IndexSearcher(reader);
         } catch (IOException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("Invalid WordNet Index directory specified.");
         }
 
+        // Only whether there is a match matters, so a single document is collected from each query,
+        // terminating early within indexes sorted by definiendum
         ScoreDoc[] resultsComparison, resultsPivot;
         try {
-            resultsComparison = searcher.search(queryComparison, 10).scoreDocs;
-            resultsPivot = searcher.search(queryPivot, 10).scoreDocs;
+            LookupCollector comparisonCollector = new LookupCollector(reader, 1);
+            searcher.search(queryComparison, comparisonCollector);
+            resultsComparison = comparisonCollector.topDocs().scoreDocs;
+            LookupCollector pivotCollector = new LookupCollector(reader, 1);
+            searcher.search(queryPivot, pivotCollector);
+            resultsPivot = pivotCollector.topDocs().scoreDocs;
         } catch (IOException e) {
             throw new RuntimeException("Failed to obtain search results for WordNet Index query.");
         }
@@ -120,25 +159,26 @@ public class DictionaryClassifiers {
 
     public static int roleBasedVote(
             String pivot, String comparison, String feature, String indexLocation) throws IOException {
-        TermQuery pivotQuery = new TermQuery(new Term("definiendum", pivot));
-        TermQuery comparisonQuery = new TermQuery(new Term("definiendum", comparison));
-
-
-        DirectoryReader reader;
-        IndexSearcher searcher;
+        List<List<Property>> pivotDefinitions, comparisonDefinitions;
+        SearcherRegistry searchers = searchers();
         try {
-            reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexLocation)));
-            searcher = new IndexSearcher(reader);
-        } catch (IOException e) {
+            // Indexes are registered under their location by the first vote on them
+            registered.computeIfAbsent(indexLocation, location -> {
+                try {
+                    searchers.register(location, Paths.get(location));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return Paths.get(location);
+            });
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("Invalid Index directory specified.");
         }
 
-
-        ScoreDoc[] resultsComparison, resultsPivot;
         try {
-            resultsPivot = searcher.search(pivotQuery, 50).scoreDocs;
-            resultsComparison = searcher.search(comparisonQuery, 50).scoreDocs;
+            pivotDefinitions = searchers.getDefinitions(indexLocation, pivot);
+            comparisonDefinitions = searchers.getDefinitions(indexLocation, comparison);
         } catch (IOException e) {
             throw new RuntimeException("Failed to obtain search results for Index query.");
         }
@@ -147,21 +187,21 @@ public class DictionaryClassifiers {
         ArrayList<Property> pivotFeatureProperties = new ArrayList<>();
         ArrayList<Property> comparisonFeatureProperties = new ArrayList<>();
 
-        for (ScoreDoc pivotDoc : resultsPivot) {
-            for (IndexableField field : searcher.doc(pivotDoc.doc).getFields()) {
-                for (String term : field.stringValue().split(" ")) {
+        for (List<Property> pivotDefinition : pivotDefinitions) {
+            for (Property property : pivotDefinition) {
+                for (String term : property.getValue().split(" ")) {
                     if (term.equals(feature)) {
-                        pivotFeatureProperties.add(new Property(term, field.name()));
+                        pivotFeatureProperties.add(new Property(term, property.getRole()));
                     }
                 }
             }
         }
 
-        for (ScoreDoc comparisonDoc : resultsComparison) {
-            for (IndexableField field : searcher.doc(comparisonDoc.doc).getFields()) {
-                for (String term : field.stringValue().split(" ")) {
+        for (List<Property> comparisonDefinition : comparisonDefinitions) {
+            for (Property property : comparisonDefinition) {
+                for (String term : property.getValue().split(" ")) {
                     if (term.equals(feature)) {
-                        comparisonFeatureProperties.add(new Property(term, field.name()));
+                        comparisonFeatureProperties.add(new Property(term, property.getRole()));
                     }
                 }
             }
@@ -179,5 +219,45 @@ public class DictionaryClassifiers {
 
     }
 
+    /**
+     * Closes the indexes opened by <code>roleBasedVote</code>, which reopens them if it's called again.
+     * Votes mustn't run while the indexes are being closed.
+     *
+     * @throws IOException if an index can't be closed
+     */
+    public static synchronized void closeIndexes() throws IOException {
+        if (searchers == null) {
+            return;
+        }
+        refresher.shutdownNow();
+        registered.clear();
+        try {
+            searchers.close();
+        } finally {
+            searchers = null;
+            refresher = null;
+        }
+    }
 
+    private static synchronized SearcherRegistry searchers() {
+        if (searchers == null) {
+            SearcherRegistry opened = new SearcherRegistry();
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "index-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    opened.refresh();
+                } catch (IOException | RuntimeException e) {
+                    // An exception escaping the task would cancel all later refreshes
+                    System.err.println("Failed to refresh the indexes of role based votes");
+                    e.printStackTrace();
+                }
+            }, REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            searchers = opened;
+        }
+        return searchers;
+    }
 }
@@ -1,22 +1,34 @@
 package analysis;
 
 import indexation.GraphIndexer;
-import org.apache.lucene.index.DirectoryReader;
+import indexation.IndexFormat;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.store.FSDirectory;
+import search.PropertySets;
+import search.ShardedReader;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /***
  * Methods for extracting common or differing properties between two terms.
  */
 public class PropertyExtractors {
+    // Shards of sharded indexes are scanned in parallel, on daemon threads so that they don't keep the JVM running
+    private static final ExecutorService shardExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "shard-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     public static void main(String args[]) throws IOException {
         String[] terms = {"plane", "train", "jaguar", "drink"};
         ArrayList<ArrayList<Property>> propertyFrame = new ArrayList<>(3 * (terms.length + 1));
@@ -150,19 +162,15 @@ public class PropertyExtractors {
     public static ArrayList<ArrayList<Property>> commonProperties(String first, String second) throws IOException {
         ArrayList<Property> firstProperties = getProperties(first);
         ArrayList<Property> secondProperties = getProperties(second);
-        firstProperties.retainAll(secondProperties);
-        secondProperties.retainAll(firstProperties);
         ArrayList<ArrayList<Property>> result = new ArrayList<>(2);
-        result.add(firstProperties);
-        result.add(secondProperties);
+        result.add(new ArrayList<>(PropertySets.intersection(firstProperties, secondProperties)));
+        result.add(new ArrayList<>(PropertySets.intersection(secondProperties, firstProperties)));
 
         return result;
     }
 
     public static ArrayList<Property> complimentProperties(String first, String second) throws IOException {
-        ArrayList<Property> compliment = getProperties(first);
-        compliment.removeAll(getProperties(second));
-        return compliment;
+        return new ArrayList<>(PropertySets.difference(getProperties(first), getProperties(second)));
     }
 
     /**
@@ -188,22 +196,24 @@ public class PropertyExtractors {
         String[] sources = {"newWNWithHyp", "WKT", "VGAttributes", "VGRelationships", "wikipedia"};
 
         for (String source : sources) {
-            DirectoryReader reader;
+            IndexReader reader;
             IndexSearcher searcher;
             try {
-                reader = DirectoryReader.open(FSDirectory.open(Paths.get("src/main/resources/" + source)));
-                searcher = new IndexSearcher(reader);
+                // Sharded indexes are opened as a single reader over all shards
+                reader = ShardedReader.open(Paths.get("src/main/resources/" + source));
+                searcher = new IndexSearcher(reader, shardExecutor);
             } catch (IOException e) {
                 e.printStackTrace();
                 throw new IllegalArgumentException("Invalid WordNet Index directory specified.");
             }
 
             ScoreDoc[] results;
-            results = searcher.search(query, 10000).scoreDocs;
+            // Definitions held by several shards are only read from their primary copy
+            results = searcher.search(ShardedReader.primaryOnly(reader, query), 10000).scoreDocs;
 
             for (ScoreDoc result : results) {
                 try {
-                    String[] names = searcher.doc(result.doc).getValues(GraphIndexer.BLIND_FIELD_NAME);
+                    List<String> names = IndexFormat.readBlindValues(reader, result.doc);
                     for (String name : names) {
                         Property currentProperty = new Property(name, source);
                         if (properties.contains(currentProperty)) {
@@ -0,0 +1,137 @@
+package demo;
+
+import metrics.Metrics;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import search.Deadline;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits a bounded number of concurrent requests to the wrapped handler and gives each of them a deadline.
+ * <p>
+ * Requests arriving while all permits are taken wait for one in a bounded queue, for at most their deadline.
+ * Requests that find the queue full, or whose deadline expires while waiting, are answered with
+ * 503 Service Unavailable and a <code>Retry-After</code> header, rather than slowing down everyone else.
+ * <p>
+ * The deadline of an admitted request is available to the wrapped handler through <code>getDeadline</code>.
+ * Endpoints whose requests take much longer than others, e.g. batches, should get limits of their own, so that
+ * they can't hold the permits of the other endpoints for long.
+ */
+public class AdmissionHandler extends HandlerWrapper {
+    private static final String DEADLINE_ATTRIBUTE = "deadline";
+    private static final String REJECTED_ATTRIBUTE = "rejected";
+
+    private final String endpoint;
+    private final Limits limits;
+    private final Metrics metrics;
+
+    /**
+     * @param endpoint name of the endpoint in the metrics
+     * @param limits   limits shared by all admission controlled endpoints
+     * @param metrics  metrics rejected requests are recorded in
+     * @param handler  handler of the admitted requests
+     */
+    public AdmissionHandler(String endpoint, Limits limits, Metrics metrics, Handler handler) {
+        this.endpoint = endpoint;
+        this.limits = limits;
+        this.metrics = metrics;
+        setHandler(handler);
+    }
+
+    /**
+     * @return deadline of <code>request</code>, unlimited if the request hasn't passed an <code>AdmissionHandler</code>
+     */
+    public static Deadline getDeadline(Request request) {
+        Object deadline = request.getAttribute(DEADLINE_ATTRIBUTE);
+        return deadline instanceof Deadline ? (Deadline) deadline : Deadline.unlimited();
+    }
+
+    /**
+     * @return whether <code>request</code> has been rejected by an <code>AdmissionHandler</code>
+     */
+    public static boolean isRejected(Request request) {
+        return request.getAttribute(REJECTED_ATTRIBUTE) != null;
+    }
+
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException, ServletException {
+        Deadline deadline = Deadline.after(limits.deadlineMillis);
+        boolean admitted;
+        try {
+            admitted = limits.admit(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            metrics.recordRejected(endpoint);
+            baseRequest.setAttribute(REJECTED_ATTRIBUTE, Boolean.TRUE);
+            baseRequest.setHandled(true);
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(limits.getRetryAfterSeconds()));
+            return;
+        }
+
+        try {
+            baseRequest.setAttribute(DEADLINE_ATTRIBUTE, deadline);
+            super.handle(target, baseRequest, request, response);
+            if (deadline.isPartial()) {
+                metrics.recordPartial(endpoint);
+            }
+        } finally {
+            limits.permits.release();
+        }
+    }
+
+    /**
+     * Bounds on the requests admitted to all admission controlled endpoints together.
+     */
+    public static class Limits {
+        private final Semaphore permits;
+        private final int maxQueued;
+        private final long deadlineMillis;
+        private final AtomicInteger queued = new AtomicInteger();
+
+        /**
+         * @param maxRequests    number of requests handled concurrently
+         * @param maxQueued      number of requests that may wait for one of the handled requests to finish
+         * @param deadlineMillis time in which a request has to be answered, including the time spent waiting
+         */
+        public Limits(int maxRequests, int maxQueued, long deadlineMillis) {
+            this.permits = new Semaphore(maxRequests, true);
+            this.maxQueued = maxQueued;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        private boolean admit(Deadline deadline) throws InterruptedException {
+            if (permits.tryAcquire()) {
+                return true;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                return false;
+            }
+            try {
+                return permits.tryAcquire(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+
+        private long getRetryAfterSeconds() {
+            // A rejected client should retry once the queued requests have had their time
+            return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(deadlineMillis + 999));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package demo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.lucene.search.IndexSearcher;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.UrlEncoded;
+import prep.Property;
+import search.Deadline;
+import search.SearcherRegistry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Handles a batch of role based discriminativity queries.
+ * <p>
+ * The request body is a stream of newline delimited JSON objects with <code>pivot</code>, <code>comparison</code>
+ * and <code>feature</code> fields, the response is a stream of newline delimited JSON objects,
+ * one per triple, written as soon as the triple has been scored.
+ * Properties of terms that have already been looked up are reused through the shared property cache.
+ * <p>
+ * The whole batch has to be scored by the deadline the <code>AdmissionHandler</code> gives it. Triples whose
+ * lookups are cut off by the deadline are marked as partial, and once it has expired the batch ends with an error
+ * object naming the first line that wasn't scored. A malformed line ends the batch the same way, since the lines
+ * after it can't be told apart.
+ */
+public class BatchRoleBasedVoteHandler extends AbstractHandler {
+    // Number of results written before the output is flushed to the client
+    private static final int FLUSH_INTERVAL = 100;
+
+    // Searchers shared by all requests to the server
+    private final SearcherRegistry searchers;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public BatchRoleBasedVoteHandler(SearcherRegistry searchers) {
+        this.searchers = searchers;
+    }
+
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+
+        if (!request.getMethod().equals("POST")) {
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            response.setHeader("Allow", "POST");
+            return;
+        }
+
+        // Sources are read from the query string only, since getParameter could consume the body holding the triples
+        MultiMap<String> queryParameters = new MultiMap<>();
+        if (request.getQueryString() != null) {
+            UrlEncoded.decodeUtf8To(request.getQueryString(), queryParameters);
+        }
+        String[] indexNames = Sources.parse(queryParameters.getValue("sources", 0), searchers);
+        if (indexNames == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown source");
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+
+        IndexSearcher[] indexSearchers = new IndexSearcher[indexNames.length];
+
+        try (JsonParser parser = jsonFactory.createParser(request.getInputStream());
+             JsonGenerator outputGenerator = jsonFactory.createGenerator(response.getWriter())) {
+            // Results are separated by new lines rather than the default space
+            outputGenerator.setRootValueSeparator(null);
+
+            // The same searchers are used for the whole batch, so that all triples are scored against the same data
+            for (int i = 0; i < indexNames.length; i++) {
+                indexSearchers[i] = searchers.acquire(indexNames[i]);
+            }
+
+            Deadline deadline = AdmissionHandler.getDeadline(baseRequest);
+            int line = 0;
+            try {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    line++;
+                    if (deadline.isExpired()) {
+                        outputGenerator.writeStartObject();
+                        outputGenerator.writeStringField("error", "Deadline expired, triples from line " + line
+                                + " on weren't scored");
+                        outputGenerator.writeEndObject();
+                        outputGenerator.writeRaw('\n');
+                        deadline.markPartial();
+                        break;
+                    }
+                    String pivot = null, comparison = null, feature = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String fieldName = parser.getCurrentName();
+                        if (!parser.nextToken().isScalarValue()) {
+                            // Objects and arrays are skipped whole, so that the next field is read from after them
+                            parser.skipChildren();
+                            continue;
+                        }
+                        switch (fieldName) {
+                            case "pivot":
+                                pivot = parser.getValueAsString();
+                                break;
+                            case "comparison":
+                                comparison = parser.getValueAsString();
+                                break;
+                            case "feature":
+                                feature = parser.getValueAsString();
+                                break;
+                        }
+                    }
+
+                    outputGenerator.writeStartObject();
+                    if (pivot == null | comparison == null | feature == null) {
+                        outputGenerator.writeStringField("error", "Invalid request on line " + line);
+                    } else {
+                        outputGenerator.writeStringField("pivot", pivot);
+                        outputGenerator.writeStringField("comparison", comparison);
+                        outputGenerator.writeStringField("feature", feature);
+
+                        for (int i = 0; i < indexNames.length; i++) {
+                            List<Property> pivotProperties = RoleBasedVote.findProperties(searchers, indexNames[i],
+                                    indexSearchers[i], pivot, deadline);
+                            List<Property> comparisonProperties = RoleBasedVote.findProperties(searchers, indexNames[i],
+                                    indexSearchers[i], comparison, deadline);
+                            RoleBasedVote vote = RoleBasedVote.decide(pivot, comparison, feature,
+                                    pivotProperties, comparisonProperties, searchers.getMetrics(), indexNames[i]);
+
+                            outputGenerator.writeArrayFieldStart(indexNames[i]);
+                            outputGenerator.writeString(String.valueOf(vote.isDiscriminative()));
+                            outputGenerator.writeString(vote.getExplanation());
+                            outputGenerator.writeEndArray();
+                        }
+                        if (deadline.isPartial()) {
+                            // The lookups of this triple have been cut off, so its votes may be wrong
+                            outputGenerator.writeBooleanField("partial", true);
+                        }
+                    }
+                    outputGenerator.writeEndObject();
+                    outputGenerator.writeRaw('\n');
+
+                    if (line % FLUSH_INTERVAL == 0) {
+                        outputGenerator.flush();
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                // The rest of the stream can't be parsed once a line is malformed, so the batch ends there
+                outputGenerator.writeStartObject();
+                outputGenerator.writeStringField("error", "Malformed request on line "
+                        + (e.getLocation() == null ? line + 1 : e.getLocation().getLineNr())
+                        + ", triples from there on weren't scored: " + e.getOriginalMessage());
+                outputGenerator.writeEndObject();
+                outputGenerator.writeRaw('\n');
+            }
+        } finally {
+            for (int i = 0; i < indexNames.length; i++) {
+                if (indexSearchers[i] != null) {
+                    searchers.release(indexNames[i], indexSearchers[i]);
+                }
+            }
+        }
+    }
+}
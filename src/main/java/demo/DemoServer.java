@@ -1,41 +1,161 @@
 package demo;
 
+import metrics.Metrics;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import search.SearcherRegistry;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class DemoServer {
+    // How often the searchers check whether an index has changed on disk
+    private static final long REFRESH_INTERVAL_SECONDS = 60;
+    // Number of threads on which the indexes are searched concurrently
+    private static final int SEARCH_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    // Number of index lookups that may wait for a search thread before requests search on their own thread
+    private static final int SEARCH_QUEUE_SIZE = 64 * SEARCH_THREADS;
+
     public static void main(String[] args) throws Exception{
-        // Location of the index folder relative to the location from which the program is run
-        String indexFolderLocation;
+        ServerOptions options;
         try {
-            indexFolderLocation = args[0];
-        }catch (ArrayIndexOutOfBoundsException e){
-            System.out.println("Please provide the path to the 'indexes' folder" +
-                    " relative to the location from which the script is run");
+            options = ServerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(ServerOptions.USAGE);
             return;
         }
 
-        Server server = new Server(8080);
+        // Requests as well as the index lookups they fan out to either run on virtual threads,
+        // or on bounded pools of platform threads
+        ThreadPool requestThreadPool;
+        ExecutorService searchExecutor;
+        // Shards are searched on an executor of their own, since the lookups waiting for them run on searchExecutor
+        ExecutorService shardExecutor;
+        if (options.useVirtualThreads()) {
+            try {
+                requestThreadPool = new ExecutorThreadPool(newVirtualThreadExecutor());
+                searchExecutor = newVirtualThreadExecutor();
+                shardExecutor = newVirtualThreadExecutor();
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+        } else {
+            requestThreadPool = new QueuedThreadPool(options.getThreads());
+            searchExecutor = new ThreadPoolExecutor(SEARCH_THREADS, SEARCH_THREADS,
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SEARCH_QUEUE_SIZE),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            shardExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+
+        // Location of the index folder relative to the location from which the program is run
+        String indexFolderLocation = options.getIndexFolderLocation();
+        // Every index directory inside the index folder can be searched, and is swapped in when it's replaced
+        SearcherRegistry searchers = new SearcherRegistry(new Metrics(), Paths.get(indexFolderLocation));
+        searchers.setShardExecutor(shardExecutor);
+        searchers.watch();
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor();
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                searchers.refresh();
+            } catch (IOException | RuntimeException e) {
+                // An exception escaping the task would cancel all later refreshes
+                System.err.println("Failed to refresh index searchers");
+                e.printStackTrace();
+            }
+        }, REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        Server server = new Server(requestThreadPool);
+        ServerConnector connector = new ServerConnector(server, options.getAcceptors(), options.getSelectors());
+        connector.setPort(options.getPort());
+        server.addConnector(connector);
+
+        RoleBasedVoteHandler roleBasedVoteHandler = new RoleBasedVoteHandler(searchers, searchExecutor);
+        PropertyHandler propertyHandler = new PropertyHandler(searchers, searchExecutor);
+
+        Metrics metrics = searchers.getMetrics();
+        // Shared by all contexts searching the indexes, so that they can't overload the server together
+        AdmissionHandler.Limits limits = new AdmissionHandler.Limits(options.getMaxRequests(),
+                options.getMaxQueued(), options.getDeadlineMillis());
+        // Batches run far longer than single requests, so they take permits of their own rather than holding
+        // the permits of the other contexts
+        AdmissionHandler.Limits batchLimits = new AdmissionHandler.Limits(options.getMaxBatches(),
+                options.getMaxBatches(), options.getBatchDeadlineMillis());
 
+        ContextHandler roleBasedFrontEndContext = apiContext("/roleBasedVote", limits, metrics,
+                new RoleBasedVoteFrontEndHandler(roleBasedVoteHandler));
+        ContextHandler roleBasedAPI = apiContext("/roleBasedVote/api", limits, metrics, roleBasedVoteHandler);
+        ContextHandler roleBasedBatchAPI = apiContext("/roleBasedVote/batch", batchLimits, metrics,
+                new BatchRoleBasedVoteHandler(searchers));
+        // Batches are posted, so the request must not be redirected to the path with a trailing slash
+        roleBasedBatchAPI.setAllowNullPathInfo(true);
 
-        ContextHandler roleBasedFrontEndContext = new ContextHandler("/roleBasedVote");
-        roleBasedFrontEndContext.setHandler(new RoleBasedVoteFrontEndHandler(indexFolderLocation));
-        ContextHandler roleBasedAPI = new ContextHandler("/roleBasedVote/api");
-        roleBasedAPI.setHandler(new RoleBasedVoteHandler(indexFolderLocation));
+        ContextHandler propertyFrontEnd = apiContext("/properties", limits, metrics,
+                new PropertyFrontEndHandler(propertyHandler));
+        ContextHandler propertyAPI = apiContext("/properties/api", limits, metrics, propertyHandler);
 
-        ContextHandler propertyFrontEnd = new ContextHandler("/properties");
-        propertyFrontEnd.setHandler(new PropertyFrontEndHandler(indexFolderLocation));
-        ContextHandler propertyAPI = new ContextHandler("/properties/api");
-        propertyAPI.setHandler(new PropertyHandler(indexFolderLocation));
+        ContextHandler discriminativeFeatureAPI = apiContext("/discriminativeFeatures/api", limits, metrics,
+                new DiscriminativeFeatureHandler(searchers, searchExecutor));
+
+        ContextHandler metricsContext = new ContextHandler("/metrics");
+        metricsContext.setHandler(new MetricsHandler(searchers));
+        metricsContext.setAllowNullPathInfo(true);
 
         ContextHandlerCollection handlerCollection= new ContextHandlerCollection();
-        handlerCollection.setHandlers(new Handler[]{roleBasedFrontEndContext, roleBasedAPI,
-                propertyFrontEnd, propertyAPI});
+        handlerCollection.setHandlers(new Handler[]{roleBasedFrontEndContext, roleBasedAPI, roleBasedBatchAPI,
+                propertyFrontEnd, propertyAPI, discriminativeFeatureAPI, metricsContext});
 
         server.setHandler(handlerCollection);
-        server.start();
-        server.join();
+        try {
+            server.start();
+            server.join();
+        } finally {
+            refresher.shutdownNow();
+            searchExecutor.shutdown();
+            shardExecutor.shutdown();
+            searchers.close();
+        }
+    }
+
+    /**
+     * Creates an admission controlled context whose requests are recorded in <code>metrics</code> under its path.
+     */
+    private static ContextHandler apiContext(String contextPath, AdmissionHandler.Limits limits, Metrics metrics,
+                                             Handler handler) {
+        ContextHandler context = new ContextHandler(contextPath);
+        context.setHandler(new InstrumentedHandler(contextPath, metrics,
+                new AdmissionHandler(contextPath, limits, metrics, handler)));
+        return context;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread.
+     * Looked up reflectively, since the project is compiled for Java 8.
+     *
+     * @return the virtual thread per task executor
+     * @throws UnsupportedOperationException if the running JVM doesn't support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, " +
+                    "use --threads=N to run on a pool of N platform threads instead");
+        }
     }
 }
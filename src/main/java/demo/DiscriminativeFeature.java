@@ -0,0 +1,166 @@
+package demo;
+
+import indexation.IndexFormat;
+import metrics.Metrics;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import prep.Property;
+import search.ShardedReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A feature that discriminates pivot from comparison within a single index, along with how rare it is in the index.
+ * <p>
+ * Every value of one of pivot's properties is a candidate feature, it is discriminative iff the triple
+ * (pivot, comparison, value) is discriminative according to <code>RoleBasedVote</code>.
+ */
+public class DiscriminativeFeature {
+    // Role of the field holding the definiendum, whose value is never a feature
+    private static final String DEFINIENDUM_ROLE = "definiendum";
+
+    private final String feature;
+    private final List<String> roles;
+    private final double idf;
+    private final RoleBasedVote vote;
+
+    private DiscriminativeFeature(String feature, List<String> roles, double idf, RoleBasedVote vote) {
+        this.feature = feature;
+        this.roles = roles;
+        this.idf = idf;
+        this.vote = vote;
+    }
+
+    public String getFeature() {
+        return feature;
+    }
+
+    /**
+     * @return roles in which pivot has the feature, but comparison doesn't
+     */
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return inverse document frequency of the feature in its roles, the higher the rarer the feature
+     */
+    public double getIdf() {
+        return idf;
+    }
+
+    public String getExplanation() {
+        return vote.getExplanation();
+    }
+
+    /**
+     * Finds all features discriminating pivot from comparison within a single index,
+     * in a single pass over each of their properties.
+     *
+     * @param pivot                first element in the triple
+     * @param comparison           second element in the triple
+     * @param pivotProperties      properties of pivot, see <code>RoleBasedVote.findProperties</code>
+     * @param comparisonProperties properties of comparison
+     * @param reader               reader of the index the properties were found in
+     * @param analyzer             analyzer the index was created with
+     * @param metrics              metrics the time spent explaining the features is recorded in
+     * @param indexName            name of the index the properties were found in
+     * @return discriminative features, in the order of pivot's properties
+     * @throws IOException if the document frequencies can't be read
+     */
+    public static List<DiscriminativeFeature> find(String pivot, String comparison,
+                                                   List<Property> pivotProperties, List<Property> comparisonProperties,
+                                                   IndexReader reader, Analyzer analyzer,
+                                                   Metrics metrics, String indexName) throws IOException {
+        Map<String, List<Property>> pivotFeatures = groupByValue(pivotProperties);
+        Map<String, List<Property>> comparisonFeatures = groupByValue(comparisonProperties);
+
+        List<DiscriminativeFeature> features = new ArrayList<>();
+        for (Map.Entry<String, List<Property>> entry : pivotFeatures.entrySet()) {
+            String feature = entry.getKey();
+            List<Property> pivotFeatureProperties = entry.getValue();
+            List<Property> comparisonFeatureProperties =
+                    comparisonFeatures.getOrDefault(feature, Collections.emptyList());
+
+            Set<Property> shared = new HashSet<>(comparisonFeatureProperties);
+            Set<String> roles = new LinkedHashSet<>();
+            for (Property property : pivotFeatureProperties) {
+                if (!shared.contains(property)) {
+                    roles.add(property.getRole());
+                }
+            }
+            if (roles.isEmpty()) {
+                continue;
+            }
+
+            // Only the properties with the value of feature are passed, so the vote doesn't filter all of them again
+            RoleBasedVote vote = RoleBasedVote.decide(pivot, comparison, feature,
+                    pivotFeatureProperties, comparisonFeatureProperties, metrics, indexName);
+            features.add(new DiscriminativeFeature(feature, new ArrayList<>(roles),
+                    idf(reader, analyzer, feature, roles), vote));
+        }
+        return features;
+    }
+
+    private static Map<String, List<Property>> groupByValue(List<Property> properties) {
+        Map<String, List<Property>> groups = new LinkedHashMap<>();
+        for (Property property : properties) {
+            if (!property.getRole().equals(DEFINIENDUM_ROLE) && property.getValue().trim().length() > 0) {
+                groups.computeIfAbsent(property.getValue(), value -> new ArrayList<>()).add(property);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Estimates the inverse document frequency of <code>feature</code> among the fields of <code>roles</code>.
+     * In version 1 indexes the number of documents containing a multi word feature is estimated by its rarest word.
+     */
+    private static double idf(IndexReader reader, Analyzer analyzer, String feature, Set<String> roles)
+            throws IOException {
+        // Definitions held by several shards are counted once
+        int numDocs = Math.max(1, ShardedReader.numDocs(reader));
+        // Role fields of version 2 indexes hold whole values, so the feature's frequency is known exactly
+        boolean keywordRoles = IndexFormat.hasKeywordRoles(reader);
+        long docFreq = 0;
+        for (String role : roles) {
+            if (keywordRoles) {
+                docFreq += ShardedReader.docFreq(reader, new Term(role, feature));
+                continue;
+            }
+            long roleDocFreq = -1;
+            for (String token : analyze(analyzer, role, feature)) {
+                int tokenDocFreq = ShardedReader.docFreq(reader, new Term(role, token));
+                roleDocFreq = roleDocFreq == -1 ? tokenDocFreq : Math.min(roleDocFreq, tokenDocFreq);
+            }
+            // Features consisting of stop words only are treated as if every document contained them
+            docFreq += roleDocFreq == -1 ? numDocs : roleDocFreq;
+        }
+        docFreq = Math.min(docFreq, numDocs);
+        return Math.log(1 + (numDocs - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    private static List<String> analyze(Analyzer analyzer, String field, String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        }
+        return tokens;
+    }
+}
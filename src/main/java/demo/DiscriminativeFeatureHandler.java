@@ -0,0 +1,185 @@
+package demo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import prep.Property;
+import search.Deadline;
+import search.SearcherRegistry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Handles a request for the K features that best discriminate pivot from comparison.
+ * <p>
+ * Features are ranked by their highest inverse document frequency among the indexes they're discriminative in,
+ * so that rare, specific features come before common ones.
+ */
+public class DiscriminativeFeatureHandler extends AbstractHandler {
+    // Name of the endpoint in the metrics
+    public static final String ENDPOINT = "/discriminativeFeatures/api";
+    private static final int DEFAULT_K = 10;
+    private static final int MAX_K = 100;
+    // Higher ranked features first, ties are broken alphabetically
+    private static final Comparator<RankedFeature> RANKING = Comparator
+            .comparingDouble((RankedFeature ranked) -> -ranked.idf)
+            .thenComparing(ranked -> ranked.feature);
+
+    // Searchers shared by all requests to the server
+    private final SearcherRegistry searchers;
+    // Executor on which the indexes are searched concurrently
+    private final ExecutorService executor;
+    // Analyzer the indexes were created with, used to look up the document frequencies of features
+    private final Analyzer analyzer = new StandardAnalyzer();
+
+    public DiscriminativeFeatureHandler(SearcherRegistry searchers, ExecutorService executor) {
+        this.searchers = searchers;
+        this.executor = executor;
+    }
+
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/json");
+
+        String pivot = baseRequest.getParameter("pivot");
+        String comparison = baseRequest.getParameter("comparison");
+        int k = parseK(baseRequest.getParameter("k"));
+        String[] indexNames = Sources.parse(baseRequest.getParameter("sources"), searchers);
+        if (pivot == null | comparison == null | k <= 0 | indexNames == null) {
+            response.getWriter().println("{Invalid request}");
+            return;
+        }
+
+        Deadline deadline = AdmissionHandler.getDeadline(baseRequest);
+        List<Future<List<DiscriminativeFeature>>> lookups = new ArrayList<>(indexNames.length);
+        for (String indexName : indexNames) {
+            lookups.add(executor.submit(() -> find(indexName, pivot, comparison, deadline)));
+        }
+
+        // Merges the features of all indexes, keeping the indexes in which each of them is discriminative
+        Map<String, RankedFeature> candidates = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < indexNames.length; i++) {
+                for (DiscriminativeFeature feature : Futures.await(lookups.get(i))) {
+                    candidates.computeIfAbsent(feature.getFeature(), RankedFeature::new).add(indexNames[i], feature);
+                }
+            }
+        } finally {
+            Futures.cancelAll(lookups);
+        }
+
+        JsonGenerator outputGenerator = new JsonFactory().createGenerator(response.getWriter());
+        outputGenerator.writeStartObject();
+        outputGenerator.writeStringField("pivot", pivot);
+        outputGenerator.writeStringField("comparison", comparison);
+        outputGenerator.writeArrayFieldStart("features");
+        for (RankedFeature ranked : top(candidates.values(), k)) {
+            outputGenerator.writeStartObject();
+            outputGenerator.writeStringField("feature", ranked.feature);
+            outputGenerator.writeNumberField("idf", ranked.idf);
+            for (Map.Entry<String, DiscriminativeFeature> entry : ranked.indexes.entrySet()) {
+                outputGenerator.writeObjectFieldStart(entry.getKey());
+                outputGenerator.writeArrayFieldStart("roles");
+                for (String role : entry.getValue().getRoles()) {
+                    outputGenerator.writeString(role);
+                }
+                outputGenerator.writeEndArray();
+                outputGenerator.writeStringField("explanation", entry.getValue().getExplanation());
+                outputGenerator.writeEndObject();
+            }
+            outputGenerator.writeEndObject();
+        }
+        outputGenerator.writeEndArray();
+        if (deadline.isPartial()) {
+            // Some lookups have been cut off by the deadline, so features may be missing
+            outputGenerator.writeBooleanField("partial", true);
+        }
+        outputGenerator.writeEndObject();
+        outputGenerator.close();
+    }
+
+    /**
+     * Finds the features discriminating pivot from comparison within a single index.
+     */
+    private List<DiscriminativeFeature> find(String indexName, String pivot, String comparison, Deadline deadline)
+            throws IOException {
+        long start = System.nanoTime();
+        List<DiscriminativeFeature> features = searchers.withSearcher(indexName, searcher -> {
+            List<Property> pivotProperties = RoleBasedVote.findProperties(searchers, indexName, searcher, pivot,
+                    deadline);
+            List<Property> comparisonProperties =
+                    RoleBasedVote.findProperties(searchers, indexName, searcher, comparison, deadline);
+            return DiscriminativeFeature.find(pivot, comparison, pivotProperties, comparisonProperties,
+                    searcher.getIndexReader(), analyzer, searchers.getMetrics(), indexName);
+        });
+        searchers.getMetrics().recordIndex(ENDPOINT, indexName, System.nanoTime() - start);
+        return features;
+    }
+
+    /**
+     * Selects the <code>k</code> highest ranked features with a bounded heap.
+     *
+     * @return at most <code>k</code> features, highest ranked first
+     */
+    static List<RankedFeature> top(Iterable<RankedFeature> candidates, int k) {
+        // The lowest ranked of the best features seen so far is at the head of the heap
+        PriorityQueue<RankedFeature> heap = new PriorityQueue<>(k + 1, RANKING.reversed());
+        for (RankedFeature candidate : candidates) {
+            heap.add(candidate);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<RankedFeature> top = new ArrayList<>(heap);
+        Collections.sort(top, RANKING);
+        return top;
+    }
+
+    private static int parseK(String k) {
+        if (k == null) {
+            return DEFAULT_K;
+        }
+        try {
+            return Math.min(Integer.parseInt(k), MAX_K);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A feature along with the indexes in which it is discriminative.
+     */
+    static class RankedFeature {
+        private final String feature;
+        private final Map<String, DiscriminativeFeature> indexes = new LinkedHashMap<>();
+        private double idf = Double.NEGATIVE_INFINITY;
+
+        RankedFeature(String feature) {
+            this.feature = feature;
+        }
+
+        void add(String indexName, DiscriminativeFeature discriminativeFeature) {
+            indexes.put(indexName, discriminativeFeature);
+            idf = Math.max(idf, discriminativeFeature.getIdf());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package demo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for waiting on the per-index lookups submitted by the handlers.
+ */
+class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Waits for <code>future</code> and returns its result, rethrowing the failure of the lookup as an IOException.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an index lookup");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Index lookup failed", e.getCause());
+        }
+    }
+
+    /**
+     * Cancels all of the <code>futures</code> that haven't completed yet, without interrupting running lookups,
+     * since interrupting a thread that reads from an index may close the index files.
+     */
+    static void cancelAll(Iterable<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+}
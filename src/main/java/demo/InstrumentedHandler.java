@@ -0,0 +1,52 @@
+package demo;
+
+import metrics.Metrics;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records the number, latency and failures of the requests handled by the wrapped handler.
+ * A request fails if the handler throws or responds with a server error. Requests rejected by an
+ * <code>AdmissionHandler</code> are counted as rejections by it, not as handled or failed requests.
+ */
+public class InstrumentedHandler extends HandlerWrapper {
+    private final String endpoint;
+    private final Metrics metrics;
+
+    /**
+     * @param endpoint name of the endpoint in the metrics
+     * @param metrics  metrics the requests are recorded in
+     * @param handler  handler of the requests
+     */
+    public InstrumentedHandler(String endpoint, Metrics metrics, Handler handler) {
+        this.endpoint = endpoint;
+        this.metrics = metrics;
+        setHandler(handler);
+    }
+
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException, ServletException {
+        metrics.startRequest(endpoint);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            super.handle(target, baseRequest, request, response);
+            failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        } finally {
+            if (AdmissionHandler.isRejected(baseRequest)) {
+                metrics.endRejectedRequest(endpoint);
+            } else {
+                metrics.endRequest(endpoint, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
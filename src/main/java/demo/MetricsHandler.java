@@ -0,0 +1,60 @@
+package demo;
+
+import metrics.Metrics;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import search.PropertyCache;
+import search.SearcherRegistry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the metrics of the <code>DemoServer</code> and the statistics of its property cache
+ * in the Prometheus text exposition format.
+ */
+public class MetricsHandler extends AbstractHandler {
+    private static final String[] NO_LABELS = {};
+
+    // Searchers shared by all requests to the server
+    private final SearcherRegistry searchers;
+
+    public MetricsHandler(SearcherRegistry searchers) {
+        this.searchers = searchers;
+    }
+
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+
+        PrintWriter out = response.getWriter();
+        searchers.getMetrics().write(out);
+
+        PropertyCache cache = searchers.getPropertyCache();
+        Metrics.writeCounter(out, "hawk_property_cache_hits_total", "Number of property cache hits.",
+                "counter", NO_LABELS, single(cache.getHits()));
+        Metrics.writeCounter(out, "hawk_property_cache_misses_total", "Number of property cache misses.",
+                "counter", NO_LABELS, single(cache.getMisses()));
+        Metrics.writeCounter(out, "hawk_property_cache_evictions_total", "Number of evicted property cache entries.",
+                "counter", NO_LABELS, single(cache.getEvictions()));
+        Metrics.writeCounter(out, "hawk_property_cache_entries", "Number of cached definienda.",
+                "gauge", NO_LABELS, single(cache.size()));
+        Metrics.writeCounter(out, "hawk_property_cache_weight_bytes", "Estimated memory taken up by the cache.",
+                "gauge", NO_LABELS, single(cache.getWeight()));
+    }
+
+    private static Map<List<String>, Long> single(long value) {
+        return Collections.singletonMap(Collections.emptyList(), value);
+    }
+}
@@ -12,11 +12,11 @@ import java.util.Scanner;
  * Handles the front end for the demo.
  */
 public class PropertyFrontEndHandler extends AbstractHandler {
-    // Location of the index folder relative to the location from which the program is run
-    private final String indexFolderLocation;
+    // API handler shared with the /properties/api context
+    private final PropertyHandler propertyHandler;
 
-    public PropertyFrontEndHandler(String indexFolderLocation) {
-        this.indexFolderLocation = indexFolderLocation;
+    public PropertyFrontEndHandler(PropertyHandler propertyHandler) {
+        this.propertyHandler = propertyHandler;
     }
 
     @Override
@@ -33,7 +33,7 @@ public class PropertyFrontEndHandler extends AbstractHandler {
         baseRequest.setAttribute("format", "HTML");
 
         // Writes the properties to response
-        new PropertyHandler(indexFolderLocation).handle(target, baseRequest, request, response);
+        propertyHandler.handle(target, baseRequest, request, response);
         baseRequest.setHandled(true);
 
     }
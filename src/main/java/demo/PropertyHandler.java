@@ -2,36 +2,38 @@ package demo;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.store.FSDirectory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import prep.Property;
+import search.Deadline;
+import search.PropertySets;
+import search.SearcherRegistry;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Handles a request to the <code>DemoServer</code> to display term properties.
  */
 public class PropertyHandler extends AbstractHandler {
-    // Location of the index folder relative to the location from which the program is run
-    private final String indexFolderLocation;
+    // Name of the endpoint in the metrics, front ends delegating to this handler are recorded under it too
+    public static final String ENDPOINT = "/properties/api";
 
-    public PropertyHandler(String indexFolderLocation) {
-        // Since directory names are appended to this path, it has to end with a slash
-        if (indexFolderLocation.charAt(indexFolderLocation.length() - 1) != '/') {
-            indexFolderLocation += '/';
-        }
-        this.indexFolderLocation = indexFolderLocation;
+    // Searchers shared by all requests to the server
+    private final SearcherRegistry searchers;
+    // Executor on which the indexes are searched concurrently
+    private final ExecutorService executor;
+
+    public PropertyHandler(SearcherRegistry searchers, ExecutorService executor) {
+        this.searchers = searchers;
+        this.executor = executor;
     }
 
     @Override
@@ -53,9 +55,11 @@ public class PropertyHandler extends AbstractHandler {
         parameter = baseRequest.getParameter("properties");
         pivot = baseRequest.getParameter("pivot");
         comparison = baseRequest.getParameter("comparison");
+        // Indexes to search, null if one of the requested sources doesn't exist
+        String[] indexNames = Sources.parse(baseRequest.getParameter("sources"), searchers);
 
         // Makes sure that all parameters were specified
-        if (pivot == null | comparison == null | parameter == null) {
+        if (pivot == null | comparison == null | parameter == null | indexNames == null) {
             if (!useHTML) {
                 out.println("{Invalid request}");
             }
@@ -73,75 +77,35 @@ public class PropertyHandler extends AbstractHandler {
             outputGenerator.writeStartObject();
         }
 
-        String[] indexNames = {"WKP_Graph", "WKT", "WN"};
-        for (String indexName : indexNames) {
-            if (useHTML) {
-                out.println("<h3>" + indexName + "</h3>");
-            } else {
-                outputGenerator.writeArrayFieldStart(indexName);
-            }
-
-            DirectoryReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexFolderLocation + indexName)));
-            IndexSearcher searcher = new IndexSearcher(reader);
-
-            ScoreDoc[] pivotDocs = searcher.search(new TermQuery(new Term("definiendum", pivot)), 50).scoreDocs;
-            ScoreDoc[] comparisonDocs = searcher.search(new TermQuery(new Term("definiendum", comparison)), 50).scoreDocs;
-
-            LinkedList<String> pivotProperties = new LinkedList<>();
-            LinkedList<String> comparisonProperties = new LinkedList<>();
+        // Comparison's properties are only needed if more than pivot's properties were requested
+        boolean needsComparison = !parameter.equals("p");
+        Deadline deadline = AdmissionHandler.getDeadline(baseRequest);
 
-            for (ScoreDoc result : pivotDocs) {
-                for (IndexableField field : searcher.doc(result.doc).getFields()) {
-                    pivotProperties.add(field.stringValue() + "(" + field.name() + ")");
-                }
-            }
-
-            if (useHTML) {
-                out.println("<ul>");
-            }
-
-            if (parameter.equals("p")) {
-                for (String property : pivotProperties) {
-                    if (useHTML) {
-                        out.println("<li>" + property + "</li>");
-                    } else {
-                        outputGenerator.writeString(property);
-                    }
-                }
+        // All of the indexes are searched concurrently
+        List<Future<IndexProperties>> lookups = new ArrayList<>(indexNames.length);
+        for (String indexName : indexNames) {
+            lookups.add(executor.submit(() -> lookup(indexName, pivot, comparison, needsComparison,
+                    deadline)));
+        }
 
+        try {
+            for (int i = 0; i < indexNames.length; i++) {
+                String indexName = indexNames[i];
                 if (useHTML) {
-                    out.println("</ul>");
+                    out.println("<h3>" + indexName + "</h3>");
                 } else {
-                    outputGenerator.writeEndArray();
+                    outputGenerator.writeArrayFieldStart(indexName);
                 }
-                continue;
-            }
 
-            for (ScoreDoc result : comparisonDocs) {
-                for (IndexableField field : searcher.doc(result.doc).getFields()) {
-                    comparisonProperties.add(field.stringValue() + "(" + field.name() + ")");
-                }
-            }
+                IndexProperties indexProperties = Futures.await(lookups.get(i));
+                List<String> pivotProperties = indexProperties.pivot;
+                List<String> comparisonProperties = indexProperties.comparison;
 
-            if (parameter.equals("c")) {
-                for (String property : comparisonProperties) {
-                    if (useHTML) {
-                        out.println("<li>" + property + "</li>");
-                    } else {
-                        outputGenerator.writeString(property);
-                    }
-                }
                 if (useHTML) {
-                    out.println("</ul>");
-                } else {
-                    outputGenerator.writeEndArray();
+                    out.println("<ul>");
                 }
-                continue;
-            }
 
-            switch (parameter) {
-                case "intersection":
-                    pivotProperties.retainAll(comparisonProperties);
+                if (parameter.equals("p")) {
                     for (String property : pivotProperties) {
                         if (useHTML) {
                             out.println("<li>" + property + "</li>");
@@ -149,19 +113,16 @@ public class PropertyHandler extends AbstractHandler {
                             outputGenerator.writeString(property);
                         }
                     }
-                    break;
-                case "p-c":
-                    pivotProperties.removeAll(comparisonProperties);
-                    for (String property : pivotProperties) {
-                        if (useHTML) {
-                            out.println("<li>" + property + "</li>");
-                        } else {
-                            outputGenerator.writeString(property);
-                        }
+
+                    if (useHTML) {
+                        out.println("</ul>");
+                    } else {
+                        outputGenerator.writeEndArray();
                     }
-                    break;
-                case "c-p":
-                    comparisonProperties.removeAll(pivotProperties);
+                    continue;
+                }
+
+                if (parameter.equals("c")) {
                     for (String property : comparisonProperties) {
                         if (useHTML) {
                             out.println("<li>" + property + "</li>");
@@ -169,13 +130,60 @@ public class PropertyHandler extends AbstractHandler {
                             outputGenerator.writeString(property);
                         }
                     }
-                    break;
+                    if (useHTML) {
+                        out.println("</ul>");
+                    } else {
+                        outputGenerator.writeEndArray();
+                    }
+                    continue;
+                }
+
+                switch (parameter) {
+                    case "intersection":
+                        for (String property : PropertySets.intersection(pivotProperties, comparisonProperties)) {
+                            if (useHTML) {
+                                out.println("<li>" + property + "</li>");
+                            } else {
+                                outputGenerator.writeString(property);
+                            }
+                        }
+                        break;
+                    case "p-c":
+                        for (String property : PropertySets.difference(pivotProperties, comparisonProperties)) {
+                            if (useHTML) {
+                                out.println("<li>" + property + "</li>");
+                            } else {
+                                outputGenerator.writeString(property);
+                            }
+                        }
+                        break;
+                    case "c-p":
+                        for (String property : PropertySets.difference(comparisonProperties, pivotProperties)) {
+                            if (useHTML) {
+                                out.println("<li>" + property + "</li>");
+                            } else {
+                                outputGenerator.writeString(property);
+                            }
+                        }
+                        break;
+                }
+
+                if (useHTML) {
+                    out.println("</ul>");
+                } else {
+                    outputGenerator.writeEndArray();
+                }
             }
+        } finally {
+            Futures.cancelAll(lookups);
+        }
 
+        if (deadline.isPartial()) {
+            // Some lookups have been cut off by the deadline, so the results may be incomplete
             if (useHTML) {
-                out.println("</ul>");
+                out.println("<p>The request ran out of time, these results may be incomplete.</p>");
             } else {
-                outputGenerator.writeEndArray();
+                outputGenerator.writeBooleanField("partial", true);
             }
         }
 
@@ -185,4 +193,41 @@ public class PropertyHandler extends AbstractHandler {
             baseRequest.setHandled(true);
         }
     }
+
+    /**
+     * Looks up pivot's and, if needed, comparison's properties within a single index.
+     */
+    private IndexProperties lookup(String indexName, String pivot, String comparison, boolean needsComparison,
+                                   Deadline deadline) throws IOException {
+        long start = System.nanoTime();
+        IndexProperties indexProperties = searchers.withSearcher(indexName, searcher -> new IndexProperties(
+                findProperties(indexName, searcher, pivot, deadline),
+                needsComparison ? findProperties(indexName, searcher, comparison, deadline) : new ArrayList<>()));
+        searchers.getMetrics().recordIndex(ENDPOINT, indexName, System.nanoTime() - start);
+        return indexProperties;
+    }
+
+    /**
+     * Lists the properties of all definitions of <code>term</code> as "value(role)" strings.
+     */
+    private List<String> findProperties(String indexName, IndexSearcher searcher, String term, Deadline deadline)
+            throws IOException {
+        List<String> properties = new ArrayList<>();
+        for (List<Property> definition : searchers.getDefinitions(indexName, searcher, term, deadline)) {
+            for (Property property : definition) {
+                properties.add(property.getValue() + "(" + property.getRole() + ")");
+            }
+        }
+        return properties;
+    }
+
+    private static class IndexProperties {
+        private final List<String> pivot;
+        private final List<String> comparison;
+
+        private IndexProperties(List<String> pivot, List<String> comparison) {
+            this.pivot = pivot;
+            this.comparison = comparison;
+        }
+    }
 }
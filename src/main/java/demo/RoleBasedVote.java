@@ -0,0 +1,171 @@
+package demo;
+
+import indexation.GraphIndexer;
+import metrics.Metrics;
+import org.apache.lucene.search.IndexSearcher;
+import prep.Property;
+import search.Deadline;
+import search.SearcherRegistry;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Role based discriminativity decision for a single triple within a single index, along with its explanation.
+ * <p>
+ * A triple is considered discriminative iff pivot has a property with the value of feature
+ * such that comparison doesn't have a property with the same value and role.
+ */
+public class RoleBasedVote {
+    // Maximum number of definitions considered for pivot and comparison
+    private static final int MAX_DEFINITIONS = 10;
+
+    private final boolean discriminative;
+    private final String explanation;
+
+    private RoleBasedVote(boolean discriminative, String explanation) {
+        this.discriminative = discriminative;
+        this.explanation = explanation;
+    }
+
+    public boolean isDiscriminative() {
+        return discriminative;
+    }
+
+    public String getExplanation() {
+        return explanation;
+    }
+
+    /**
+     * Lists the properties of all definitions of <code>definiendum</code> within the searched index.
+     *
+     * @param searchers   registry the searcher was acquired from
+     * @param indexName   name of the index the searcher was acquired for
+     * @param searcher    searcher over a role based index
+     * @param definiendum term whose properties should be listed
+     * @param deadline    deadline of the request, marked as partial if the lookup is cut off
+     * @return properties of <code>definiendum</code>, excluding the blind field
+     * @throws IOException if the index can't be searched
+     */
+    public static List<Property> findProperties(SearcherRegistry searchers, String indexName, IndexSearcher searcher,
+                                                String definiendum, Deadline deadline) throws IOException {
+        List<List<Property>> definitions = searchers.getDefinitions(indexName, searcher, definiendum, deadline);
+        List<Property> properties = new ArrayList<>();
+        for (List<Property> definition : definitions.subList(0, Math.min(MAX_DEFINITIONS, definitions.size()))) {
+            for (Property property : definition) {
+                // Ignores the catch-all field
+                if (!property.getRole().equals(GraphIndexer.BLIND_FIELD_NAME)) {
+                    properties.add(property);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Decides whether the triple is discriminative, given the properties of pivot and comparison.
+     *
+     * @param pivot                first element in the triple
+     * @param comparison           second element in the triple
+     * @param feature              third element in the triple
+     * @param pivotProperties      properties of pivot
+     * @param comparisonProperties properties of comparison
+     * @param metrics              metrics the time spent filtering and explaining is recorded in
+     * @param indexName            name of the index the properties were found in
+     * @return the decision along with its natural language explanation
+     */
+    public static RoleBasedVote decide(String pivot, String comparison, String feature,
+                                       List<Property> pivotProperties, List<Property> comparisonProperties,
+                                       Metrics metrics, String indexName) {
+        long start = System.nanoTime();
+        // Selects those properties from comparison and pivot
+        // where feature is the value
+        ArrayList<Property> pivotFeatureProperties = new ArrayList<>();
+        ArrayList<Property> comparisonFeatureProperties = new ArrayList<>();
+
+        pivotProperties.stream()
+                .filter(property -> property.getValue().equals(feature))
+                .forEach(property -> pivotFeatureProperties.add(property));
+
+        comparisonProperties.stream()
+                .filter(property -> property.getValue().equals(feature))
+                .forEach(property -> comparisonFeatureProperties.add(property));
+
+
+        // Selects the properties with the value of feature and equal roles
+        // between pivot's and comparison's properties
+        ArrayList<Property> intersectingFeatureProperties = new ArrayList<>();
+
+        pivotFeatureProperties.stream()
+                .filter(property -> comparisonFeatureProperties.contains(property))
+                .forEach(property -> intersectingFeatureProperties.add(property));
+
+
+        // Makes the discriminativity decision
+        boolean discriminative = pivotFeatureProperties.size() > intersectingFeatureProperties.size();
+        long filtered = System.nanoTime();
+        metrics.recordStage(Metrics.FILTER, indexName, filtered - start);
+
+        // Generates the explanation
+        String explanation = "";
+        if (discriminative) {
+            boolean pivotHasMultipleRoles = pivotFeatureProperties.size() > 1;
+            String pivotRoles = getRoleString(pivotFeatureProperties);
+            explanation += MessageFormat.format("Because {0} contains {1} in propert{2} of {3} role{4} and "
+                    , pivot, feature, (pivotHasMultipleRoles ? "ies" : "y")
+                    , pivotRoles, (pivotHasMultipleRoles ? "s" : ""));
+
+            if (comparisonFeatureProperties.size() > 0) {
+                boolean comparisonHasMultipleProperties = comparisonFeatureProperties.size() > 1;
+                String comparisonRoles = getRoleString(comparisonFeatureProperties);
+
+                explanation += MessageFormat.format("{0} contains {1} in propert{2} of {3} role{4}.",
+                        comparison, feature, (comparisonHasMultipleProperties? "ies" : "y")
+                        , comparisonRoles, (comparisonHasMultipleProperties ? "s" : ""));
+            } else {
+                explanation += MessageFormat.format("{0} doesn''t contain {1} as one of its properties.",
+                        comparison, feature);
+            }
+        } else if (intersectingFeatureProperties.size() > 0) {
+            boolean intersectionHasMultipleProperties = intersectingFeatureProperties.size() > 1;
+            String commonRoleString = getRoleString(intersectingFeatureProperties);
+            explanation += MessageFormat.format("Because {0} and {1} contain {2} as propert{3} of {4} role{5}",
+                    pivot, comparison, feature, (intersectionHasMultipleProperties? "ies" : "y")
+                    , commonRoleString, (intersectionHasMultipleProperties? "s" : ""));
+        } else if (comparisonFeatureProperties.size() > 0) {
+            boolean comparisonHasMutlipleProperties = comparisonFeatureProperties.size() > 1;
+            String comparisonRoles = getRoleString(comparisonFeatureProperties);
+            explanation += MessageFormat.format("Because {0}''s properties don''t contain {1}," +
+                            "however {2} contains {3} as propert{4} of {5} role{5}",
+                    pivot, feature, comparison, feature, (comparisonHasMutlipleProperties? "ies":"y")
+                    , comparisonRoles, (comparisonHasMutlipleProperties ? "s" : ""));
+        } else {
+            explanation += MessageFormat.format("Because {0} and {1} don''t contain {2} as a property"
+                    ,pivot, comparison, feature);
+        }
+        metrics.recordStage(Metrics.EXPLAIN, indexName, System.nanoTime() - filtered);
+
+        return new RoleBasedVote(discriminative, explanation);
+    }
+
+    /**
+     * Accepts a List containing value,role String pairs and returns a Single string of grammatically concatonated roles.
+     *
+     * @param properties List of value, role String pairs.
+     * @return grammatically correct concatonation of the roles in properties.
+     */
+    private static String getRoleString(List<Property> properties) {
+        String roleString = properties.get(0).getRole();
+        for (int i = 1; i < properties.size() - 1; i++) {
+            roleString += ", " + properties.get(i).getRole();
+        }
+        // Checks whether a serial comma is necessary
+        if (properties.size() > 2) {
+            roleString += ",";
+        }
+        roleString += " and " + properties.get(properties.size() - 1).getRole();
+        return roleString;
+    }
+}
@@ -11,9 +11,11 @@ import java.io.PrintWriter;
 import java.util.Scanner;
 
 public class RoleBasedVoteFrontEndHandler extends AbstractHandler {
-    private final String indexFolderLocation;
-    public RoleBasedVoteFrontEndHandler(String indexFolderLocation){
-        this.indexFolderLocation = indexFolderLocation;
+    // API handler shared with the /roleBasedVote/api context
+    private final RoleBasedVoteHandler roleBasedVoteHandler;
+
+    public RoleBasedVoteFrontEndHandler(RoleBasedVoteHandler roleBasedVoteHandler){
+        this.roleBasedVoteHandler = roleBasedVoteHandler;
     }
 
     @Override
@@ -29,7 +31,7 @@ public class RoleBasedVoteFrontEndHandler extends AbstractHandler {
 
 
         // If a discriminativity query has been made, writes the response
-        new RoleBasedVoteHandler(indexFolderLocation).handle(target, baseRequest, request, response);
+        roleBasedVoteHandler.handle(target, baseRequest, request, response);
         baseRequest.setHandled(true);
 
     }
@@ -2,37 +2,37 @@ package demo;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import indexation.GraphIndexer;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.store.FSDirectory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
-import prep.Graph;
 import prep.Property;
+import search.Deadline;
+import search.SearcherRegistry;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
-import java.nio.file.Paths;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RoleBasedVoteHandler extends AbstractHandler {
-    private final String indexFolderLocation;
+    // Name of the endpoint in the metrics, front ends delegating to this handler are recorded under it too
+    public static final String ENDPOINT = "/roleBasedVote/api";
 
-    public RoleBasedVoteHandler(String indexFolderLocation) {
-        // Since directory names are appended to this path, it has to end with a slash
-        if (indexFolderLocation.charAt(indexFolderLocation.length() - 1) != '/') {
-            indexFolderLocation += '/';
-        }
-        this.indexFolderLocation = indexFolderLocation;
+    // Searchers shared by all requests to the server
+    private final SearcherRegistry searchers;
+    // Executor on which the indexes are searched concurrently
+    private final ExecutorService executor;
+
+    public RoleBasedVoteHandler(SearcherRegistry searchers, ExecutorService executor) {
+        this.searchers = searchers;
+        this.executor = executor;
     }
 
     @Override
@@ -41,10 +41,6 @@ public class RoleBasedVoteHandler extends AbstractHandler {
                        HttpServletRequest request,
                        HttpServletResponse response) throws IOException {
 
-        // A triple is considered discriminative iff
-        // pivot has a property with the value of feature
-        // such that comparison doesn't have a property with the same value and role
-
         response.setStatus(HttpServletResponse.SC_OK);
 
         PrintWriter out = response.getWriter();
@@ -57,8 +53,10 @@ public class RoleBasedVoteHandler extends AbstractHandler {
         pivot = baseRequest.getParameter("pivot");
         comparison = baseRequest.getParameter("comparison");
         feature = baseRequest.getParameter("feature");
+        // Indexes to search, null if one of the requested sources doesn't exist
+        String[] indexNames = Sources.parse(baseRequest.getParameter("sources"), searchers);
 
-        if(pivot == null | comparison == null | feature == null){
+        if(pivot == null | comparison == null | feature == null | indexNames == null){
             if (!useHTML) {
                 out.println("{Invalid request}");
             }
@@ -76,118 +74,53 @@ public class RoleBasedVoteHandler extends AbstractHandler {
             outputGenerator.writeStartObject();
         }
 
-        String[] indexNames = {"WKP_Graph", "WKT", "WN"};
-        // Tracks if the triple is discriminative according to at least one model
-        Boolean jointlyDiscriminative = false;
-        for (String indexName : indexNames) {
-            if (useHTML) {
-                out.println("<h3>" + indexName + "</h3>");
-            } else {
-                outputGenerator.writeArrayFieldStart(indexName);
-            }
-
-            DirectoryReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexFolderLocation + indexName)));
-            IndexSearcher searcher = new IndexSearcher(reader);
-
-            ScoreDoc[] pivotDocs = searcher.search(new TermQuery(new Term("definiendum", pivot)), 10).scoreDocs;
-            ScoreDoc[] comparisonDocs = searcher.search(new TermQuery(new Term("definiendum", comparison)), 10).scoreDocs;
-
-            ArrayList<Property> pivotProperties = new ArrayList<>();
-            ArrayList<Property> comparisonProperties = new ArrayList<>();
-
-            for (ScoreDoc result : pivotDocs) {
-                for (IndexableField field : searcher.doc(result.doc).getFields()) {
-                    // Ignores the catch-all field
-                    if(! field.name().equals(GraphIndexer.BLIND_FIELD_NAME)) {
-                        pivotProperties.add(new Property(field.stringValue(), field.name()));
-                    }
-                }
-            }
-
-            for (ScoreDoc result : comparisonDocs) {
-                for (IndexableField field : searcher.doc(result.doc).getFields()) {
-                    // Ignores the catch-all field
-                    if(! field.name().equals(GraphIndexer.BLIND_FIELD_NAME)) {
-                        comparisonProperties.add(new Property(field.stringValue(), field.name()));
-                    }
-                }
-            }
-
-            // Selects those properties from comparison and pivot
-            // where feature is the value
-            ArrayList<Property> pivotFeatureProperties = new ArrayList<>();
-            ArrayList<Property> comparisonFeatureProperties = new ArrayList<>();
-
-            pivotProperties.stream()
-                    .filter(property -> property.getValue().equals(feature))
-                    .forEach(property -> pivotFeatureProperties.add(property));
-
-            comparisonProperties.stream()
-                    .filter(property -> property.getValue().equals(feature))
-                    .forEach(property -> comparisonFeatureProperties.add(property));
+        // In the "any" mode only the joint decision is needed, so the response is sent
+        // as soon as one of the indexes finds the triple discriminative
+        Deadline deadline = AdmissionHandler.getDeadline(baseRequest);
+        boolean anyMode = !useHTML && "any".equalsIgnoreCase(baseRequest.getParameter("mode"));
+        // Set once the joint decision is known, so that lookups which haven't started yet are skipped
+        AtomicBoolean decided = new AtomicBoolean(false);
 
+        CompletionService<IndexVote> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<IndexVote>> votes = new ArrayList<>(indexNames.length);
+        for (String indexName : indexNames) {
+            votes.add(completionService.submit(() -> vote(indexName, pivot, comparison, feature,
+                    decided, deadline)));
+        }
 
-            // Selects the properties with the value of feature and equal roles
-            // between pivot's and comparison's properties
-            ArrayList<Property> intersectingFeatureProperties = new ArrayList<>();
-
-            pivotFeatureProperties.stream()
-                    .filter(property -> comparisonFeatureProperties.contains(property))
-                    .forEach(property -> intersectingFeatureProperties.add(property));
-
-
-            // Makes the discriminativity decision
-            boolean discriminative = pivotFeatureProperties.size() > intersectingFeatureProperties.size();
-            jointlyDiscriminative = jointlyDiscriminative | discriminative;
-
-            // Generates the explanation
-            String explanation = "";
-            if (discriminative) {
-                boolean pivotHasMultipleRoles = pivotFeatureProperties.size() > 1;
-                String pivotRoles = getRoleString(pivotFeatureProperties);
-                explanation += MessageFormat.format("Because {0} contains {1} in propert{2} of {3} role{4} and "
-                        , pivot, feature, (pivotHasMultipleRoles ? "ies" : "y")
-                        , pivotRoles, (pivotHasMultipleRoles ? "s" : ""));
-
-                if (comparisonFeatureProperties.size() > 0) {
-                    boolean comparisonHasMultipleProperties = comparisonFeatureProperties.size() > 1;
-                    String comparisonRoles = getRoleString(comparisonFeatureProperties);
-
-                    explanation += MessageFormat.format("{0} contains {1} in propert{2} of {3} role{4}.",
-                            comparison, feature, (comparisonHasMultipleProperties? "ies" : "y")
-                            , comparisonRoles, (comparisonHasMultipleProperties ? "s" : ""));
-                } else {
-                    explanation += MessageFormat.format("{0} doesn''t contain {1} as one of its properties.",
-                            comparison, feature);
+        // Tracks if the triple is discriminative according to at least one model
+        Boolean jointlyDiscriminative = false;
+        try {
+            if (anyMode) {
+                for (int i = 0; i < indexNames.length && !jointlyDiscriminative; i++) {
+                    IndexVote indexVote = Futures.await(completionService.take());
+                    writeVote(out, outputGenerator, false, indexVote);
+                    jointlyDiscriminative = indexVote.vote.isDiscriminative();
                 }
-            } else if (intersectingFeatureProperties.size() > 0) {
-                boolean intersectionHasMultipleProperties = intersectingFeatureProperties.size() > 1;
-                String commonRoleString = getRoleString(intersectingFeatureProperties);
-                explanation += MessageFormat.format("Because {0} and {1} contain {2} as propert{3} of {4} role{5}",
-                        pivot, comparison, feature, (intersectionHasMultipleProperties? "ies" : "y")
-                        , commonRoleString, (intersectionHasMultipleProperties? "s" : ""));
-            } else if (comparisonFeatureProperties.size() > 0) {
-                boolean comparisonHasMutlipleProperties = comparisonFeatureProperties.size() > 1;
-                String comparisonRoles = getRoleString(comparisonFeatureProperties);
-                explanation += MessageFormat.format("Because {0}''s properties don''t contain {1}," +
-                                "however {2} contains {3} as propert{4} of {5} role{5}",
-                        pivot, feature, comparison, feature, (comparisonHasMutlipleProperties? "ies":"y")
-                        , comparisonRoles, (comparisonHasMutlipleProperties ? "s" : ""));
+                outputGenerator.writeBooleanField("jointlyDiscriminative", jointlyDiscriminative);
             } else {
-                explanation += MessageFormat.format("Because {0} and {1} don''t contain {2} as a property"
-                        ,pivot, comparison, feature);
+                // Results are written in the order of the indexes, regardless of which lookup finishes first
+                for (Future<IndexVote> vote : votes) {
+                    IndexVote indexVote = Futures.await(vote);
+                    writeVote(out, outputGenerator, useHTML, indexVote);
+                    jointlyDiscriminative = jointlyDiscriminative | indexVote.vote.isDiscriminative();
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an index lookup");
+        } finally {
+            decided.set(true);
+            Futures.cancelAll(votes);
+        }
 
-
+        if (deadline.isPartial()) {
+            // Some lookups have been cut off by the deadline, so the results may be incomplete
             if (useHTML) {
-                out.println((discriminative ? "Discriminative" : "Not Discriminative"));
-                out.println(explanation);
+                out.println("<p>The request ran out of time, these results may be incomplete.</p>");
             } else {
-                outputGenerator.writeString(String.valueOf(discriminative));
-                outputGenerator.writeString(explanation);
-                outputGenerator.writeEndArray();
+                outputGenerator.writeBooleanField("partial", true);
             }
-
         }
 
         if (!useHTML) {
@@ -200,22 +133,49 @@ public class RoleBasedVoteHandler extends AbstractHandler {
     }
 
     /**
-     * Accepts a List containing value,role String pairs and returns a Single string of grammatically concatonated roles.
-     *
-     * @param properties List of value, role String pairs.
-     * @return grammatically correct concatonation of the roles in properties.
+     * Looks up pivot's and comparison's properties within a single index and decides on the triple.
+     * Returns null without searching if the joint decision has already been made.
      */
-    private String getRoleString(List<Property> properties) {
-        String roleString = properties.get(0).getRole();
-        for (int i = 1; i < properties.size() - 1; i++) {
-            roleString += ", " + properties.get(i).getRole();
+    private IndexVote vote(String indexName, String pivot, String comparison, String feature,
+                           AtomicBoolean decided, Deadline deadline) throws IOException {
+        if (decided.get()) {
+            return null;
         }
-        // Checks whether a serial comma is necessary
-        if (properties.size() > 2) {
-            roleString += ",";
+        long start = System.nanoTime();
+        IndexVote indexVote = searchers.withSearcher(indexName, searcher -> {
+            List<Property> pivotProperties = RoleBasedVote.findProperties(searchers, indexName, searcher, pivot,
+                    deadline);
+            List<Property> comparisonProperties =
+                    RoleBasedVote.findProperties(searchers, indexName, searcher, comparison, deadline);
+            return new IndexVote(indexName, RoleBasedVote.decide(pivot, comparison, feature,
+                    pivotProperties, comparisonProperties, searchers.getMetrics(), indexName));
+        });
+        searchers.getMetrics().recordIndex(ENDPOINT, indexName, System.nanoTime() - start);
+        return indexVote;
+    }
+
+    private static void writeVote(PrintWriter out, JsonGenerator outputGenerator, boolean useHTML,
+                                  IndexVote indexVote) throws IOException {
+        boolean discriminative = indexVote.vote.isDiscriminative();
+        if (useHTML) {
+            out.println("<h3>" + indexVote.indexName + "</h3>");
+            out.println((discriminative ? "Discriminative" : "Not Discriminative"));
+            out.println(indexVote.vote.getExplanation());
+        } else {
+            outputGenerator.writeArrayFieldStart(indexVote.indexName);
+            outputGenerator.writeString(String.valueOf(discriminative));
+            outputGenerator.writeString(indexVote.vote.getExplanation());
+            outputGenerator.writeEndArray();
         }
-        roleString += " and " + properties.get(properties.size() - 1).getRole();
-        return roleString;
     }
 
+    private static class IndexVote {
+        private final String indexName;
+        private final RoleBasedVote vote;
+
+        private IndexVote(String indexName, RoleBasedVote vote) {
+            this.indexName = indexName;
+            this.vote = vote;
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package demo;
+
+/**
+ * Command line options of the <code>DemoServer</code>.
+ * <p>
+ * The first argument is the location of the index folder, followed by any of the optional arguments:
+ * <ul>
+ * <li><code>--port=N</code> port to listen on, 8080 by default</li>
+ * <li><code>--threads=N</code> handles requests on a bounded pool of N platform threads (200 by default),
+ * <code>--threads=virtual</code> handles each request on its own virtual thread (requires Java 21)</li>
+ * <li><code>--acceptors=N</code> number of acceptor threads, chosen by Jetty by default</li>
+ * <li><code>--selectors=N</code> number of selector threads, chosen by Jetty by default</li>
+ * <li><code>--max-requests=N</code> number of API requests handled concurrently, 64 by default</li>
+ * <li><code>--max-queued=N</code> number of API requests waiting to be handled before further ones are rejected,
+ * 256 by default</li>
+ * <li><code>--deadline=MS</code> time in milliseconds in which an API request has to be answered,
+ * 5000 by default</li>
+ * <li><code>--max-batches=N</code> number of batch requests handled concurrently, which don't count towards
+ * <code>--max-requests</code>, 2 by default</li>
+ * <li><code>--batch-deadline=MS</code> time in milliseconds in which a batch request has to be answered,
+ * including the time spent waiting for another batch, 600000 by default</li>
+ * </ul>
+ */
+public class ServerOptions {
+    public static final String USAGE = "Usage: DemoServer INDEX_FOLDER [--port=N] [--threads=N|virtual]" +
+            " [--acceptors=N] [--selectors=N] [--max-requests=N] [--max-queued=N] [--deadline=MS]" +
+            " [--max-batches=N] [--batch-deadline=MS]";
+
+    private String indexFolderLocation;
+    private int port = 8080;
+    private boolean virtualThreads = false;
+    private int threads = 200;
+    // Negative values let Jetty choose the number based on the number of processors
+    private int acceptors = -1;
+    private int selectors = -1;
+    private int maxRequests = 64;
+    private int maxQueued = 256;
+    private int deadlineMillis = 5000;
+    private int maxBatches = 2;
+    private int batchDeadlineMillis = 600_000;
+
+    private ServerOptions() {
+    }
+
+    /**
+     * Parses the command line arguments of the <code>DemoServer</code>.
+     *
+     * @param args command line arguments
+     * @return parsed options
+     * @throws IllegalArgumentException if the index folder is missing or an argument is invalid
+     */
+    public static ServerOptions parse(String[] args) {
+        ServerOptions options = new ServerOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (options.indexFolderLocation != null) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+                options.indexFolderLocation = arg;
+                continue;
+            }
+
+            int separator = arg.indexOf('=');
+            if (separator == -1) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "port":
+                    options.port = parsePositive(name, value);
+                    break;
+                case "threads":
+                    if (value.equalsIgnoreCase("virtual")) {
+                        options.virtualThreads = true;
+                    } else {
+                        options.threads = parsePositive(name, value);
+                    }
+                    break;
+                case "acceptors":
+                    options.acceptors = parsePositive(name, value);
+                    break;
+                case "selectors":
+                    options.selectors = parsePositive(name, value);
+                    break;
+                case "max-requests":
+                    options.maxRequests = parsePositive(name, value);
+                    break;
+                case "max-queued":
+                    options.maxQueued = parsePositive(name, value);
+                    break;
+                case "deadline":
+                    options.deadlineMillis = parsePositive(name, value);
+                    break;
+                case "max-batches":
+                    options.maxBatches = parsePositive(name, value);
+                    break;
+                case "batch-deadline":
+                    options.batchDeadlineMillis = parsePositive(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (options.indexFolderLocation == null) {
+            throw new IllegalArgumentException("Please provide the path to the 'indexes' folder" +
+                    " relative to the location from which the script is run");
+        }
+        return options;
+    }
+
+    public String getIndexFolderLocation() {
+        return indexFolderLocation;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public int getSelectors() {
+        return selectors;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public int getMaxBatches() {
+        return maxBatches;
+    }
+
+    public int getBatchDeadlineMillis() {
+        return batchDeadlineMillis;
+    }
+
+    private static int parsePositive(String name, String value) {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " has to be a number, got: " + value);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException("--" + name + " has to be positive, got: " + value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,49 @@
+package demo;
+
+import search.SearcherRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the <code>sources</code> parameter, which limits a request to a comma separated list of indexes.
+ */
+class Sources {
+    // Indexes searched by requests that don't specify their sources
+    static final String[] DEFAULT_SOURCES = {"WKP_Graph", "WKT", "WN"};
+
+    private Sources() {
+    }
+
+    /**
+     * @param parameter value of the <code>sources</code> parameter, null if it wasn't specified
+     * @param searchers registry of the indexes that can be searched
+     * @return names of the indexes to search, or null if one of them doesn't exist
+     */
+    static String[] parse(String parameter, SearcherRegistry searchers) {
+        List<String> indexNames = new ArrayList<>();
+        if (parameter == null) {
+            // Default sources missing from the index folder are skipped, rather than failing every request
+            for (String indexName : DEFAULT_SOURCES) {
+                if (searchers.contains(indexName)) {
+                    indexNames.add(indexName);
+                }
+            }
+            if (indexNames.isEmpty()) {
+                indexNames.addAll(searchers.getIndexNames());
+            }
+        } else {
+            for (String indexName : parameter.split(",")) {
+                indexName = indexName.trim();
+                if (indexName.isEmpty() || indexNames.contains(indexName)) {
+                    continue;
+                }
+                if (!searchers.contains(indexName)) {
+                    return null;
+                }
+                indexNames.add(indexName);
+            }
+        }
+        return indexNames.toArray(new String[indexNames.size()]);
+    }
+}
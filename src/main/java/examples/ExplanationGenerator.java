@@ -1,71 +1,75 @@
 package examples;
 
-import org.apache.commons.io.IOUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.HttpClients;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.text.MessageFormat;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 public class ExplanationGenerator {
     public static void main(String args[]) throws IOException, JSONException {
-        Scanner taskScanner = new Scanner(new File("src/main/resources/truth.txt"));
+        List<String> tasks = Files.readAllLines(new File("src/main/resources/truth.txt").toPath());
         FileWriter output = new FileWriter(new File("out/explainedTriples.txt"));
         HttpClient client = HttpClients.createDefault();
 
-        while (taskScanner.hasNext()) {
-            String currentLine = taskScanner.nextLine();
+        // Sends all of the triples in a single batch request
+        ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        JsonGenerator requestGenerator = new JsonFactory().createGenerator(requestBody);
+        requestGenerator.setRootValueSeparator(null);
+        for (String currentLine : tasks) {
             String[] splitLine = currentLine.split(",");
-            String request = MessageFormat.format("http://localhost:8080/api/?pivot={0}&comparison={1}&feature={2}"
-                    , splitLine[0], splitLine[1], splitLine[2]);
-            output.write(currentLine + ";");
-
-            HttpGet get = new HttpGet(request);
-            HttpResponse response = client.execute(get);
-            HttpEntity entity = response.getEntity();
-            StringWriter writer = new StringWriter();
-            IOUtils.copy(entity.getContent(), writer, "UTF-8");
-            JSONObject responseJSON = new JSONObject(writer.toString());
+            requestGenerator.writeStartObject();
+            requestGenerator.writeStringField("pivot", splitLine[0]);
+            requestGenerator.writeStringField("comparison", splitLine[1]);
+            requestGenerator.writeStringField("feature", splitLine[2]);
+            requestGenerator.writeEndObject();
+            requestGenerator.writeRaw('\n');
+        }
+        requestGenerator.close();
 
-            JSONArray WKP_Graph = responseJSON.getJSONArray("WKP_Graph");
-            String decision = WKP_Graph.get(0).toString();
-            if (decision.equals("-1")) {
-                decision = "0";
-            }
-            String correct = (decision.equals(splitLine[3]) ? "T" : "F");
-            output.write(WKP_Graph.get(0) + correct + ";");
-            output.write(WKP_Graph.get(1) + ";");
+        HttpPost post = new HttpPost("http://localhost:8080/roleBasedVote/batch");
+        post.setHeader("Content-Type", "application/x-ndjson");
+        post.setEntity(new ByteArrayEntity(requestBody.toByteArray()));
+        HttpResponse response = client.execute(post);
+        HttpEntity entity = response.getEntity();
 
-            JSONArray WKT = responseJSON.getJSONArray("WKT");
-            decision = WKT.get(0).toString();
-            if (decision.equals("-1")) {
-                decision = "0";
-            }
-            correct = (decision.equals(splitLine[3]) ? "T" : "F");
-            output.write(WKT.get(0) + correct + ";");
-            output.write(WKT.get(1) + ";");
+        // Results are returned one per line, in the order of the triples
+        BufferedReader results = new BufferedReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
+        for (String currentLine : tasks) {
+            String[] splitLine = currentLine.split(",");
+            output.write(currentLine + ";");
+            JSONObject responseJSON = new JSONObject(results.readLine());
 
-            JSONArray WN = responseJSON.getJSONArray("WN");
-            decision = WN.get(0).toString();
-            if (decision.equals("-1")) {
-                decision = "0";
+            String[] indexNames = {"WKP_Graph", "WKT", "WN"};
+            for (int i = 0; i < indexNames.length; i++) {
+                JSONArray indexResult = responseJSON.getJSONArray(indexNames[i]);
+                String decision = indexResult.get(0).toString();
+                if (decision.equals("-1")) {
+                    decision = "0";
+                }
+                String correct = (decision.equals(splitLine[3]) ? "T" : "F");
+                output.write(indexResult.get(0) + correct + ";");
+                output.write(indexResult.get(1) + (i == indexNames.length - 1 ? "\n" : ";"));
             }
-            correct = (decision.equals(splitLine[3]) ? "T" : "F");
-            output.write(WN.get(0) + correct + ";");
-            output.write(WN.get(1) + "\n");
         }
 
+        results.close();
         output.close();
-        taskScanner.close();
     }
 }
@@ -0,0 +1,133 @@
+package examples;
+
+import indexation.GraphIndexer;
+import indexation.IndexFormat;
+import metrics.LatencyHistogram;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import search.LookupCollector;
+import search.PropertyCache;
+import search.ShardedReader;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the latency of uncached definiendum lookups between indexes, e.g. the same source indexed
+ * with and without <code>IndexingOptions.setSortedByDefiniendum</code>.
+ * <p>
+ * Usage: <code>LookupBenchmark INDEX...</code>, every index is searched for the same sample of the terms
+ * of the first index, and every lookup loads the properties of the definitions it finds, like a miss of the
+ * property cache. Besides the latencies, the average distance between the first and last document found by
+ * a lookup is reported, the smaller it is the fewer blocks of the index a lookup reads.
+ */
+public class LookupBenchmark {
+    private static final int SAMPLE_SIZE = 10_000;
+    private static final int WARM_UP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: LookupBenchmark INDEX...");
+            return;
+        }
+
+        List<String> sample;
+        try (IndexReader reader = ShardedReader.open(Paths.get(args[0]))) {
+            sample = sampleTerms(reader, lookupField(reader));
+        }
+        System.out.println("Looking up " + sample.size() + " terms");
+
+        for (String indexLocation : args) {
+            try (IndexReader reader = ShardedReader.open(Paths.get(indexLocation))) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                String field = lookupField(reader);
+                for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                    lookUp(searcher, field, sample, new LatencyHistogram());
+                }
+                LatencyHistogram latencies = new LatencyHistogram();
+                long span = 0;
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    span += lookUp(searcher, field, sample, latencies);
+                }
+                System.out.println(String.format("%s (%s): mean %.3f ms, p50 %.3f ms, p99 %.3f ms, " +
+                                "average span %.1f documents",
+                        indexLocation, IndexFormat.isSortedByDefiniendum(reader) ? "sorted" : "unsorted",
+                        latencies.getSum() / 1e6 / Math.max(1, latencies.getCount()),
+                        latencies.getQuantile(0.5) / 1e6, latencies.getQuantile(0.99) / 1e6,
+                        (double) span / Math.max(1, latencies.getCount())));
+            }
+        }
+    }
+
+    /**
+     * Looks up every term of <code>sample</code>, loading the properties of its definitions.
+     *
+     * @return sum of the distances between the first and last document found by each lookup
+     */
+    private static long lookUp(IndexSearcher searcher, String field, List<String> sample,
+                               LatencyHistogram latencies) throws IOException {
+        long span = 0;
+        for (String term : sample) {
+            long start = System.nanoTime();
+            LookupCollector collector = new LookupCollector(searcher.getIndexReader(), PropertyCache.MAX_DEFINITIONS);
+            searcher.search(new TermQuery(new Term(field, term)), collector);
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            for (ScoreDoc result : collector.topDocs().scoreDocs) {
+                if (field.equals(GraphIndexer.BLIND_FIELD_NAME)) {
+                    IndexFormat.readBlindValues(searcher.getIndexReader(), result.doc);
+                } else {
+                    IndexFormat.readProperties(searcher.getIndexReader(), result.doc);
+                }
+                first = Math.min(first, result.doc);
+                last = Math.max(last, result.doc);
+            }
+            latencies.record(System.nanoTime() - start);
+            span += last >= first ? last - first : 0;
+        }
+        return span;
+    }
+
+    /**
+     * @return the field definienda are looked up in, the blind field for indexes without a definiendum field
+     */
+    private static String lookupField(IndexReader reader) throws IOException {
+        return MultiFields.getTerms(reader, IndexFormat.DEFINIENDUM_FIELD_NAME) != null
+                ? IndexFormat.DEFINIENDUM_FIELD_NAME
+                : GraphIndexer.BLIND_FIELD_NAME;
+    }
+
+    /**
+     * Samples up to <code>SAMPLE_SIZE</code> terms spread evenly over the terms of <code>field</code>,
+     * in a random but reproducible order.
+     */
+    private static List<String> sampleTerms(IndexReader reader, String field) throws IOException {
+        List<String> terms = new ArrayList<>();
+        Terms fieldTerms = MultiFields.getTerms(reader, field);
+        if (fieldTerms != null) {
+            TermsEnum termsEnum = fieldTerms.iterator();
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                terms.add(term.utf8ToString());
+            }
+        }
+        List<String> sample = new ArrayList<>();
+        int step = Math.max(1, terms.size() / SAMPLE_SIZE);
+        for (int i = 0; i < terms.size() && sample.size() < SAMPLE_SIZE; i += step) {
+            sample.add(terms.get(i));
+        }
+        Collections.shuffle(sample, new Random(42));
+        return sample;
+    }
+}
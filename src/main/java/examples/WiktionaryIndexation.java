@@ -19,17 +19,23 @@ public class WiktionaryIndexation {
     public static void main(String args[]) throws IOException, UnpopulatedGraphException {
         // creates a Lucene index from lemmatized WN graph
         String indexLocation = "out/indexes/WKT";
+        // the blind index searched by the dictionary vote is written in the same pass, outside the server's folder
+        String blindIndexLocation = "out/blindIndexes/WKT";
         Directory indexDir = FSDirectory.open(Paths.get(indexLocation));
+        Directory blindIndexDir = FSDirectory.open(Paths.get(blindIndexLocation));
         Graph wktGraph = new WKTGraph("WKT_DSR_model_XML.rdf");
-        wktGraph.populate();
-        indexGraph(wktGraph, indexDir);
+        // parses the graph straight into definitions, the model of the whole graph is never built
+        wktGraph.setExtraction(Graph.Extraction.STREAM);
+        // later runs load the snapshot of the populated graph instead, delete it when the graph changes
+        wktGraph.populate(Paths.get("out/graphs/WKT.snapshot"));
+        indexGraph(wktGraph, indexDir, blindIndexDir);
 
         // evaluates the index against sample data
         FileWriter resultWriter = new FileWriter("src/main/resources/WKT.results");
         Scanner taskScanner = new Scanner(new File("src/main/resources/truth.txt"));
         while (taskScanner.hasNext()) {
             String[] currentLine = taskScanner.nextLine().split(",");
-            int result = wordNetVote(currentLine[0], currentLine[1], currentLine[2], indexLocation);
+            int result = wordNetVote(currentLine[0], currentLine[1], currentLine[2], blindIndexLocation);
             resultWriter.write(currentLine[0] + "," + currentLine[1] + "," + currentLine[2] + "," + result + "\n");
         }
         taskScanner.close();
@@ -1,25 +1,24 @@
 package indexation;
 
-import edu.stanford.nlp.simple.Sentence;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 import prep.Definition;
 import prep.Graph;
+import prep.Lemmatizer;
 import prep.Property;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Functionality for creating a <code>Lucene Index</code> from <code>WNGraph</code> and writing it to disk.
  * <p>
- * Note: before generating a new <code>Index</code>, that would override an existing one, the existing one
- * has to be manually deleted!
+ * An existing <code>Index</code> is replaced by the new one, unless the indexing options are incremental,
+ * in which case only the documents of changed definitions are rewritten.
  *
  * @author Armins Stepanjans
  */
@@ -33,53 +32,144 @@ public class GraphIndexer {
      * @param destinationDir Directory where index should be stored
      */
     public static void indexGraph(Graph graph, Directory destinationDir) throws IOException, UnpopulatedGraphException {
+        indexGraph(graph, destinationDir, new IndexingOptions());
+    }
+
+    /**
+     * Creates <code>Index</code> from <code>WNGraph</code> and writes it to <code>destinationDir</code>.
+     * <p>
+     * Definitions are turned into documents by a pool of workers, while a single writer stage
+     * adds the documents to the index in the order of the definitions.
+     *
+     * @param graph          WNGraph to index
+     * @param destinationDir Directory where index should be stored
+     * @param options        number of workers, RAM buffer size and progress reporting of the indexer
+     */
+    public static void indexGraph(Graph graph, Directory destinationDir, IndexingOptions options)
+            throws IOException, UnpopulatedGraphException {
 
         if (!graph.isPopulated()) {
             throw new UnpopulatedGraphException("Call populate before indexing graph!");
         }
 
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-
-        IndexWriter writer;
+        IncrementalIndex index;
         try {
-            writer = new IndexWriter(destinationDir, config);
+            index = IncrementalIndex.open(destinationDir, options, IndexFormat.VERSION);
         } catch (IOException exception) {
             System.out.println("Invalid WNGraph location");
             return;
         }
 
-        for (Definition currentDefinition : graph.getAllDefinitions()) {
-            Document blindDoc = new Document(); // Document used for blind vote
-            Document roleDoc = new Document();  // Document used for role based vote
+        try (IncrementalIndex roleIndex = index;
+             IndexingPipeline<Definition> pipeline = new IndexingPipeline<>(roleIndex, options, definition -> {
+                 String id = definition.getURI();
+                 String hash = hash(definition);
+                 return roleIndex.isUnchanged(id, hash)
+                         ? Collections.emptyList()
+                         : Collections.singletonList(IncrementalIndex.identify(createRoleDocument(definition), id, hash));
+             })) {
+            for (Definition currentDefinition : graph.getAllDefinitions()) {
+                pipeline.submit(currentDefinition);
+            }
+            pipeline.finish();
+            roleIndex.finish();
+        }
+    }
 
+    /**
+     * Creates both the role based and the blind <code>Index</code> from <code>WNGraph</code> in a single pass.
+     *
+     * @param graph     WNGraph to index
+     * @param roleDir   Directory where the role based index should be stored
+     * @param blindDir  Directory where the blind index should be stored
+     */
+    public static void indexGraph(Graph graph, Directory roleDir, Directory blindDir)
+            throws IOException, UnpopulatedGraphException {
+        indexGraph(graph, roleDir, blindDir, new IndexingOptions());
+    }
+
+    /**
+     * Creates both the role based and the blind <code>Index</code> from <code>WNGraph</code> in a single pass.
+     * <p>
+     * Every definition is lemmatized once by one of the workers, and its role based document and its blind
+     * document are added to their indexes by the same writer stage, so that the n-th document of both indexes
+     * belongs to the same definition.
+     *
+     * @param graph     WNGraph to index
+     * @param roleDir   Directory where the role based index, searched by the role based vote, should be stored
+     * @param blindDir  Directory where the blind index of lemmas, searched by the dictionary votes, should be stored
+     * @param options   number of workers, RAM buffer size of each writer and progress reporting of the indexer
+     */
+    public static void indexGraph(Graph graph, Directory roleDir, Directory blindDir, IndexingOptions options)
+            throws IOException, UnpopulatedGraphException {
 
-            for (String currentDefiniendum : currentDefinition.getDefinienda()) {
-                roleDoc.add(new TextField("definiendum", currentDefiniendum, Field.Store.YES));
+        if (!graph.isPopulated()) {
+            throw new UnpopulatedGraphException("Call populate before indexing graph!");
+        }
 
-                for (String lemmaDefiniendum : new Sentence(currentDefiniendum).lemmas()) {
-                    blindDoc.add(new TextField(BLIND_FIELD_NAME, lemmaDefiniendum, Field.Store.YES));
-                }
+        try (IncrementalIndex roleIndex = IncrementalIndex.open(roleDir, options, IndexFormat.VERSION);
+             IncrementalIndex blindIndex = IncrementalIndex.open(blindDir, options, IndexFormat.VERSION);
+             IndexingPipeline<Definition> pipeline = new IndexingPipeline<>(Arrays.asList(roleIndex, blindIndex),
+                     options, definition -> {
+                 String id = definition.getURI();
+                 String hash = hash(definition);
+                 // Unchanged definitions aren't lemmatized again
+                 List<Document> roleDocs = roleIndex.isUnchanged(id, hash)
+                         ? Collections.emptyList()
+                         : Collections.singletonList(IncrementalIndex.identify(createRoleDocument(definition), id, hash));
+                 List<Document> blindDocs = blindIndex.isUnchanged(id, hash)
+                         ? Collections.emptyList()
+                         : Collections.singletonList(IncrementalIndex.identify(createBlindDocument(definition), id, hash));
+                 return Arrays.asList(roleDocs, blindDocs);
+             })) {
+            for (Definition currentDefinition : graph.getAllDefinitions()) {
+                pipeline.submit(currentDefinition);
             }
+            pipeline.finish();
+            roleIndex.finish();
+            blindIndex.finish();
+        }
+        System.out.println(Lemmatizer.getInstance());
+    }
 
-            for (Property currentProperty : currentDefinition.getProperties()) {
-                roleDoc.add(new TextField(currentProperty.getRole(), currentProperty.getValue(), Field.Store.YES));
-
-                if (currentProperty.getValue().trim().length() > 0) {
-                    for (String lemmaValue : new Sentence(currentProperty.getValue()).lemmas()) {
-                        blindDoc.add(new TextField(BLIND_FIELD_NAME, lemmaValue, Field.Store.YES));
-                    }
-                }
-                if (currentProperty.getSubject().trim().length() > 0) {
-                    for (String lemmaProperty : new Sentence(currentProperty.getValue()).lemmas()) {
-                        blindDoc.add(new TextField(BLIND_FIELD_NAME, lemmaProperty, Field.Store.YES));
-                    }
-                }
-            }
-            writer.addDocument(roleDoc);
+    /**
+     * Hashes everything the documents of <code>definition</code> are built from.
+     */
+    private static String hash(Definition definition) {
+        List<String> parts = new ArrayList<>(definition.getDefinienda());
+        for (Property property : definition.getProperties()) {
+            parts.add(property.getValue());
+            parts.add(property.getRole());
+            parts.add(property.getSubject());
+        }
+        return IncrementalIndex.hash(parts);
+    }
+
+    /**
+     * Creates the document used for the role based vote, see <code>IndexFormat.roleDocument</code>.
+     */
+    private static Document createRoleDocument(Definition currentDefinition) {
+        return IndexFormat.roleDocument(currentDefinition.getDefinienda(), currentDefinition.getProperties());
+    }
+
+    /**
+     * Creates the document used for the blind vote, holding the lemmas of the definienda, values and subjects
+     * of the definition in the blind field.
+     */
+    private static Document createBlindDocument(Definition currentDefinition) {
+        // All texts of the definition are lemmatized with a single call, repeated ones are looked up in the cache
+        List<String> texts = new ArrayList<>(currentDefinition.getDefinienda());
+        for (Property currentProperty : currentDefinition.getProperties()) {
+            texts.add(currentProperty.getValue());
+            texts.add(currentProperty.getSubject());
+        }
+        Map<String, List<String>> lemmas = Lemmatizer.getInstance().lemmatizeAll(texts);
 
+        List<String> blindValues = new ArrayList<>();
+        for (String text : texts) {
+            blindValues.addAll(lemmas.get(text));
         }
-        writer.close();
+        return IndexFormat.blindDocument(blindValues);
     }
 
 }
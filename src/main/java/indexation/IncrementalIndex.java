@@ -0,0 +1,457 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index written by one of the indexers, either from scratch or incrementally.
+ * <p>
+ * Every document is stored with a stable ID of the definition it was built from, e.g. its URI,
+ * and a hash of the source the document was built from.
+ * When the index is updated incrementally, definitions whose hash hasn't changed are skipped,
+ * changed definitions replace their old document, and documents of definitions that are no longer
+ * in the source are deleted once the whole source has been indexed.
+ * <p>
+ * A sharded index writes every document to the shards picked by <code>IndexFormat.shardsOf</code>,
+ * marking the copy in <code>IndexFormat.primaryShardOf</code> as the primary one,
+ * and moves it between shards when its definienda change. The shards are committed one after the other.
+ */
+public class IncrementalIndex implements IndexingPipeline.DocumentWriter, Closeable {
+    // Names of the fields identifying the definition of a document, they aren't properties of the definition
+    public static final String ID_FIELD_NAME = "id";
+    public static final String HASH_FIELD_NAME = "hash";
+
+    private static final Set<String> BOOKKEEPING_FIELDS = new HashSet<>(Arrays.asList(ID_FIELD_NAME, HASH_FIELD_NAME));
+
+    // A writer per shard, a single one if the index isn't sharded
+    private final IndexWriter[] writers;
+    // Directory of the index on disk, null if it isn't stored on disk
+    private final Path location;
+    // Whether the documents are keyed for the index sort by definiendum
+    private final boolean sorted;
+    // Hashes of the definitions already in the index by their ID, empty when indexing from scratch
+    private final Map<String, String> indexedHashes;
+    // Shards already holding a definition by its ID as a bit set, only kept for sharded indexes
+    private final Map<String, Long> indexedShards;
+    // Whether an existing index is updated, only then definitions that are no longer in the source are deleted
+    private final boolean appending;
+    // Whether IDs have to stay stable for later incremental updates, only then repeated keys are told apart
+    private final boolean incremental;
+    // IDs of the definitions in the source, only kept while appending to an existing index
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    // Number of occurrences of each key, only kept when indexing incrementally
+    private final Map<String, Integer> occurrences = new ConcurrentHashMap<>();
+
+    private boolean finished = false;
+
+    private final LongAdder added = new LongAdder();
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+
+    private IncrementalIndex(IndexWriter[] writers, Path location, boolean sorted, Map<String, String> indexedHashes,
+                             Map<String, Long> indexedShards, boolean appending, boolean incremental) {
+        this.writers = writers;
+        this.location = location;
+        this.sorted = sorted;
+        this.indexedHashes = indexedHashes;
+        this.indexedShards = indexedShards;
+        this.appending = appending;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Opens the index in <code>destination</code> for writing.
+     * <p>
+     * If <code>options</code> are incremental and <code>destination</code> holds a version 1 index whose
+     * documents all have an ID, that index is updated, otherwise it is replaced by a new one.
+     *
+     * @param destination directory of the index
+     * @param options     whether to index incrementally and to sort by definiendum, and the RAM buffer size
+     * @return index ready for writing version 1 documents
+     * @throws IOException if the index can't be opened
+     */
+    static IncrementalIndex open(Directory destination, IndexingOptions options) throws IOException {
+        return open(destination, options, 1);
+    }
+
+    /**
+     * Opens the index in <code>destination</code> for writing documents of the given format version.
+     * <p>
+     * If <code>options</code> are incremental and <code>destination</code> holds an index of the same version,
+     * sort and number of shards whose documents all have an ID, that index is updated,
+     * otherwise it is replaced by a new one.
+     *
+     * @param destination directory of the index, which has to be on disk if the index is sharded
+     * @param options     whether to index incrementally, to sort by definiendum and into how many shards,
+     *                    and the RAM buffer size
+     * @param version     version of the <code>IndexFormat</code> the documents are written in
+     * @return index ready for writing
+     * @throws IOException if the index can't be opened
+     */
+    static IncrementalIndex open(Directory destination, IndexingOptions options, int version) throws IOException {
+        int shards = options.getShards();
+        Path location = destination instanceof FSDirectory ? ((FSDirectory) destination).getDirectory() : null;
+        Directory[] directories = new Directory[shards];
+        if (shards == 1) {
+            directories[0] = destination;
+        } else if (location == null) {
+            throw new IllegalArgumentException("Sharded indexes can only be written to a directory on disk");
+        } else {
+            for (int shard = 0; shard < shards; shard++) {
+                directories[shard] = FSDirectory.open(IndexFormat.shardLocation(location, shard));
+            }
+        }
+
+        Sort sort = options.isSortedByDefiniendum() ? IndexFormat.definiendumSort() : null;
+        Map<String, String> indexedHashes = new HashMap<>();
+        Map<String, Long> indexedShards = new HashMap<>();
+        // Documents are routed by the number of shards, so an index with another number of shards can't be updated
+        boolean append = options.isIncremental()
+                && (location == null || IndexFormat.countShards(location) == (shards == 1 ? 0 : shards));
+        for (int shard = 0; append && shard < shards; shard++) {
+            append = DirectoryReader.indexExists(directories[shard])
+                    && readHashes(directories[shard], version, sort, indexedHashes,
+                    shards == 1 ? null : indexedShards, shard);
+        }
+        if (options.isIncremental() && !append) {
+            System.out.println("No incrementally updatable index found, indexing from scratch");
+            indexedHashes.clear();
+            indexedShards.clear();
+        }
+
+        IndexWriter[] writers = new IndexWriter[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+            // The buffer is shared by the shards
+            config.setRAMBufferSizeMB(options.getRamBufferSizeMB() / shards);
+            config.setOpenMode(append ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                    : IndexWriterConfig.OpenMode.CREATE);
+            if (sort != null) {
+                config.setIndexSort(sort);
+            }
+            writers[shard] = new IndexWriter(directories[shard], config);
+            writers[shard].setLiveCommitData(IndexFormat.userData(version).entrySet());
+        }
+        return new IncrementalIndex(writers, location, sort != null, indexedHashes, indexedShards, append,
+                options.isIncremental());
+    }
+
+    /**
+     * @return whether <code>field</code> identifies the definition of a document rather than being one of its properties
+     */
+    public static boolean isBookkeepingField(String field) {
+        return BOOKKEEPING_FIELDS.contains(field);
+    }
+
+    /**
+     * Hashes the source of a definition, so that a changed definition can be told apart from an unchanged one.
+     *
+     * @param parts texts the definition consists of, in a stable order
+     * @return hexadecimal hash of <code>parts</code>
+     */
+    static String hash(List<String> parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is supported by every JVM", e);
+        }
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            // Separates the parts, so that moving text from one part to the next changes the hash
+            digest.update((byte) 0);
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Hashes the names and values of all textual fields of <code>document</code>.
+     * Fields without a string value, e.g. doc values mirroring an indexed field, are skipped.
+     */
+    static String hash(Document document) {
+        List<String> parts = new ArrayList<>();
+        for (IndexableField field : document.getFields()) {
+            if (field.stringValue() != null) {
+                parts.add(field.name());
+                parts.add(field.stringValue());
+            }
+        }
+        return hash(parts);
+    }
+
+    /**
+     * Checks whether the definition with <code>id</code> is indexed with the same <code>hash</code>,
+     * and remembers that the definition is still in the source if an existing index is being updated.
+     *
+     * @param id   stable ID of the definition
+     * @param hash hash of the definition's source
+     * @return true if the definition's document can be kept as it is
+     */
+    boolean isUnchanged(String id, String hash) {
+        if (!appending) {
+            return false;
+        }
+        seen.add(id);
+        if (hash.equals(indexedHashes.get(id))) {
+            unchanged.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the fields identifying the definition of <code>document</code>.
+     *
+     * @return <code>document</code>
+     */
+    static Document identify(Document document, String id, String hash) {
+        document.add(new StringField(ID_FIELD_NAME, id, Field.Store.YES));
+        document.add(new StoredField(HASH_FIELD_NAME, hash));
+        return document;
+    }
+
+    /**
+     * Writes <code>document</code> unless the indexed one is the same, for sources read on a single thread.
+     * <p>
+     * Sources without stable IDs may pass null as <code>key</code>, in which case the document is identified
+     * by its content, so that a changed document replaces the old one through a delete and an add.
+     * Keys occurring several times in the source are told apart by the order of their occurrence.
+     *
+     * @param key      ID of the definition within the source, or null
+     * @param document document of the definition, without the identifying fields
+     * @throws IOException if the document can't be written
+     */
+    void update(String key, Document document) throws IOException {
+        String hash = hash(document);
+        String id = nextId(key != null ? key : hash);
+        if (!isUnchanged(id, hash)) {
+            write(identify(document, id, hash));
+        }
+    }
+
+    /**
+     * Writes a document carrying the identifying fields, replacing the indexed document of its definition.
+     */
+    @Override
+    public void write(Document document) throws IOException {
+        if (sorted) {
+            IndexFormat.addSortKey(document);
+        }
+        String id = document.get(ID_FIELD_NAME);
+        Term idTerm = new Term(ID_FIELD_NAME, id);
+        long targets = IndexFormat.shardsOf(document, writers.length);
+        int primary = writers.length == 1 ? -1 : IndexFormat.primaryShardOf(document, writers.length);
+        long indexed = indexedShards(id);
+        for (int shard = 0; shard < writers.length; shard++) {
+            long bit = 1L << shard;
+            if ((targets & bit) != 0) {
+                // Only the copy in the primary shard is marked, the others stay the same document
+                Document copy = shard == primary ? IndexFormat.markPrimary(copyOf(document)) : document;
+                if ((indexed & bit) != 0) {
+                    writers[shard].updateDocument(idTerm, copy);
+                } else {
+                    writers[shard].addDocument(copy);
+                }
+            } else if ((indexed & bit) != 0) {
+                // The definienda of the definition have changed, so the shard doesn't hold it anymore
+                writers[shard].deleteDocuments(idTerm);
+            }
+        }
+        if (indexedHashes.containsKey(id)) {
+            updated.increment();
+        } else {
+            added.increment();
+        }
+    }
+
+    private static Document copyOf(Document document) {
+        Document copy = new Document();
+        for (IndexableField field : document.getFields()) {
+            copy.add(field);
+        }
+        return copy;
+    }
+
+    /**
+     * Deletes the documents of definitions that haven't been seen since the index was opened, and commits.
+     * Must only be called after the whole source has been indexed.
+     *
+     * @throws IOException if the index can't be updated
+     */
+    void finish() throws IOException {
+        long deleted = 0;
+        for (String id : indexedHashes.keySet()) {
+            if (!seen.contains(id)) {
+                long indexed = indexedShards(id);
+                for (int shard = 0; shard < writers.length; shard++) {
+                    if ((indexed & (1L << shard)) != 0) {
+                        writers[shard].deleteDocuments(new Term(ID_FIELD_NAME, id));
+                    }
+                }
+                deleted++;
+            }
+        }
+        for (IndexWriter writer : writers) {
+            writer.commit();
+        }
+        removeStaleShards();
+        finished = true;
+        System.out.println(String.format("Added %d, updated %d and deleted %d documents, kept %d unchanged",
+                added.sum(), updated.sum(), deleted, unchanged.sum()));
+    }
+
+    /**
+     * Closes the writers, discarding all changes if the index hasn't been finished, e.g. because indexing failed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (IndexWriter writer : writers) {
+            if (finished) {
+                writer.close();
+            } else {
+                writer.rollback();
+            }
+            // Directories of shards have been opened along with the index
+            if (writers.length > 1) {
+                writer.getDirectory().close();
+            }
+        }
+    }
+
+    /**
+     * Tells apart keys occurring several times in the source by the order of their occurrence. Occurrences are
+     * only counted when indexing incrementally, since only then the IDs have to match those of a later update.
+     *
+     * @return <code>key</code> for its first occurrence, followed by the number of the occurrence otherwise
+     */
+    String nextId(String key) {
+        if (!incremental) {
+            return key;
+        }
+        int occurrence = occurrences.merge(key, 1, Integer::sum);
+        return occurrence == 1 ? key : key + "#" + occurrence;
+    }
+
+    /**
+     * @return the shards already holding the definition with <code>id</code>, as a bit set
+     */
+    private long indexedShards(String id) {
+        if (writers.length == 1) {
+            return indexedHashes.containsKey(id) ? 1L : 0L;
+        }
+        return indexedShards.getOrDefault(id, 0L);
+    }
+
+    /**
+     * Removes whatever is left of the index from before it was written with another number of shards,
+     * so that readers don't mistake it for a part of the index.
+     */
+    private void removeStaleShards() throws IOException {
+        if (location == null) {
+            return;
+        }
+        if (writers.length > 1) {
+            // The segments of an index that wasn't sharded
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(location, Files::isRegularFile)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(IndexFileNames.SEGMENTS) || IndexFileNames.CODEC_FILE_PATTERN.matcher(name).matches()
+                            || name.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+        int shard = writers.length == 1 ? 0 : writers.length;
+        while (Files.isDirectory(IndexFormat.shardLocation(location, shard))) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(IndexFormat.shardLocation(location, shard))) {
+                // Files are deleted before the directories containing them
+                files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                Files.delete(file);
+            }
+            shard++;
+        }
+    }
+
+    /**
+     * Reads the IDs and hashes of all documents in an index or one of its shards.
+     *
+     * @param indexedShards map the shard is recorded in for each ID, null if the index isn't sharded
+     * @return false if the index is of another version or sorted differently, since the sort of an index
+     * can't be changed, or a document doesn't have an ID, i.e. the index was written before IDs were stored
+     */
+    private static boolean readHashes(Directory destination, int version, Sort sort, Map<String, String> indexedHashes,
+                                      Map<String, Long> indexedShards, int shard) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(destination)) {
+            if (IndexFormat.version(reader) != version) {
+                return false;
+            }
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leaf = context.reader();
+                if (!Objects.equals(sort, leaf.getMetaData().getSort())) {
+                    return false;
+                }
+                Bits liveDocs = leaf.getLiveDocs();
+                for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    Document document = leaf.document(doc, BOOKKEEPING_FIELDS);
+                    String id = document.get(ID_FIELD_NAME);
+                    if (id == null) {
+                        return false;
+                    }
+                    indexedHashes.put(id, document.get(HASH_FIELD_NAME));
+                    if (indexedShards != null) {
+                        indexedShards.merge(id, 1L << shard, (first, second) -> first | second);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
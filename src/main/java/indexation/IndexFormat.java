@@ -0,0 +1,412 @@
+package indexation;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import prep.Property;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Layout of the documents in the indexes, and how properties are read back from them.
+ * <p>
+ * Version 1 stores every definiendum, property value and lemma as a stored <code>TextField</code>,
+ * so reading the properties of a document loads and decompresses all of its stored fields.
+ * Version 2 indexes the definienda as text and the property values as keywords without storing either,
+ * and keeps the (role, value) pairs of a document in <code>SortedSetDocValues</code>, in the order of the
+ * definition. The lemmas of blind documents are indexed as text and kept in doc values as well, which keep a
+ * set: unlike version 1, their lemmas are read back sorted and without repetitions.
+ * Keywords and doc values are truncated to the longest prefix Lucene accepts, <code>MAX_TERM_BYTES</code> bytes.
+ * The version of an index is recorded in the user data of its commits.
+ * <p>
+ * Indexes of either version may be sorted by a keyword copy of the definiendum, kept in
+ * <code>SortedDocValues</code>, so that the documents of a term are stored next to each other.
+ * <p>
+ * A sharded index is a directory holding an index per shard in <code>shard-0</code> to <code>shard-N</code>.
+ * Every document is written to the shards of the terms of its definienda, so that the definitions
+ * of a term are all found in the shard of the term. The copy in the shard of its first term is marked as the
+ * primary one, so that scans of the whole index count every document once.
+ */
+public final class IndexFormat {
+    // Version written by the indexers that support the current layout
+    public static final int VERSION = 2;
+    // Key of the format version in the commit user data, indexes without it are of version 1
+    public static final String VERSION_KEY = "format";
+    // Doc values field holding the (role, value) pairs of a role based document
+    public static final String PROPERTIES_FIELD_NAME = "properties";
+
+    public static final String DEFINIENDUM_FIELD_NAME = "definiendum";
+    // Lower cased first definiendum of a document, which sorted indexes are sorted by, kept as doc values and a keyword
+    public static final String SORT_KEY_FIELD_NAME = "definiendumKey";
+
+    // Prefix of the directories of the shards of a sharded index, followed by the number of the shard
+    public static final String SHARD_DIRECTORY_PREFIX = "shard-";
+    // The shards a document is written to are kept in the bits of a long
+    public static final int MAX_SHARDS = Long.SIZE;
+    // Keyword marking the one copy of a document within a sharded index that whole index scans count
+    public static final String PRIMARY_FIELD_NAME = "primary";
+    private static final String PRIMARY_VALUE = "T";
+
+    // Same analyzer as the one the indexes are written with, so that documents are routed by the indexed terms
+    private static final Analyzer ANALYZER = new StandardAnalyzer();
+
+    // Separates the role from the value within a pair
+    private static final byte SEPARATOR = 0;
+    // Pairs are prefixed with their position, so that sorting the set restores the order of the definition
+    private static final int POSITION_BYTES = 2;
+    private static final int MAX_PROPERTIES = 1 << (8 * POSITION_BYTES);
+    // Longest keyword or doc value Lucene accepts, in UTF-8 bytes
+    public static final int MAX_TERM_BYTES = IndexWriter.MAX_TERM_LENGTH;
+
+    private IndexFormat() {
+    }
+
+    /**
+     * Creates the version 2 role based document of a definition.
+     *
+     * @param definienda terms defined by the definition
+     * @param properties properties of the definition
+     * @return document with a text field per definiendum, a keyword field per property and the pairs in doc values
+     */
+    public static Document roleDocument(List<String> definienda, List<Property> properties) {
+        if (definienda.size() + properties.size() > MAX_PROPERTIES) {
+            throw new IllegalArgumentException("A definition can have at most " + MAX_PROPERTIES
+                    + " definienda and properties, got " + (definienda.size() + properties.size()));
+        }
+        Document document = new Document();
+        int position = 0;
+        for (String definiendum : definienda) {
+            document.add(new TextField(DEFINIENDUM_FIELD_NAME, definiendum, Field.Store.NO));
+            document.add(new SortedSetDocValuesField(PROPERTIES_FIELD_NAME,
+                    encode(position++, DEFINIENDUM_FIELD_NAME, definiendum)));
+        }
+        for (Property property : properties) {
+            document.add(new StringField(property.getRole(), truncate(property.getValue(), MAX_TERM_BYTES),
+                    Field.Store.NO));
+            document.add(new SortedSetDocValuesField(PROPERTIES_FIELD_NAME,
+                    encode(position++, property.getRole(), property.getValue())));
+        }
+        return document;
+    }
+
+    /**
+     * Creates the version 2 blind document holding <code>lemmas</code>.
+     */
+    public static Document blindDocument(List<String> lemmas) {
+        Document document = new Document();
+        for (String lemma : lemmas) {
+            document.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemma, Field.Store.NO));
+            document.add(new SortedSetDocValuesField(GraphIndexer.BLIND_FIELD_NAME,
+                    new BytesRef(truncate(lemma, MAX_TERM_BYTES))));
+        }
+        return document;
+    }
+
+    /**
+     * @return the index sort of indexes sorted by definiendum
+     */
+    public static Sort definiendumSort() {
+        return new Sort(new SortField(SORT_KEY_FIELD_NAME, SortField.Type.STRING));
+    }
+
+    /**
+     * Adds the key a sorted index is sorted by to a document of either version.
+     * Documents without a definiendum, e.g. blind documents, are keyed by their first lemma,
+     * which is the lemma of their definiendum.
+     * <p>
+     * The key is indexed as a keyword as well, so that <code>definiendumKeyQuery</code> matches exactly the
+     * documents stored next to each other for a term.
+     *
+     * @return <code>document</code>
+     */
+    public static Document addSortKey(Document document) {
+        String key = document.get(DEFINIENDUM_FIELD_NAME);
+        if (key == null) {
+            key = document.get(GraphIndexer.BLIND_FIELD_NAME);
+        }
+        if (key != null) {
+            key = sortKey(key);
+            document.add(new SortedDocValuesField(SORT_KEY_FIELD_NAME, new BytesRef(key)));
+            document.add(new StringField(SORT_KEY_FIELD_NAME, key, Field.Store.NO));
+        }
+        return document;
+    }
+
+    /**
+     * Matches the documents whose first definiendum is <code>definiendum</code> within a sorted index,
+     * which are stored next to each other. Indexes sorted before the key was indexed have no matches.
+     *
+     * @param definiendum term to look up
+     * @return query on the sort key
+     */
+    public static Query definiendumKeyQuery(String definiendum) {
+        return new TermQuery(new Term(SORT_KEY_FIELD_NAME, sortKey(definiendum)));
+    }
+
+    private static String sortKey(String definiendum) {
+        return truncate(definiendum.toLowerCase(Locale.ROOT), MAX_TERM_BYTES);
+    }
+
+    /**
+     * Checks whether all segments of <code>reader</code> are sorted by definiendum,
+     * so that lookups can collect the documents in index order and terminate early.
+     */
+    public static boolean isSortedByDefiniendum(IndexReader reader) {
+        Sort sort = definiendumSort();
+        for (LeafReaderContext context : reader.leaves()) {
+            if (!sort.equals(context.reader().getMetaData().getSort())) {
+                return false;
+            }
+        }
+        return !reader.leaves().isEmpty();
+    }
+
+    /**
+     * Picks the shard holding the definitions of <code>term</code>.
+     *
+     * @param term   indexed term of a definiendum
+     * @param shards number of shards of the index
+     * @return number of the shard, from 0 to <code>shards - 1</code>
+     */
+    public static int shardOf(String term, int shards) {
+        // The hash code of a string is specified, so a term keeps its shard across runs
+        return Math.floorMod(term.hashCode(), shards);
+    }
+
+    /**
+     * Picks the shards a document of either version is written to. These are the shards of all terms of its
+     * definienda, so documents with several definienda may be written to several shards. Documents without
+     * a definiendum, e.g. blind documents, are written to the shard of their first lemma.
+     *
+     * @return the shards as a bit set
+     * @throws IOException if a definiendum can't be analyzed
+     */
+    static long shardsOf(Document document, int shards) throws IOException {
+        return shardsOf(document, shards, false);
+    }
+
+    /**
+     * Picks the shard holding the primary copy of a document, the shard of the first term of its definienda,
+     * which is one of the shards picked by <code>shardsOf</code>.
+     *
+     * @return number of the shard
+     * @throws IOException if a definiendum can't be analyzed
+     */
+    static int primaryShardOf(Document document, int shards) throws IOException {
+        return Long.numberOfTrailingZeros(shardsOf(document, shards, true));
+    }
+
+    private static long shardsOf(Document document, int shards, boolean firstTermOnly) throws IOException {
+        if (shards == 1) {
+            return 1L;
+        }
+        long mask = 0;
+        for (String definiendum : document.getValues(DEFINIENDUM_FIELD_NAME)) {
+            try (TokenStream tokens = ANALYZER.tokenStream(DEFINIENDUM_FIELD_NAME, definiendum)) {
+                CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+                tokens.reset();
+                while (tokens.incrementToken()) {
+                    if (mask == 0 || !firstTermOnly) {
+                        mask |= 1L << shardOf(term.toString(), shards);
+                    }
+                }
+                tokens.end();
+            }
+        }
+        if (mask == 0) {
+            String lemma = document.get(GraphIndexer.BLIND_FIELD_NAME);
+            mask = 1L << (lemma == null ? 0 : shardOf(lemma.toLowerCase(Locale.ROOT), shards));
+        }
+        return mask;
+    }
+
+    /**
+     * Marks the copy of <code>document</code> written to its primary shard, see <code>primaryShardOf</code>.
+     *
+     * @return <code>document</code>
+     */
+    static Document markPrimary(Document document) {
+        document.add(new StringField(PRIMARY_FIELD_NAME, PRIMARY_VALUE, Field.Store.NO));
+        return document;
+    }
+
+    /**
+     * @return term matching the primary copies of the documents of a sharded index
+     */
+    public static Term primaryTerm() {
+        return new Term(PRIMARY_FIELD_NAME, PRIMARY_VALUE);
+    }
+
+    /**
+     * @return the directory of <code>shard</code> within the sharded index at <code>location</code>
+     */
+    public static Path shardLocation(Path location, int shard) {
+        return location.resolve(SHARD_DIRECTORY_PREFIX + shard);
+    }
+
+    /**
+     * Counts the shards of the index at <code>location</code>.
+     *
+     * @return number of consecutively numbered shard directories, 0 if the index isn't sharded
+     */
+    public static int countShards(Path location) {
+        int shards = 0;
+        while (Files.isDirectory(shardLocation(location, shards))) {
+            shards++;
+        }
+        return shards;
+    }
+
+    /**
+     * @return the commit user data recording that an index is of <code>version</code>
+     */
+    static Map<String, String> userData(int version) {
+        return Collections.singletonMap(VERSION_KEY, String.valueOf(version));
+    }
+
+    /**
+     * Reads the format version of the latest commit of an index.
+     */
+    public static int version(DirectoryReader reader) throws IOException {
+        String version = reader.getIndexCommit().getUserData().get(VERSION_KEY);
+        return version == null ? 1 : Integer.parseInt(version);
+    }
+
+    /**
+     * Checks whether the role fields of <code>reader</code> hold whole values as keywords,
+     * rather than analyzed text. Works for any reader, e.g. one combining several indexes.
+     */
+    public static boolean hasKeywordRoles(IndexReader reader) {
+        for (LeafReaderContext context : reader.leaves()) {
+            if (context.reader().getFieldInfos().fieldInfo(PROPERTIES_FIELD_NAME) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the properties of a role based document, including its definienda as properties of the
+     * <code>definiendum</code> role, of either version.
+     *
+     * @param reader reader the document was found in
+     * @param doc    ID of the document within <code>reader</code>
+     * @return properties in the order of the definition
+     * @throws IOException if the document can't be read
+     */
+    public static List<Property> readProperties(IndexReader reader, int doc) throws IOException {
+        LeafReaderContext context = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+        SortedSetDocValues pairs = context.reader().getSortedSetDocValues(PROPERTIES_FIELD_NAME);
+        List<Property> properties = new ArrayList<>();
+        if (pairs == null) {
+            // Version 1 stores every property as a field of its own
+            for (IndexableField field : reader.document(doc).getFields()) {
+                if (!IncrementalIndex.isBookkeepingField(field.name())) {
+                    properties.add(new Property(field.stringValue(), field.name()));
+                }
+            }
+            return properties;
+        }
+
+        if (pairs.advanceExact(doc - context.docBase)) {
+            for (long ord = pairs.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = pairs.nextOrd()) {
+                properties.add(decode(pairs.lookupOrd(ord)));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the lemmas of a blind document of either version, in the order of the document for version 1,
+     * sorted and without repetitions for version 2.
+     */
+    public static List<String> readBlindValues(IndexReader reader, int doc) throws IOException {
+        LeafReaderContext context = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+        LeafReader leaf = context.reader();
+        SortedSetDocValues lemmas = leaf.getSortedSetDocValues(GraphIndexer.BLIND_FIELD_NAME);
+        List<String> values = new ArrayList<>();
+        if (lemmas == null) {
+            Collections.addAll(values, reader.document(doc).getValues(GraphIndexer.BLIND_FIELD_NAME));
+        } else if (lemmas.advanceExact(doc - context.docBase)) {
+            for (long ord = lemmas.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = lemmas.nextOrd()) {
+                values.add(lemmas.lookupOrd(ord).utf8ToString());
+            }
+        }
+        return values;
+    }
+
+    private static BytesRef encode(int position, String role, String value) {
+        byte[] roleBytes = role.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = truncate(value, MAX_TERM_BYTES - POSITION_BYTES - roleBytes.length - 1)
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] pair = new byte[POSITION_BYTES + roleBytes.length + 1 + valueBytes.length];
+        pair[0] = (byte) (position >>> 8);
+        pair[1] = (byte) position;
+        System.arraycopy(roleBytes, 0, pair, POSITION_BYTES, roleBytes.length);
+        pair[POSITION_BYTES + roleBytes.length] = SEPARATOR;
+        System.arraycopy(valueBytes, 0, pair, POSITION_BYTES + roleBytes.length + 1, valueBytes.length);
+        return new BytesRef(pair);
+    }
+
+    /**
+     * @return the longest prefix of <code>value</code> whose UTF-8 encoding takes at most <code>maxBytes</code>,
+     * which doesn't split a character
+     */
+    static String truncate(String value, int maxBytes) {
+        // A char takes at most 3 bytes, a surrogate pair 4
+        if (value.length() * 3 <= maxBytes) {
+            return value;
+        }
+        int bytes = 0;
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes > maxBytes) {
+                return value.substring(0, i);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return value;
+    }
+
+    private static Property decode(BytesRef pair) {
+        int start = pair.offset + POSITION_BYTES;
+        int end = pair.offset + pair.length;
+        int separator = start;
+        while (pair.bytes[separator] != SEPARATOR) {
+            separator++;
+        }
+        String role = new String(pair.bytes, start, separator - start, StandardCharsets.UTF_8);
+        String value = new String(pair.bytes, separator + 1, end - separator - 1, StandardCharsets.UTF_8);
+        return new Property(value, role);
+    }
+}
@@ -0,0 +1,147 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import prep.Property;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts an index of version 1 of the <code>IndexFormat</code> to the current version.
+ * <p>
+ * Usage: <code>IndexMigration SOURCE_INDEX DESTINATION_INDEX</code>, the destination is replaced
+ * and the sizes of both indexes are reported once the migration has finished.
+ * Each shard of a sharded index is migrated on its own.
+ */
+public class IndexMigration {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || Paths.get(args[0]).toAbsolutePath().equals(Paths.get(args[1]).toAbsolutePath())) {
+            System.out.println("Usage: IndexMigration SOURCE_INDEX DESTINATION_INDEX, the destination has to differ " +
+                    "from the source");
+            return;
+        }
+        Path sourceLocation = Paths.get(args[0]);
+        Path destinationLocation = Paths.get(args[1]);
+        // Every shard of a sharded index is migrated to the same shard of the destination
+        int shards = IndexFormat.countShards(sourceLocation);
+        long documents = 0;
+        long sourceSize = 0;
+        long destinationSize = 0;
+        for (int shard = 0; shard < Math.max(1, shards); shard++) {
+            try (Directory source = FSDirectory.open(shards == 0 ? sourceLocation
+                    : IndexFormat.shardLocation(sourceLocation, shard));
+                 Directory destination = FSDirectory.open(shards == 0 ? destinationLocation
+                         : IndexFormat.shardLocation(destinationLocation, shard))) {
+                documents += migrate(source, destination, shard, Math.max(1, shards));
+                sourceSize += size(source);
+                destinationSize += size(destination);
+            }
+        }
+        System.out.println(String.format("Migrated %d documents, %.1f MB before and %.1f MB after (%.0f%%)",
+                documents, sourceSize / 1e6, destinationSize / 1e6,
+                100.0 * destinationSize / Math.max(1, sourceSize)));
+    }
+
+    /**
+     * Rewrites every document of <code>source</code> in the current format into a new index in
+     * <code>destination</code>, keeping the IDs and hashes of incrementally updatable indexes. Copies of a sharded
+     * index are marked as primary in the shard <code>IndexFormat.primaryShardOf</code> picks for them.
+     *
+     * @param source      index of version 1
+     * @param destination directory the new index is written to, an existing index in it is replaced
+     * @param shard       number of the shard <code>source</code> is, 0 if the index isn't sharded
+     * @param shards      number of shards of the index, 1 if it isn't sharded
+     * @return number of migrated documents
+     * @throws IOException if either index can't be accessed, or the source is already of the current version
+     */
+    public static long migrate(Directory source, Directory destination, int shard, int shards) throws IOException {
+        long documents = 0;
+        try (DirectoryReader reader = DirectoryReader.open(source)) {
+            if (IndexFormat.version(reader) == IndexFormat.VERSION) {
+                throw new IOException("The index is already of version " + IndexFormat.VERSION);
+            }
+            // A sorted index stays sorted, the key isn't stored so it's derived from the converted document again
+            boolean sorted = IndexFormat.isSortedByDefiniendum(reader);
+            IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            if (sorted) {
+                config.setIndexSort(IndexFormat.definiendumSort());
+            }
+
+            try (IndexWriter writer = new IndexWriter(destination, config)) {
+                writer.setLiveCommitData(IndexFormat.userData(IndexFormat.VERSION).entrySet());
+
+                for (LeafReaderContext context : reader.leaves()) {
+                    LeafReader leaf = context.reader();
+                    Bits liveDocs = leaf.getLiveDocs();
+                    for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            Document converted = convert(leaf.document(doc));
+                            if (shards > 1 && IndexFormat.primaryShardOf(converted, shards) == shard) {
+                                IndexFormat.markPrimary(converted);
+                            }
+                            writer.addDocument(sorted ? IndexFormat.addSortKey(converted) : converted);
+                            documents++;
+                        }
+                    }
+                }
+                // The index won't be written to anymore, so it's merged into its smallest form
+                writer.forceMerge(1);
+                writer.commit();
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Converts a version 1 document, whose stored fields are either definienda, properties, lemmas of the
+     * blind field or the ID and hash of its definition.
+     */
+    private static Document convert(Document original) {
+        List<String> definienda = new ArrayList<>();
+        List<Property> properties = new ArrayList<>();
+        List<String> lemmas = new ArrayList<>();
+        for (IndexableField field : original.getFields()) {
+            if (field.name().equals(IndexFormat.DEFINIENDUM_FIELD_NAME)) {
+                definienda.add(field.stringValue());
+            } else if (field.name().equals(GraphIndexer.BLIND_FIELD_NAME)) {
+                lemmas.add(field.stringValue());
+            } else if (!IncrementalIndex.isBookkeepingField(field.name())) {
+                properties.add(new Property(field.stringValue(), field.name()));
+            }
+        }
+
+        Document converted = definienda.isEmpty() && properties.isEmpty()
+                ? new Document()
+                : IndexFormat.roleDocument(definienda, properties);
+        for (IndexableField field : IndexFormat.blindDocument(lemmas)) {
+            converted.add(field);
+        }
+        String id = original.get(IncrementalIndex.ID_FIELD_NAME);
+        if (id != null) {
+            IncrementalIndex.identify(converted, id, original.get(IncrementalIndex.HASH_FIELD_NAME));
+        }
+        return converted;
+    }
+
+    private static long size(Directory directory) throws IOException {
+        long size = 0;
+        for (String file : directory.listAll()) {
+            size += directory.fileLength(file);
+        }
+        return size;
+    }
+}
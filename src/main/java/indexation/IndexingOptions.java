@@ -0,0 +1,140 @@
+package indexation;
+
+import org.apache.lucene.index.IndexWriterConfig;
+
+/**
+ * Options of the multi-threaded indexers.
+ * <p>
+ * By default documents are built on as many workers as there are processors, with Lucene's default RAM buffer
+ * and progress reported every 10 seconds, replacing any existing index and keeping the documents in insertion order.
+ * The documents are written to a single index rather than to shards.
+ */
+public class IndexingOptions {
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+    private int queueCapacity = 1024;
+    private int chunkSize = 16 * 1024 * 1024;
+    private int progressIntervalSeconds = 10;
+    private boolean incremental = false;
+    private boolean sortedByDefiniendum = false;
+    private int shards = 1;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @param workers number of threads lemmatizing and building documents
+     */
+    public IndexingOptions setWorkers(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("The number of workers has to be positive, got: " + workers);
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    public double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * @param ramBufferSizeMB memory the <code>IndexWriter</code> buffers documents in before flushing a segment
+     */
+    public IndexingOptions setRamBufferSizeMB(double ramBufferSizeMB) {
+        if (ramBufferSizeMB <= 0) {
+            throw new IllegalArgumentException("The RAM buffer size has to be positive, got: " + ramBufferSizeMB);
+        }
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity number of items that may wait between two stages of the pipeline
+     */
+    public IndexingOptions setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queue capacity has to be positive, got: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize number of bytes of a source file parsed by a single worker, rounded up to whole lines
+     */
+    public IndexingOptions setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size has to be positive, got: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+
+    /**
+     * @param progressIntervalSeconds how often the progress is printed, 0 to disable progress reports
+     */
+    public IndexingOptions setProgressIntervalSeconds(int progressIntervalSeconds) {
+        if (progressIntervalSeconds < 0) {
+            throw new IllegalArgumentException("The progress interval can't be negative, got: "
+                    + progressIntervalSeconds);
+        }
+        this.progressIntervalSeconds = progressIntervalSeconds;
+        return this;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param incremental whether an existing index is updated with the changed definitions only,
+     *                    rather than replaced by a new index
+     */
+    public IndexingOptions setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public boolean isSortedByDefiniendum() {
+        return sortedByDefiniendum;
+    }
+
+    /**
+     * @param sortedByDefiniendum whether the documents are sorted by their definiendum within each segment,
+     *                            so that lookups of a term read neighbouring documents and can terminate early
+     */
+    public IndexingOptions setSortedByDefiniendum(boolean sortedByDefiniendum) {
+        this.sortedByDefiniendum = sortedByDefiniendum;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @param shards number of indexes the documents are partitioned into by the hash of their definiendum,
+     *               1 for a single index, at most <code>IndexFormat.MAX_SHARDS</code>
+     */
+    public IndexingOptions setShards(int shards) {
+        if (shards <= 0 || shards > IndexFormat.MAX_SHARDS) {
+            throw new IllegalArgumentException("The number of shards has to be between 1 and "
+                    + IndexFormat.MAX_SHARDS + ", got: " + shards);
+        }
+        this.shards = shards;
+        return this;
+    }
+}
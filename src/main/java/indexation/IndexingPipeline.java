@@ -0,0 +1,313 @@
+package indexation;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged pipeline turning items, e.g. definitions, into documents of an index.
+ * <p>
+ * Items submitted by the caller wait in a bounded queue for one of the workers, which build their documents.
+ * The documents wait in a second bounded queue for the writer stage, which adds them to the index in the order
+ * the items were submitted, so that the index is the same as the one built on a single thread. The order matters
+ * beyond ties between equally scored documents: <code>IncrementalIndex</code> tells repeated keys apart by their
+ * order, and isn't thread safe, so documents are written from a single thread.
+ * An item may be written to several indexes at once, one per view of the item, e.g. a role based and a blind one,
+ * in which case the documents of every view are added to the writer of that view.
+ * A full queue blocks the stage before it, and the caller can't have more items in the pipeline than a queue holds,
+ * so neither a slow stage nor a slow item, which documents of later items wait for, lets items pile up in memory.
+ *
+ * @param <T> type of the items
+ */
+class IndexingPipeline<T> implements AutoCloseable {
+    // How long a blocked stage waits before checking whether another stage has failed
+    private static final long POLL_MILLIS = 100;
+
+    private final List<? extends DocumentWriter> writers;
+    private final ViewBuilder<T> builder;
+    private final BlockingQueue<Sequenced<T>> items;
+    private final BlockingQueue<Sequenced<List<List<Document>>>> documents;
+    // Taken for every submitted item until its documents are written, which bounds the documents waiting to be
+    // reordered
+    private final Semaphore inFlight;
+    private final ExecutorService workers;
+    private final ExecutorService writerStage;
+    private final ScheduledExecutorService progressReporter;
+    private final List<Future<?>> workerResults = new ArrayList<>();
+    private final Future<?> writerResult;
+
+    private final AtomicLong documentCount = new AtomicLong();
+    private final long start = System.nanoTime();
+    private long nextSequence = 0;
+    private volatile Throwable failure;
+
+    /**
+     * Starts the workers and the writer stage.
+     *
+     * @param writer  writer the documents are added to, it isn't closed by the pipeline
+     * @param options number of workers, capacity of the queues and progress interval
+     * @param builder builds the documents of an item, called concurrently by all workers
+     */
+    IndexingPipeline(IndexWriter writer, IndexingOptions options, DocumentBuilder<T> builder) {
+        this(writer::addDocument, options, builder);
+    }
+
+    /**
+     * Starts the workers and the writer stage.
+     *
+     * @param writer  adds the documents to an index
+     * @param options number of workers, capacity of the queues and progress interval
+     * @param builder builds the documents of an item, called concurrently by all workers
+     */
+    IndexingPipeline(DocumentWriter writer, IndexingOptions options, DocumentBuilder<T> builder) {
+        this(Collections.singletonList(writer), options, item -> Collections.singletonList(builder.build(item)));
+    }
+
+    /**
+     * Starts the workers and the writer stage of a pipeline writing several views of every item.
+     *
+     * @param writers writers of the views, none of them is closed by the pipeline
+     * @param options number of workers, capacity of the queues and progress interval
+     * @param builder builds the documents of every view of an item, called concurrently by all workers
+     */
+    IndexingPipeline(List<? extends DocumentWriter> writers, IndexingOptions options, ViewBuilder<T> builder) {
+        this.writers = writers;
+        this.builder = builder;
+        this.items = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.documents = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.inFlight = new Semaphore(options.getQueueCapacity());
+
+        workers = Executors.newFixedThreadPool(options.getWorkers());
+        for (int i = 0; i < options.getWorkers(); i++) {
+            workerResults.add(workers.submit(this::buildDocuments));
+        }
+        writerStage = Executors.newSingleThreadExecutor();
+        writerResult = writerStage.submit(this::writeDocuments);
+
+        progressReporter = Executors.newSingleThreadScheduledExecutor();
+        if (options.getProgressIntervalSeconds() > 0) {
+            progressReporter.scheduleAtFixedRate(this::reportProgress, options.getProgressIntervalSeconds(),
+                    options.getProgressIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Queues <code>item</code> for the workers, waiting while the queue is full or as many items as it holds
+     * haven't been written yet.
+     *
+     * @throws IOException if one of the stages has failed
+     */
+    void submit(T item) throws IOException {
+        try {
+            while (!inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        }
+        put(items, new Sequenced<>(nextSequence++, item));
+    }
+
+    /**
+     * Waits until the documents of all submitted items have been added to the index.
+     *
+     * @return number of added documents, summed over all views
+     * @throws IOException if one of the stages has failed
+     */
+    long finish() throws IOException {
+        // Every worker stops once it takes one of the end markers
+        for (int i = 0; i < workerResults.size(); i++) {
+            put(items, Sequenced.end());
+        }
+        for (Future<?> workerResult : workerResults) {
+            await(workerResult);
+        }
+        put(documents, Sequenced.end());
+        await(writerResult);
+        close();
+        reportProgress();
+        return documentCount.get();
+    }
+
+    /**
+     * Stops all stages, abandoning items that haven't been indexed yet if the pipeline hasn't finished.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        writerStage.shutdownNow();
+        progressReporter.shutdownNow();
+    }
+
+    private Void buildDocuments() throws Exception {
+        try {
+            while (true) {
+                Sequenced<T> item = take(items);
+                if (item.isEnd()) {
+                    return null;
+                }
+                List<List<Document>> views = builder.build(item.value);
+                if (views.size() != writers.size()) {
+                    throw new IllegalStateException("Expected " + writers.size() + " views, got " + views.size());
+                }
+                put(documents, new Sequenced<>(item.sequence, views));
+            }
+        } catch (Exception | Error e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private Void writeDocuments() throws Exception {
+        // Documents built out of order wait here until all documents of earlier items have been added, at most
+        // as many items as the permits of inFlight
+        Map<Long, List<List<Document>>> pending = new HashMap<>();
+        long expected = 0;
+        try {
+            while (true) {
+                Sequenced<List<List<Document>>> built = take(documents);
+                if (built.isEnd()) {
+                    return null;
+                }
+                pending.put(built.sequence, built.value);
+                while (pending.containsKey(expected)) {
+                    List<List<Document>> views = pending.remove(expected);
+                    for (int view = 0; view < views.size(); view++) {
+                        for (Document document : views.get(view)) {
+                            writers.get(view).write(document);
+                            documentCount.incrementAndGet();
+                        }
+                    }
+                    expected++;
+                    inFlight.release();
+                }
+            }
+        } catch (Exception | Error e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void reportProgress() {
+        long count = documentCount.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Indexed %d documents in %.0f s (%.1f documents/s)",
+                count, seconds, count / Math.max(seconds, 1e-9)));
+    }
+
+    private void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+    }
+
+    private <E> void put(BlockingQueue<E> queue, E element) throws IOException {
+        try {
+            while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        }
+        checkFailure();
+    }
+
+    private <E> E take(BlockingQueue<E> queue) throws IOException {
+        try {
+            E element;
+            while ((element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            return element;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            close();
+            throw new IOException("Indexing failed", cause);
+        }
+    }
+
+    private void await(Future<?> result) throws IOException {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            close();
+            throw new IOException("Indexing failed", failure != null ? failure : e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new InterruptedIOException("Interrupted while indexing");
+        }
+    }
+
+    /**
+     * Adds a document to an index, called by the writer stage only.
+     */
+    interface DocumentWriter {
+        void write(Document document) throws IOException;
+    }
+
+    /**
+     * Builds the documents of a single item.
+     *
+     * @param <T> type of the item
+     */
+    interface DocumentBuilder<T> {
+        List<Document> build(T item) throws IOException;
+    }
+
+    /**
+     * Builds the documents of every view of a single item, the i-th list holding the documents of the i-th writer.
+     *
+     * @param <T> type of the item
+     */
+    interface ViewBuilder<T> {
+        List<List<Document>> build(T item) throws IOException;
+    }
+
+    /**
+     * Value tagged with the position of its item in the order of submission.
+     */
+    private static class Sequenced<V> {
+        private final long sequence;
+        private final V value;
+
+        private Sequenced(long sequence, V value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+
+        private static <V> Sequenced<V> end() {
+            return new Sequenced<>(-1, null);
+        }
+
+        private boolean isEnd() {
+            return sequence == -1;
+        }
+    }
+}
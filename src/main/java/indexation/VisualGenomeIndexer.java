@@ -3,154 +3,225 @@ package indexation;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import edu.stanford.nlp.simple.Sentence;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
+import prep.Lemmatizer;
+import prep.SourceFiles;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Indexes attributes.json file, from Visual Genome
+ * <p>
+ * The top level array of images is streamed one object at a time, so that the memory needed doesn't depend on
+ * the size of the file. The objects are lemmatized and turned into documents by the workers of an
+ * <code>IndexingPipeline</code>. Sources ending in <code>.json.gz</code>, or otherwise gzip compressed,
+ * are decompressed on the fly.
  */
 public class VisualGenomeIndexer {
     public static void indexGenomeAttributes(File source, Directory destination) throws IOException {
-        IndexWriter writer;
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        indexGenomeAttributes(source, destination, new IndexingOptions());
+    }
+
+    /**
+     * Indexes the attributes in <code>source</code>, updating only the changed objects of an existing index
+     * if <code>options</code> are incremental.
+     * Objects don't have a stable ID in the parsed fields, so they're identified by their content.
+     * <p>
+     * Every object of an image becomes a document holding the lemmas of its names and attributes in the blind field.
+     */
+    public static void indexGenomeAttributes(File source, Directory destination, IndexingOptions options)
+            throws IOException {
+        index(source, destination, options, "attributes", VisualGenomeIndexer::readAttributes);
+    }
+
+    public static void indexGenomeRelationships(File source, Directory destination) throws IOException {
+        indexGenomeRelationships(source, destination, new IndexingOptions());
+    }
+
+    /**
+     * Indexes the relationships in <code>source</code>, updating only the changed relationships of an existing
+     * index if <code>options</code> are incremental.
+     * Relationships are identified by their content.
+     * <p>
+     * Every relationship of an image becomes a document holding its predicate in the relationship field,
+     * and the lemmas of the names of its subject and object in the blind field.
+     */
+    public static void indexGenomeRelationships(File source, Directory destination, IndexingOptions options)
+            throws IOException {
+        index(source, destination, options, "relationships", VisualGenomeIndexer::readRelationship);
+    }
+
+    /**
+     * Streams the objects listed in the <code>listField</code> of every image to the workers of a pipeline.
+     */
+    private static void index(File source, Directory destination, IndexingOptions options, String listField,
+                              ObjectReader reader) throws IOException {
+        IncrementalIndex index;
         try {
-            writer = new IndexWriter(destination, config);
+            index = IncrementalIndex.open(destination, options);
         } catch (IOException e) {
             System.err.println("Invalid destination");
             return;
         }
 
-        JsonFactory jsonFactory = new JsonFactory();
-        JsonParser parser = jsonFactory.createParser(source);
-        parser.nextToken();
-
-        Document currentDocument = new Document();
-        Boolean isEmpty = true;
-        while (parser.hasCurrentToken()) {
-            if (parser.getText().equals("synsets") & parser.currentToken() == JsonToken.FIELD_NAME) {
-                if (!isEmpty) {
-                    writer.addDocument(currentDocument);
-                    currentDocument = new Document();
-                    isEmpty = true;
-                }
-                parser.nextToken();
-                // Field name attributes either indicates an array of synset objects (thus the START_OBJECT check)
-                // or an array of VALUE_STRINGS indicating attributes for a particular synset, which are of interest to us
-            } else if (parser.getText().equals("attributes")) {
-                parser.nextToken();
-                if (parser.nextToken() != JsonToken.START_OBJECT) {
-                    while (parser.currentToken() != JsonToken.END_ARRAY) {
-                        if (parser.currentToken() == JsonToken.VALUE_STRING) {
-                            if (parser.getText().trim().length() > 0) {
-                                for (String lemmatizedAttribute : new Sentence(parser.getText()).lemmas()) {
-                                    currentDocument.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemmatizedAttribute, Field.Store.YES));
+        try (IncrementalIndex writtenIndex = index;
+             JsonParser parser = new JsonFactory().createParser(SourceFiles.newInputStream(source.toPath()));
+             IndexingPipeline<VisualGenomeObject> pipeline = new IndexingPipeline<>(writtenIndex, options, object -> {
+                 // Identical objects are interchangeable, so they may be numbered in any order
+                 String hash = object.hash();
+                 String id = writtenIndex.nextId(hash);
+                 return writtenIndex.isUnchanged(id, hash)
+                         ? Collections.emptyList()
+                         : Collections.singletonList(IncrementalIndex.identify(object.toDocument(), id, hash));
+             })) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array of images in " + source);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && fieldName.equals(listField)) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                                VisualGenomeObject object = reader.read(parser);
+                                if (!object.isEmpty()) {
+                                    pipeline.submit(object);
                                 }
-                                isEmpty = false;
+                            } else {
+                                parser.skipChildren();
                             }
                         }
-                        parser.nextToken();
+                    } else {
+                        parser.skipChildren();
                     }
                 }
-            } else if (parser.getText().equals("names") & parser.currentToken() == JsonToken.FIELD_NAME) {
-                while (parser.currentToken() != JsonToken.END_ARRAY) {
-                    if (parser.currentToken() == JsonToken.VALUE_STRING) {
-                        if (parser.getText().trim().length() > 0) {
-                            for (String lemmatizedName : new Sentence(parser.getText()).lemmas()) {
-                                currentDocument.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemmatizedName, Field.Store.YES));
-                            }
-                            isEmpty = false;
-                        }
-                    }
-                    parser.nextToken();
-                }
-            } else {
-                parser.nextToken();
             }
+            pipeline.finish();
+            writtenIndex.finish();
         }
-        parser.close();
+        System.out.println(Lemmatizer.getInstance());
+    }
 
-        try {
-            writer.close();
-        } catch (IOException e) {
-            System.err.println("Failed to close writer");
-            e.printStackTrace();
+    /**
+     * Reads the names and attributes of an object, the parser is positioned at its start.
+     */
+    private static VisualGenomeObject readAttributes(JsonParser parser) throws IOException {
+        VisualGenomeObject object = new VisualGenomeObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_ARRAY && (fieldName.equals("names") || fieldName.equals("attributes"))) {
+                readStrings(parser, object);
+            } else {
+                parser.skipChildren();
+            }
         }
+        return object;
+    }
 
+    /**
+     * Reads the predicate of a relationship and the names of its subject and object,
+     * the parser is positioned at its start.
+     */
+    private static VisualGenomeObject readRelationship(JsonParser parser) throws IOException {
+        VisualGenomeObject relationship = new VisualGenomeObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("predicate") && value.isScalarValue()) {
+                relationship.relationship = parser.getText();
+            } else if (value == JsonToken.START_OBJECT) {
+                readNames(parser, relationship);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return relationship;
     }
 
-    public static void indexGenomeRelationships(File source, Directory destination) throws IOException {
-        IndexWriter writer;
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        try {
-            writer = new IndexWriter(destination, config);
-        } catch (IOException e) {
-            System.err.println("Invalid destination");
-            return;
+    /**
+     * Reads the names of the subject or object of a relationship, the parser is positioned at its start.
+     */
+    private static void readNames(JsonParser parser, VisualGenomeObject relationship) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("name") && value == JsonToken.VALUE_STRING) {
+                relationship.add(parser.getText());
+            } else if (fieldName.equals("names") && value == JsonToken.START_ARRAY) {
+                readStrings(parser, relationship);
+            } else if (value == JsonToken.START_OBJECT) {
+                readNames(parser, relationship);
+            } else {
+                parser.skipChildren();
+            }
         }
+    }
 
-        JsonFactory jsonFactory = new JsonFactory();
-        JsonParser parser = jsonFactory.createParser(source);
-        parser.nextToken();
-
-        Document currentDocument = new Document();
-        Boolean isEmpty = true;
-        while (parser.hasCurrentToken()) {
-            if (parser.getText().equals("predicate") & parser.currentToken() == JsonToken.FIELD_NAME) {
-                if (!isEmpty) {
-                    writer.addDocument(currentDocument);
-                    currentDocument = new Document();
-                    isEmpty = true;
-                }
-                parser.nextToken();
-                currentDocument.add(new TextField("relationship", parser.getText(), Field.Store.YES));
-            } else if (parser.getText().equals("name")) {
-                parser.nextToken();
-                if (parser.currentToken() == JsonToken.VALUE_STRING) {
-                    if (parser.getText().trim().length() > 0) {
-                        for (String lemmatizedName : new Sentence(parser.getText()).lemmas()) {
-                            currentDocument.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemmatizedName, Field.Store.YES));
-                        }
-                        isEmpty = false;
-                    }
-                }
-                parser.nextToken();
-            } else if (parser.getText().equals("names") & parser.currentToken() == JsonToken.FIELD_NAME) {
-                while (parser.nextToken() != JsonToken.END_ARRAY) {
-                    if (parser.currentToken() == JsonToken.VALUE_STRING) {
-                        if (parser.getText().trim().length() > 0) {
-                            for (String lemmatizedName : new Sentence(parser.getText()).lemmas()) {
-                                currentDocument.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemmatizedName, Field.Store.YES));
-                            }
-                            isEmpty = false;
-                        }
-                    }
-                }
+    private static void readStrings(JsonParser parser, VisualGenomeObject object) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                object.add(parser.getText());
             } else {
-                parser.nextToken();
+                parser.skipChildren();
             }
+        }
+    }
+
+    /**
+     * Reads a single object of the list of an image, the parser is positioned at its start and left at its end.
+     */
+    private interface ObjectReader {
+        VisualGenomeObject read(JsonParser parser) throws IOException;
+    }
 
+    /**
+     * Texts of a single object or relationship, read by the parsing thread and lemmatized by a worker.
+     */
+    private static class VisualGenomeObject {
+        // Predicate of a relationship, null for objects
+        private String relationship;
+        private final List<String> texts = new ArrayList<>();
+
+        private void add(String text) {
+            // Blank names and attributes don't have lemmas
+            if (text.trim().length() > 0) {
+                texts.add(text);
+            }
         }
 
-        try {
-            writer.close();
-        } catch (IOException e) {
-            System.err.println("Failed to close writer");
-            e.printStackTrace();
+        private boolean isEmpty() {
+            return texts.isEmpty();
         }
 
-        parser.close();
+        private String hash() {
+            List<String> parts = new ArrayList<>();
+            parts.add(relationship == null ? "" : relationship);
+            parts.addAll(texts);
+            return IncrementalIndex.hash(parts);
+        }
 
+        private Document toDocument() {
+            Document document = new Document();
+            if (relationship != null) {
+                document.add(new TextField("relationship", relationship, Field.Store.YES));
+            }
+            // Names and attributes repeat throughout the file, so most of them are found in the cache
+            Map<String, List<String>> lemmas = Lemmatizer.getInstance().lemmatizeAll(texts);
+            for (String text : texts) {
+                for (String lemma : lemmas.get(text)) {
+                    document.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, lemma, Field.Store.YES));
+                }
+            }
+            return document;
+        }
     }
 }
@@ -1,19 +1,18 @@
 package indexation;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import prep.Property;
+import prep.SourceFiles;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Class for indexing Wikipedia Definition Graphs,
@@ -21,6 +20,10 @@ import java.util.Scanner;
  * please, use the methods provided in <code>WikipediaIndexer</code>.
  */
 public class WikipediaDefinitionGraphIndexer {
+    // Lines enclosing the properties of a definition in wikipediaFixed
+    private static final String BEGINNING_OF_DEFINITION = "BOS O";
+    private static final String END_OF_DEFINITION = "EOS O";
+
     public static void main(String args[]) throws IOException {
         File wikipediaCSV = new File("src/main/resources/WKP_DSR_model_CSV.csv");
         File wikipediaFixed = new File("src/main/resources/WKP_filtered_classified_fixed.txt");
@@ -41,43 +44,133 @@ public class WikipediaDefinitionGraphIndexer {
      * @throws IOException
      */
     public static void indexDefinitions(File wikipediaCSV, File wikipediaFixed, Directory destination) throws IOException {
-        Scanner wkpCSV = new Scanner(wikipediaCSV);
-        Scanner wkpFixed = new Scanner(wikipediaFixed);
+        indexDefinitions(wikipediaCSV, wikipediaFixed, destination, new IndexingOptions());
+    }
 
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        IndexWriter writer = new IndexWriter(destination, config);
+    /**
+     * Method for indexing definition roles from wikipediaFixed using glosses from WikipediaCSV,
+     * updating only the changed definitions of an existing index if <code>options</code> are incremental.
+     * Definitions are identified by their definiendum and the order in which definitions of the same
+     * definiendum occur.
+     * <p>
+     * The calling thread reads both sources and pairs every row of wikipediaCSV with the next definition
+     * of wikipediaFixed, while the workers of the pipeline turn the pairs into documents.
+     * Either source may be gzip compressed.
+     *
+     * @param wikipediaCSV   location of WKP_DSR_model_CSV.csv
+     * @param wikipediaFixed location of WKP_filtered_classified_fixed.txt
+     * @param destination    where the index should be written
+     * @param options        number of workers, whether to index incrementally and the RAM buffer size of the writer
+     * @throws IOException
+     */
+    public static void indexDefinitions(File wikipediaCSV, File wikipediaFixed, Directory destination,
+                                        IndexingOptions options) throws IOException {
+        try (BufferedReader wkpCSV = SourceFiles.newReader(wikipediaCSV.toPath());
+             BufferedReader wkpFixed = SourceFiles.newReader(wikipediaFixed.toPath());
+             IncrementalIndex index = IncrementalIndex.open(destination, options, IndexFormat.VERSION);
+             IndexingPipeline<DefinitionRecord> pipeline = new IndexingPipeline<>(index, options, record -> {
+                 String hash = record.hash();
+                 if (index.isUnchanged(record.id, hash)) {
+                     return Collections.emptyList();
+                 }
+                 Document document = IndexFormat.roleDocument(
+                         Collections.singletonList(record.definiendum), record.properties);
+                 return Collections.singletonList(IncrementalIndex.identify(document, record.id, hash));
+             })) {
+            String csvLine;
+            int lineNumber = 0;
+            while ((csvLine = wkpCSV.readLine()) != null) {
+                lineNumber++;
+                // Blank lines, e.g. at the end of the file, don't hold a definition
+                if (csvLine.trim().isEmpty()) {
+                    continue;
+                }
+                String currentDefiniendum = field(csvLine, ';', 2);
+                if (currentDefiniendum == null) {
+                    throw new IOException("Line " + lineNumber + " of " + wikipediaCSV + " has no definiendum");
+                }
+                List<Property> properties = readDefinition(wkpFixed);
+                if (properties == null) {
+                    throw new IOException(wikipediaFixed + " ends before the definition of line " + lineNumber
+                            + " of " + wikipediaCSV);
+                }
+                // Ids are assigned in the order of the source, before the definitions are handed to the workers
+                pipeline.submit(new DefinitionRecord(index.nextId(currentDefiniendum), currentDefiniendum,
+                        properties));
+            }
+            pipeline.finish();
+            index.finish();
+        }
+    }
 
-        while (wkpCSV.hasNext()) {
-            Document currentDocument = new Document();
+    /**
+     * Reads the properties of the next definition, enclosed in "BOS O" and "EOS O" lines.
+     * The last definition doesn't have to be followed by "EOS O".
+     *
+     * @return properties of the definition, null if there are no more definitions
+     */
+    private static List<Property> readDefinition(BufferedReader wkpFixed) throws IOException {
+        String currentProperty;
+        // Seeks the beginning of the definition
+        do {
+            currentProperty = wkpFixed.readLine();
+            if (currentProperty == null) {
+                return null;
+            }
+        } while (!currentProperty.equals(BEGINNING_OF_DEFINITION));
 
-            String currentDefiniendum = wkpCSV.nextLine().split(";")[2];
-            currentDocument.add(new TextField("definiendum", currentDefiniendum, Field.Store.YES));
+        List<Property> properties = new ArrayList<>();
+        while ((currentProperty = wkpFixed.readLine()) != null && !currentProperty.equals(END_OF_DEFINITION)) {
+            // Each line holds a word of the gloss followed by its role, separated by a space
+            String currentValue = field(currentProperty, ' ', 0);
+            String currentRole = field(currentProperty, ' ', 1);
+            if (currentRole == null) {
+                throw new IOException("Expected a value and a role, got: " + currentProperty);
+            }
+            properties.add(new Property(currentValue, currentRole));
+        }
+        return properties;
+    }
 
-            String currentProperty = wkpFixed.nextLine();
-            // Seeks the beginning of the definition
-            while (!currentProperty.equals("BOS O")) {
-                currentProperty = wkpFixed.nextLine();
+    /**
+     * Finds the <code>index</code>-th field of <code>line</code>, without splitting the whole line.
+     *
+     * @return the field, null if the line has fewer fields
+     */
+    private static String field(String line, char separator, int index) {
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start = line.indexOf(separator, start) + 1;
+            if (start == 0) {
+                return null;
             }
-            // Locates the first property
-            currentProperty = wkpFixed.nextLine();
+        }
+        int end = line.indexOf(separator, start);
+        return line.substring(start, end == -1 ? line.length() : end);
+    }
 
-            while (!currentProperty.equals("EOS O")) {
-                String currentValue = currentProperty.split(" ")[0];
-                String currentRole = currentProperty.split(" ")[1];
+    /**
+     * Definiendum of a row of wikipediaCSV paired with the properties of the matching definition in wikipediaFixed.
+     */
+    private static class DefinitionRecord {
+        private final String id;
+        private final String definiendum;
+        private final List<Property> properties;
 
-                currentDocument.add(new TextField(currentRole, currentValue, Field.Store.YES));
+        private DefinitionRecord(String id, String definiendum, List<Property> properties) {
+            this.id = id;
+            this.definiendum = definiendum;
+            this.properties = properties;
+        }
 
-                // The last definition doesn't contain EOS O
-                if (wkpFixed.hasNext()) {
-                    currentProperty = wkpFixed.nextLine();
-                } else {
-                    currentProperty = "EOS O";
-                }
+        private String hash() {
+            List<String> parts = new ArrayList<>();
+            parts.add(definiendum);
+            for (Property property : properties) {
+                parts.add(property.getValue());
+                parts.add(property.getRole());
             }
-
-            writer.addDocument(currentDocument);
+            return IncrementalIndex.hash(parts);
         }
-        writer.close();
     }
 }
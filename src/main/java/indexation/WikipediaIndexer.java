@@ -1,19 +1,28 @@
 package indexation;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class for indexing definitions extracted using word class lattices,
@@ -21,38 +30,175 @@ import java.io.IOException;
  * <code>WikipediaDefinitionGraphIndexer</code>.
  */
 public class WikipediaIndexer {
+    // Bytes read at once while looking for the end of a chunk's last line
+    private static final int BOUNDARY_SCAN_BYTES = 4096;
+
     public static void indexWikipediaDefinitions(File source, Directory destination) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(source));
+        indexWikipediaDefinitions(source, destination, new IndexingOptions());
+    }
 
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        IndexWriter writer = new IndexWriter(destination, config);
+    /**
+     * Indexes the definitions in <code>source</code>, updating only the changed definitions
+     * of an existing index if <code>options</code> are incremental.
+     * Definitions are identified by their first column.
+     * <p>
+     * The UTF-8 encoded source is memory mapped in chunks of whole lines, which are parsed concurrently
+     * by the workers, while the documents are written to the index in the order of the lines,
+     * so that the index is the same as the one built on a single thread.
+     *
+     * @param source      wiki-EN.pos file, one definition per line
+     * @param destination where the index should be written
+     * @param options     number of workers, chunk size and whether to index incrementally
+     */
+    public static void indexWikipediaDefinitions(File source, Directory destination, IndexingOptions options)
+            throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(options.getWorkers());
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             IncrementalIndex index = IncrementalIndex.open(destination, options)) {
+            // Limits the number of parsed chunks waiting to be written
+            int maxPending = 2 * options.getWorkers();
+            Deque<Future<List<Definition>>> pending = new ArrayDeque<>();
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = findChunkEnd(channel, start + options.getChunkSize());
+                long chunkStart = start;
+                pending.add(workers.submit(() -> parseChunk(channel, chunkStart, end)));
+                if (pending.size() >= maxPending) {
+                    write(index, await(pending.poll()));
+                }
+                start = end;
+            }
+            while (!pending.isEmpty()) {
+                write(index, await(pending.poll()));
+            }
+            index.finish();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
 
-        String currentLine = reader.readLine();
+    /**
+     * Parses a single line of the source.
+     *
+     * @param line line of wiki-EN.pos, without the line terminator
+     * @return document holding the target and the properties of the definition in the blind field,
+     * or null if the line is a comment or empty
+     */
+    static Document parseLine(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return null;
+        }
         Document currentDocument = new Document();
-        String[] properties;
-        while(currentLine != null){
-            if(currentLine.charAt(0) != '#'){
-                properties = currentLine.split("\t");
-
-                String target = properties[0].substring(0, properties[0].indexOf(':'));
-                currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME, target, Field.Store.YES));
-
-                // skip the entry number 1, because it's always TARGET
-                for(int i = 2; i < properties.length; i++){
-                    int propertyInd = StringUtils.ordinalIndexOf(properties[i], "_", 2);
-                    if(propertyInd != -1) {
-                        String currentProperty = properties[i].substring(propertyInd + 1);
-                        currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME, currentProperty.toLowerCase()
-                                , Field.Store.YES));
-                    }
+
+        int keyEnd = line.indexOf('\t');
+        String key = keyEnd == -1 ? line : line.substring(0, keyEnd);
+        String target = key.substring(0, key.indexOf(':'));
+        currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME, target, Field.Store.YES));
+
+        // skip the entry number 1, because it's always TARGET
+        int tokenStart = keyEnd == -1 ? -1 : line.indexOf('\t', keyEnd + 1);
+        while (tokenStart != -1) {
+            tokenStart++;
+            int tokenEnd = line.indexOf('\t', tokenStart);
+            if (tokenEnd == -1) {
+                tokenEnd = line.length();
+            }
+            // The property follows the second underscore of the token
+            int firstUnderscore = line.indexOf('_', tokenStart);
+            int secondUnderscore = firstUnderscore == -1 || firstUnderscore >= tokenEnd
+                    ? -1 : line.indexOf('_', firstUnderscore + 1);
+            if (secondUnderscore != -1 && secondUnderscore < tokenEnd) {
+                String currentProperty = line.substring(secondUnderscore + 1, tokenEnd);
+                currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME, currentProperty.toLowerCase()
+                        , Field.Store.YES));
+            }
+            tokenStart = tokenEnd < line.length() ? tokenEnd : -1;
+        }
+        return currentDocument;
+    }
+
+    /**
+     * Finds the end of the chunk containing <code>position</code>, i.e. the position after the next line feed.
+     */
+    private static long findChunkEnd(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
                 }
-                writer.addDocument(currentDocument);
-                currentDocument = new Document();
             }
-            currentLine = reader.readLine();
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Decodes the lines between <code>start</code> and <code>end</code> and parses them,
+     * splitting lines like <code>BufferedReader.readLine</code> does.
+     */
+    private static List<Definition> parseChunk(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(bytes);
+
+        List<Definition> definitions = new ArrayList<>();
+        int lineStart = 0;
+        int length = chars.length();
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && chars.charAt(lineEnd) != '\n' && chars.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            String line = chars.subSequence(lineStart, lineEnd).toString();
+            Document document = parseLine(line);
+            if (document != null) {
+                int keyEnd = line.indexOf('\t');
+                definitions.add(new Definition(keyEnd == -1 ? line : line.substring(0, keyEnd), document));
+            }
+            // A carriage return followed by a line feed ends a single line
+            if (lineEnd < length && chars.charAt(lineEnd) == '\r' && lineEnd + 1 < length
+                    && chars.charAt(lineEnd + 1) == '\n') {
+                lineEnd++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return definitions;
+    }
+
+    private static void write(IncrementalIndex index, List<Definition> definitions) throws IOException {
+        for (Definition definition : definitions) {
+            index.update(definition.key, definition.document);
+        }
+    }
+
+    private static List<Definition> await(Future<List<Definition>> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse a chunk of the source", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        }
+    }
+
+    /**
+     * Document of a single line, along with the first column identifying it.
+     */
+    private static class Definition {
+        private final String key;
+        private final Document document;
+
+        private Definition(String key, Document document) {
+            this.key = key;
+            this.document = document;
         }
-        reader.close();
-        writer.close();
     }
 }
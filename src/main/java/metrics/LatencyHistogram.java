@@ -0,0 +1,116 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies with exponentially growing buckets, from 10 microseconds to about a minute.
+ * <p>
+ * Recording a latency only increments atomic counters, so that concurrent requests never wait for each other.
+ * Quantiles are estimated by interpolating within the bucket containing the requested rank.
+ */
+public class LatencyHistogram {
+    // Upper bounds of the buckets in nanoseconds, the last bucket has no upper bound
+    private static final long[] BOUNDS = createBounds(10_000L, 1.5, 60_000_000_000L);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param nanos latency to record, in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return sum of all recorded latencies, in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return upper bounds of the buckets in nanoseconds, excluding the unbounded last bucket
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * @return number of latencies recorded in each bucket, the last element counting those above all bounds
+     */
+    public long[] getBucketCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Estimates the latency below which <code>quantile</code> of the recorded latencies fall.
+     *
+     * @param quantile between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return estimated latency in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getQuantile(double quantile) {
+        long[] snapshot = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : snapshot) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        double rank = quantile * total;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] > 0 && seen + snapshot[i] >= rank) {
+                long lower = i == 0 ? 0 : BOUNDS[i - 1];
+                // Latencies above the last bound are reported as the last bound
+                if (i == BOUNDS.length) {
+                    return lower;
+                }
+                double fraction = (rank - seen) / snapshot[i];
+                return lower + (long) (fraction * (BOUNDS[i] - lower));
+            }
+            seen += snapshot[i];
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+
+    private static int bucketOf(long nanos) {
+        // Binary search for the first bound that isn't smaller than nanos
+        int low = 0;
+        int high = BOUNDS.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BOUNDS[middle] < nanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] createBounds(long first, double factor, long last) {
+        int size = 1 + (int) Math.ceil(Math.log((double) last / first) / Math.log(factor));
+        long[] bounds = new long[size];
+        double bound = first;
+        for (int i = 0; i < size; i++) {
+            bounds[i] = Math.round(bound);
+            bound *= factor;
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,230 @@
+package metrics;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Request, per index and per stage latency metrics of the demo server, exposed in the Prometheus text format.
+ * <p>
+ * Recording only touches atomic counters; a metric is created with its first recording,
+ * so that no locks are taken on the request path once all endpoints, indexes and stages have been seen.
+ */
+public class Metrics {
+    // Stages of looking up and deciding on a triple within a single index
+    public static final String ACQUIRE = "acquire";
+    public static final String SEARCH = "search";
+    public static final String LOAD = "load";
+    public static final String FILTER = "filter";
+    public static final String EXPLAIN = "explain";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    // Keyed by endpoint
+    private final ConcurrentMap<List<String>, LatencyHistogram> requestLatencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, LongAdder> requestErrors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, AtomicLong> requestsInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, LongAdder> rejectedRequests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, LongAdder> partialRequests = new ConcurrentHashMap<>();
+    // Keyed by endpoint and index
+    private final ConcurrentMap<List<String>, LatencyHistogram> indexLatencies = new ConcurrentHashMap<>();
+    // Keyed by stage and index
+    private final ConcurrentMap<List<String>, LatencyHistogram> stageLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * Marks the start of a request to <code>endpoint</code>, which has to be followed by <code>endRequest</code>.
+     */
+    public void startRequest(String endpoint) {
+        get(requestsInFlight, AtomicLong::new, endpoint).incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a request to <code>endpoint</code>.
+     *
+     * @param endpoint name of the endpoint
+     * @param nanos    time taken by the request, in nanoseconds
+     * @param failed   whether the request failed
+     */
+    public void endRequest(String endpoint, long nanos, boolean failed) {
+        get(requestsInFlight, AtomicLong::new, endpoint).decrementAndGet();
+        get(requestLatencies, LatencyHistogram::new, endpoint).record(nanos);
+        if (failed) {
+            get(requestErrors, LongAdder::new, endpoint).increment();
+        }
+    }
+
+    /**
+     * Marks the end of a request to <code>endpoint</code> that was rejected rather than handled, which is
+     * counted by <code>recordRejected</code> instead of the latencies and errors of the handled requests.
+     */
+    public void endRejectedRequest(String endpoint) {
+        get(requestsInFlight, AtomicLong::new, endpoint).decrementAndGet();
+    }
+
+    /**
+     * Records a request to <code>endpoint</code> that has been rejected, because the server was overloaded.
+     */
+    public void recordRejected(String endpoint) {
+        get(rejectedRequests, LongAdder::new, endpoint).increment();
+    }
+
+    /**
+     * Records a request to <code>endpoint</code> that has been answered with partial results,
+     * because its deadline expired.
+     */
+    public void recordPartial(String endpoint) {
+        get(partialRequests, LongAdder::new, endpoint).increment();
+    }
+
+    /**
+     * Records the time taken by an endpoint to obtain its result from a single index.
+     */
+    public void recordIndex(String endpoint, String indexName, long nanos) {
+        get(indexLatencies, LatencyHistogram::new, endpoint, indexName).record(nanos);
+    }
+
+    /**
+     * Records the time taken by one of the stages, e.g. <code>SEARCH</code>, within a single index.
+     */
+    public void recordStage(String stage, String indexName, long nanos) {
+        get(stageLatencies, LatencyHistogram::new, stage, indexName).record(nanos);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     *
+     * @param out writer the metrics are written to
+     */
+    public void write(PrintWriter out) {
+        String[] endpointLabel = {"endpoint"};
+        writeHistograms(out, "hawk_request_duration_seconds", "Time taken to handle a request.",
+                endpointLabel, requestLatencies);
+        writeCounter(out, "hawk_requests_total", "Number of handled requests.", "counter", endpointLabel,
+                sorted(requestLatencies, LatencyHistogram::getCount));
+        writeCounter(out, "hawk_request_errors_total", "Number of failed requests.", "counter", endpointLabel,
+                sorted(requestErrors, LongAdder::sum));
+        writeCounter(out, "hawk_requests_rejected_total", "Number of requests rejected by admission control.",
+                "counter", endpointLabel, sorted(rejectedRequests, LongAdder::sum));
+        writeCounter(out, "hawk_requests_partial_total", "Number of requests answered after their deadline expired.",
+                "counter", endpointLabel, sorted(partialRequests, LongAdder::sum));
+        writeCounter(out, "hawk_requests_in_flight", "Number of requests currently being handled.", "gauge",
+                endpointLabel, sorted(requestsInFlight, AtomicLong::get));
+        writeHistograms(out, "hawk_index_duration_seconds", "Time taken by a request to search a single index.",
+                new String[]{"endpoint", "index"}, indexLatencies);
+        writeHistograms(out, "hawk_stage_duration_seconds",
+                "Time taken by a stage of looking up and deciding on a triple within a single index.",
+                new String[]{"stage", "index"}, stageLatencies);
+    }
+
+    /**
+     * Writes a counter or gauge, whose values have already been computed.
+     *
+     * @param out    writer the metric is written to
+     * @param name   name of the metric
+     * @param help   description of the metric
+     * @param type   either counter or gauge
+     * @param labels names of the labels of the metric
+     * @param values value of the metric for each combination of label values
+     */
+    public static void writeCounter(PrintWriter out, String name, String help, String type, String[] labels,
+                                    Map<List<String>, Long> values) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " " + type);
+        for (Map.Entry<List<String>, Long> entry : values.entrySet()) {
+            out.println(name + formatLabels(labels, entry.getKey(), null) + " " + entry.getValue());
+        }
+    }
+
+    private static void writeHistograms(PrintWriter out, String name, String help, String[] labels,
+                                        Map<List<String>, LatencyHistogram> histograms) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " histogram");
+        long[] bounds = LatencyHistogram.getBounds();
+        Map<List<String>, LatencyHistogram> sortedHistograms = new TreeMap<>(Metrics::compare);
+        sortedHistograms.putAll(histograms);
+        for (Map.Entry<List<String>, LatencyHistogram> entry : sortedHistograms.entrySet()) {
+            List<String> values = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            long[] counts = histogram.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String bound = i < bounds.length ? formatSeconds(bounds[i]) : "+Inf";
+                out.println(name + "_bucket" + formatLabels(labels, values, bound) + " " + cumulative);
+            }
+            out.println(name + "_sum" + formatLabels(labels, values, null) + " " + formatSeconds(histogram.getSum()));
+            out.println(name + "_count" + formatLabels(labels, values, null) + " " + cumulative);
+        }
+
+        // Prometheus computes quantiles from the buckets, these are estimated here for reading the output directly
+        String quantileName = name.replace("_seconds", "_quantile_seconds");
+        out.println("# HELP " + quantileName + " Estimated p50, p95 and p99 of " + name + ".");
+        out.println("# TYPE " + quantileName + " gauge");
+        String[] quantileLabels = Arrays.copyOf(labels, labels.length + 1);
+        quantileLabels[labels.length] = "quantile";
+        for (Map.Entry<List<String>, LatencyHistogram> entry : sortedHistograms.entrySet()) {
+            for (double quantile : QUANTILES) {
+                String[] values = entry.getKey().toArray(new String[labels.length + 1]);
+                values[labels.length] = String.valueOf(quantile);
+                out.println(quantileName + formatLabels(quantileLabels, Arrays.asList(values), null) + " "
+                        + formatSeconds(entry.getValue().getQuantile(quantile)));
+            }
+        }
+    }
+
+    private static <T> T get(ConcurrentMap<List<String>, T> metrics, Supplier<T> factory,
+                             String... labelValues) {
+        List<String> key = Arrays.asList(labelValues);
+        // A plain lookup doesn't lock, unlike computeIfAbsent on an existing key
+        T metric = metrics.get(key);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(key, k -> factory.get());
+        }
+        return metric;
+    }
+
+    private static <T> Map<List<String>, Long> sorted(Map<List<String>, T> metrics,
+                                                      ToLongFunction<T> value) {
+        Map<List<String>, Long> values = new TreeMap<>(Metrics::compare);
+        for (Map.Entry<List<String>, T> entry : metrics.entrySet()) {
+            values.put(entry.getKey(), value.applyAsLong(entry.getValue()));
+        }
+        return values;
+    }
+
+    private static int compare(List<String> first, List<String> second) {
+        return String.join("\u0000", first).compareTo(String.join("\u0000", second));
+    }
+
+    private static String formatLabels(String[] labels, List<String> values, String bound) {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"").append(escape(values.get(i))).append('"');
+        }
+        if (bound != null) {
+            builder.append(labels.length > 0 ? "," : "").append("le=\"").append(bound).append('"');
+        }
+        // Metrics without labels are written without braces
+        return builder.length() == 1 ? "" : builder.append('}').toString();
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.valueOf(nanos / NANOS_PER_SECOND);
+    }
+}
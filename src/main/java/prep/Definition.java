@@ -26,6 +26,14 @@ public class Definition {
         this.bufferProperties = new ArrayList<>();
     }
 
+    // Restores a definition whose definienda and properties were already extracted, e.g. from a snapshot
+    Definition(String URI, List<String> definienda, List<Property> properties) {
+        this.URI = URI;
+        this.definienda = definienda;
+        this.properties = properties;
+        this.bufferProperties = new ArrayList<>();
+    }
+
     public String getURI() {
         return URI;
     }
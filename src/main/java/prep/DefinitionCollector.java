@@ -0,0 +1,282 @@
+package prep;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Builds the definitions of a graph and their properties from a stream of triples, without loading the graph into
+ * a model.
+ * <p>
+ * Definitions are created as the triples introducing them arrive. A property node is resolved into properties as
+ * soon as its object, role and subject, the property node of a reified object and the definitions typed with it
+ * have all arrived, and is then dropped. A hypernym is added as soon as its definition exists. Only the statements
+ * of property nodes and hypernyms still waiting for one of those are buffered, so a graph describing each
+ * definition before or next to its property nodes is streamed with hardly anything buffered.
+ * <p>
+ * Property nodes are expected to have one object, role and subject, as in the graphs of definition semantic roles.
+ * Statements about a property node arriving after it has been resolved aren't added to its definitions.
+ * <code>resolve</code> adds the properties of the nodes still buffered at the end of the stream the way
+ * <code>Graph</code> extracts them from a model.
+ */
+class DefinitionCollector extends StreamRDFBase {
+    private static final Node HAS_SUPERTYPE =
+            NodeFactory.createURI("http://nlp/resources/DefinitionSemanticRoles#has_supertype");
+    // Only used to read literals the way the model based extractions and queries do
+    private static final Model NODES = ModelFactory.createDefaultModel();
+
+    private final Function<Triple, Definition> definitionFactory;
+    // Definitions by URI and definienda, in the order their first triple arrived
+    private final Map<String, Definition> definitions = new LinkedHashMap<>();
+    // Definitions of every resource, which share the properties of the resource
+    private final Map<Node, List<Definition>> definitionsByResource = new HashMap<>();
+    // Buffers of the statements waiting for a definition or a property node to be complete
+    private final Map<Node, List<Node>> pendingTypes = new HashMap<>();
+    private final Map<Node, List<Node>> pendingHypernyms = new HashMap<>();
+    private final Map<Node, PropertyNode> propertyNodes = new HashMap<>();
+
+    /**
+     * @param definitionFactory creates the definition a triple introduces, or returns null if it doesn't
+     *                          introduce one
+     */
+    DefinitionCollector(Function<Triple, Definition> definitionFactory) {
+        this.definitionFactory = definitionFactory;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        Definition definition = definitionFactory.apply(triple);
+        if (definition != null) {
+            addDefinition(definition);
+        }
+
+        Node subject = triple.getSubject();
+        Node predicate = triple.getPredicate();
+        Node object = triple.getObject();
+        if (predicate.equals(RDF.Nodes.type)) {
+            // rdf:Statement types the property nodes themselves, which have no properties
+            if (!object.isLiteral() && !object.equals(RDF.Nodes.Statement)) {
+                addDistinct(propertyNode(object).owners, subject);
+                if (!definitionsByResource.containsKey(subject)) {
+                    addDistinct(pendingTypes.computeIfAbsent(subject, key -> new ArrayList<>(2)), object);
+                }
+                tryResolve(object);
+            }
+        } else if (predicate.equals(RDF.Nodes.object)) {
+            addDistinct(propertyNode(subject).objects, object);
+            if (!object.isLiteral()) {
+                addDistinct(propertyNode(object).parents, subject);
+            }
+            completed(subject);
+        } else if (predicate.equals(RDF.Nodes.predicate)) {
+            addDistinct(propertyNode(subject).roles, object);
+            completed(subject);
+        } else if (predicate.equals(RDF.Nodes.subject)) {
+            addDistinct(propertyNode(subject).subjects, object);
+            completed(subject);
+        } else if (predicate.equals(HAS_SUPERTYPE)) {
+            List<Definition> defining = definitionsByResource.get(subject);
+            if (defining == null) {
+                addDistinct(pendingHypernyms.computeIfAbsent(subject, key -> new ArrayList<>(1)), object);
+            } else {
+                addHypernym(defining, object);
+            }
+        }
+    }
+
+    private void addDefinition(Definition definition) {
+        if (definitions.putIfAbsent(definition.getURI() + ' ' + definition.getDefinienda(), definition) != null) {
+            return;
+        }
+        Node resource = NodeFactory.createURI(definition.getURI());
+        List<Definition> defining = definitionsByResource.computeIfAbsent(resource, key -> new ArrayList<>(1));
+        if (!defining.isEmpty()) {
+            // Every definition of a resource has the properties resolved for it so far
+            definition.addProperty(new ArrayList<>(defining.get(0).getProperties()));
+        }
+        defining.add(definition);
+
+        for (Node hypernym : removeOrEmpty(pendingHypernyms, resource)) {
+            addHypernym(defining, hypernym);
+        }
+        for (Node type : removeOrEmpty(pendingTypes, resource)) {
+            tryResolve(type);
+        }
+    }
+
+    private static void addHypernym(List<Definition> defining, Node hypernym) {
+        Property property = new Property(hypernym.getLocalName(), "has_supertype");
+        for (Definition definition : defining) {
+            // A model keeps a statement once however many times it's repeated in the source
+            if (!definition.getProperties().contains(property)) {
+                definition.addProperty(property);
+            }
+        }
+    }
+
+    // Resolves a property node, or the property nodes whose reified object it is, once it has been completed
+    private void completed(Node node) {
+        tryResolve(node);
+        PropertyNode property = propertyNodes.get(node);
+        if (property != null) {
+            for (Node parent : new ArrayList<>(property.parents)) {
+                tryResolve(parent);
+            }
+        }
+    }
+
+    private void tryResolve(Node node) {
+        PropertyNode property = propertyNodes.get(node);
+        if (property == null || property.owners.isEmpty() || !property.isComplete()) {
+            return;
+        }
+        for (Node owner : property.owners) {
+            if (!definitionsByResource.containsKey(owner)) {
+                return;
+            }
+        }
+        for (Node value : property.objects) {
+            if (!value.isLiteral()) {
+                PropertyNode reified = propertyNodes.get(value);
+                if (reified == null || !reified.isComplete()) {
+                    return;
+                }
+            }
+        }
+
+        addProperties(property);
+        propertyNodes.remove(node);
+        for (Node value : property.objects) {
+            PropertyNode reified = value.isLiteral() ? null : propertyNodes.get(value);
+            if (reified != null) {
+                reified.parents.remove(node);
+                if (reified.parents.isEmpty() && reified.owners.isEmpty()) {
+                    propertyNodes.remove(value);
+                }
+            }
+        }
+    }
+
+    // Adds the properties of a property node to the definitions typed with it
+    private void addProperties(PropertyNode property) {
+        List<Property> properties = new ArrayList<>();
+        List<Property> reifiedProperties = new ArrayList<>();
+        for (Node value : property.objects) {
+            for (Node role : property.roles) {
+                for (Node subject : property.subjects) {
+                    if (value.isLiteral()) {
+                        properties.add(new Property(literal(value), role.getLocalName(), subject.getLocalName()));
+                    } else {
+                        addReifiedProperties(propertyNodes.get(value), role.getLocalName(),
+                                subject.getLocalName(), reifiedProperties);
+                    }
+                }
+            }
+        }
+        // Reified values follow the literal ones, like Graph.extractByScan adds them
+        properties.addAll(reifiedProperties);
+        for (Node owner : property.owners) {
+            for (Definition definition : definitionsByResource.getOrDefault(owner, Collections.emptyList())) {
+                definition.addProperty(properties);
+            }
+        }
+    }
+
+    private PropertyNode propertyNode(Node node) {
+        return propertyNodes.computeIfAbsent(node, key -> new PropertyNode());
+    }
+
+    private static List<Node> removeOrEmpty(Map<Node, List<Node>> nodes, Node key) {
+        List<Node> removed = nodes.remove(key);
+        return removed == null ? Collections.emptyList() : removed;
+    }
+
+    // A model keeps a statement once however many times it's repeated in the source
+    private static void addDistinct(List<Node> nodes, Node node) {
+        if (!nodes.contains(node)) {
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * @return number of nodes and resources whose statements are buffered until they can be resolved
+     */
+    int countBuffered() {
+        return propertyNodes.size() + pendingTypes.size() + pendingHypernyms.size();
+    }
+
+    /**
+     * Adds the properties of the property nodes still buffered once the stream has finished, with whatever of
+     * their statements have arrived, and releases the buffers.
+     *
+     * @return the definitions in the order they were found in the stream
+     */
+    List<Definition> resolve() {
+        for (PropertyNode property : propertyNodes.values()) {
+            if (!property.owners.isEmpty()) {
+                addProperties(property);
+            }
+        }
+        List<Definition> resolved = new ArrayList<>(definitions.values());
+        definitions.clear();
+        definitionsByResource.clear();
+        pendingTypes.clear();
+        pendingHypernyms.clear();
+        propertyNodes.clear();
+        return resolved;
+    }
+
+    private static void addReifiedProperties(PropertyNode subProperty, String role, String subject,
+                                             List<Property> properties) {
+        if (subProperty == null) {
+            return;
+        }
+        for (Node subValue : subProperty.objects) {
+            // Only property nodes with a role hold reified values
+            for (Node ignored : subProperty.roles) {
+                for (Node subSubject : subProperty.subjects) {
+                    if (subValue.isLiteral()) {
+                        properties.add(new Property(literal(subValue) + " " + subSubject.getLocalName(), role,
+                                subject));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the string a model gives for the literal <code>node</code>
+     */
+    static String literal(Node node) {
+        return NODES.asRDFNode(node).asLiteral().toString();
+    }
+
+    /**
+     * Statements about a property node that hasn't been resolved yet, in the order they arrived.
+     */
+    private static class PropertyNode {
+        private final List<Node> objects = new ArrayList<>(1);
+        private final List<Node> roles = new ArrayList<>(1);
+        private final List<Node> subjects = new ArrayList<>(1);
+        // Resources typed with the node, whose definitions get its properties
+        private final List<Node> owners = new ArrayList<>(1);
+        // Property nodes whose reified object the node is
+        private final List<Node> parents = new ArrayList<>(0);
+
+        private boolean isComplete() {
+            return !objects.isEmpty() && !roles.isEmpty() && !subjects.isEmpty();
+        }
+    }
+}
@@ -1,51 +1,323 @@
 package prep;
 
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.vocabulary.RDF;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class Graph {
+    /**
+     * Hypernym depth at which definitions inherit the properties of all their ancestors.
+     */
+    public static final int ALL_HYPERNYMS = Integer.MAX_VALUE;
+    private static final org.apache.jena.rdf.model.Property HAS_SUPERTYPE =
+            ResourceFactory.createProperty("http://nlp/resources/DefinitionSemanticRoles#has_supertype");
+
     protected List<Definition> definitions;
+    // Definitions of each definiendum in the order of definitions, built once all definitions have been found
+    private Map<String, List<Definition>> definitionsByDefiniendum;
+    // Set instead of definitionsByDefiniendum when the graph was loaded from a snapshot
+    private GraphSnapshot snapshot;
     protected Model model;
     protected String graphLocation;
     private boolean populated;
+    private Extraction extraction = Extraction.SCAN;
+    private int hypernymDepth = 1;
 
     public Graph(String graphLocation) {
         populated = false;
         this.graphLocation = graphLocation;
     }
 
+    /**
+     * Ways of extracting the properties of the definitions from the graph, which extract the same properties.
+     */
+    public enum Extraction {
+        // Runs up to three SPARQL queries per definition
+        QUERIES,
+        // Reads the statements about each definition and its property nodes directly
+        SCAN,
+        // Parses the source into definitions as its triples arrive, without building a model, buffering only the
+        // statements of property nodes that can't be resolved yet
+        STREAM
+    }
+
+    /**
+     * @param extraction how <code>populate</code> extracts the properties of the definitions,
+     *                   <code>Extraction.SCAN</code> by default
+     */
+    public void setExtraction(Extraction extraction) {
+        this.extraction = extraction;
+    }
+
+    /**
+     * @param hypernymDepth number of levels of hypernyms whose properties definitions inherit when the graph is
+     *                      populated, 0 for none and <code>ALL_HYPERNYMS</code> for all ancestors, 1 by default.
+     *                      At 1 only the first hypernym is inherited from, see <code>HypernymInheritance</code>
+     */
+    public void setHypernymDepth(int hypernymDepth) {
+        if (hypernymDepth < 0) {
+            throw new IllegalArgumentException("Hypernym depth must not be negative, got " + hypernymDepth);
+        }
+        this.hypernymDepth = hypernymDepth;
+    }
+
+    public int getHypernymDepth() {
+        return hypernymDepth;
+    }
+
+    public Extraction getExtraction() {
+        return extraction;
+    }
+
+    /**
+     * Reads the size and modification time of the source of the graph, the file at <code>graphLocation</code>
+     * if there is one, the class path resource otherwise.
+     *
+     * @return the stamp of the source, null if the source can't be found
+     * @throws IOException if the source can't be read
+     */
+    GraphSnapshot.SourceStamp getSourceStamp() throws IOException {
+        Path graphPath = Paths.get(graphLocation);
+        if (!Files.isRegularFile(graphPath)) {
+            URL resource = Thread.currentThread().getContextClassLoader().getResource(graphLocation);
+            if (resource == null) {
+                return null;
+            }
+            if (!"file".equals(resource.getProtocol())) {
+                // e.g. an entry of a jar, whose connection has to be opened to tell its size
+                URLConnection connection = resource.openConnection();
+                InputStream stream = connection.getInputStream();
+                try {
+                    return new GraphSnapshot.SourceStamp(connection.getContentLengthLong(),
+                            connection.getLastModified());
+                } finally {
+                    stream.close();
+                }
+            }
+            try {
+                graphPath = Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid location of " + graphLocation, e);
+            }
+        }
+        return new GraphSnapshot.SourceStamp(Files.size(graphPath), Files.getLastModifiedTime(graphPath).toMillis());
+    }
+
     public void populate(){
-        this.createModel();
-        this.findAndPopulateDefinitions();
+        if (extraction == Extraction.STREAM) {
+            this.streamDefinitions();
+        } else {
+            this.createModel();
+            this.findAndPopulateDefinitions();
+        }
         populated = true;
     }
 
 
+    /**
+     * Loads the definitions from the snapshot at <code>snapshotLocation</code> if there's a usable one, otherwise
+     * populates the graph from its source and writes the snapshot, so that later runs skip parsing the graph.
+     * A snapshot is written again when the size or modification time of the source, the extraction or the hypernym
+     * depth differ from the ones it was written with.
+     *
+     * @param snapshotLocation snapshot of the graph, created if it doesn't exist
+     * @throws IOException if a new snapshot can't be written
+     */
+    public void populate(Path snapshotLocation) throws IOException {
+        if (Files.isRegularFile(snapshotLocation)) {
+            try {
+                this.load(snapshotLocation);
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Couldn't load snapshot " + snapshotLocation + ", populating " + graphLocation
+                        + " instead: " + e.getMessage());
+            }
+        }
+        this.populate();
+        GraphSnapshot.write(this, snapshotLocation);
+    }
+
+    /**
+     * Loads the definitions of the graph from the snapshot at <code>snapshotLocation</code> rather than from the
+     * graph's source. Definitions are decoded from the mapped snapshot the first time they're read.
+     *
+     * @param snapshotLocation snapshot written by <code>GraphSnapshot.write</code> from a graph of the same class
+     * @throws IOException if the snapshot can't be read, is truncated or corrupt, or is of another version
+     * @throws IllegalArgumentException if the snapshot was written from a graph of another class, with another
+     *                                  extraction or hypernym depth, or from another version of the source
+     */
+    public void load(Path snapshotLocation) throws IOException {
+        GraphSnapshot loaded = GraphSnapshot.open(snapshotLocation);
+        if (!loaded.getGraphClass().equals(getClass().getName())) {
+            throw new IllegalArgumentException(snapshotLocation + " is a snapshot of a " + loaded.getGraphClass()
+                    + ", not of a " + getClass().getName());
+        }
+        if (loaded.getHypernymDepth() != hypernymDepth) {
+            throw new IllegalArgumentException(snapshotLocation + " inherits properties from "
+                    + loaded.getHypernymDepth() + " levels of hypernyms, not " + hypernymDepth);
+        }
+        if (!loaded.getExtraction().equals(extraction.name())) {
+            throw new IllegalArgumentException(snapshotLocation + " was populated by the " + loaded.getExtraction()
+                    + " extraction, not by " + extraction.name());
+        }
+        // Snapshots are still loaded when the source isn't around, since they don't need it
+        GraphSnapshot.SourceStamp source = getSourceStamp();
+        if (source != null && !source.equals(loaded.getSource())) {
+            throw new IllegalArgumentException(snapshotLocation + " was written from " + loaded.getSource()
+                    + " of " + graphLocation + ", which is now " + source);
+        }
+        model = null;
+        snapshot = loaded;
+        definitions = loaded.getAllDefinitions();
+        definitionsByDefiniendum = null;
+        populated = true;
+    }
+
     private void findAndPopulateDefinitions(){
         this.findAllDefinitions();
+        this.indexDefinitions();
         this.populateAllDefinitions();
     }
 
+    /**
+     * Maps every definiendum to its definitions, so that the definitions of a term are found without
+     * scanning all definitions.
+     */
+    private void indexDefinitions() {
+        snapshot = null;
+        definitionsByDefiniendum = new HashMap<>(2 * definitions.size());
+        for (Definition definition : definitions) {
+            for (String definiendum : definition.getDefinienda()) {
+                List<Definition> termDefinitions = definitionsByDefiniendum.computeIfAbsent(definiendum,
+                        key -> new ArrayList<>(1));
+                // A definiendum listed twice by the same definition doesn't make it ambiguous
+                if (termDefinitions.isEmpty() || termDefinitions.get(termDefinitions.size() - 1) != definition) {
+                    termDefinitions.add(definition);
+                }
+            }
+        }
+    }
+
     private void createModel() {
         model = ModelFactory.createDefaultModel();
+        try (InputStream graphFile = openGraphFile()) {
+            // base URI is null because graphs are assumed to not use relative URIs
+            RDFDataMgr.read(model, graphFile, graphLanguage());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + graphLocation, e);
+        }
+    }
 
+    /**
+     * Builds the definitions and their immediate properties while the graph is parsed, so that the statements of
+     * the graph are never all held in memory, then adds the hypernym properties.
+     */
+    private void streamDefinitions() {
+        model = null;
+        DefinitionCollector collector = new DefinitionCollector(this::createDefinition);
+        try (InputStream graphFile = openGraphFile()) {
+            RDFDataMgr.parse(collector, graphFile, graphLanguage());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + graphLocation, e);
+        }
+        definitions = collector.resolve();
+        this.indexDefinitions();
+        this.addHypernymProperties();
+    }
+
+    /**
+     * Opens the graph at <code>graphLocation</code>, which is a file if one exists at that path and a class path
+     * resource otherwise, decompressing it if it's gzip compressed.
+     */
+    private InputStream openGraphFile() throws IOException {
+        Path graphPath = Paths.get(graphLocation);
+        if (Files.isRegularFile(graphPath)) {
+            return SourceFiles.newInputStream(graphPath);
+        }
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         InputStream graphFile = loader.getResourceAsStream(graphLocation);
-        // InputStream graphFile = FileManager.get().open(graphLocation);
         if (graphFile == null) {
             throw new IllegalArgumentException("File: " + graphLocation + " not found");
         }
-        // base URI is null because graphs are assumed to not use relative URIs
-        model.read(graphFile, null);
+        return SourceFiles.newInputStream(graphFile);
+    }
+
+    /**
+     * Guesses the syntax of the graph from its extension, ignoring a <code>.gz</code> suffix, RDF/XML if it has
+     * no known extension.
+     */
+    private Lang graphLanguage() {
+        String name = graphLocation.endsWith(".gz")
+                ? graphLocation.substring(0, graphLocation.length() - ".gz".length()) : graphLocation;
+        return RDFLanguages.filenameToLang(name, Lang.RDFXML);
     }
 
     protected abstract void findAllDefinitions();
 
+    /**
+     * Creates the definition <code>triple</code> introduces while the graph is streamed, the streaming counterpart
+     * of <code>findAllDefinitions</code>. A definition introduced by several triples is kept once.
+     *
+     * @param triple triple of the graph
+     * @return the definition introduced by <code>triple</code>, null if it doesn't introduce one
+     */
+    protected abstract Definition createDefinition(Triple triple);
+
     private void populateAllDefinitions() {
+        for (Definition currentDefinition : this.definitions) {
+            if (extraction == Extraction.QUERIES) {
+                extractWithQueries(currentDefinition);
+            } else {
+                extractByScan(currentDefinition);
+            }
+        }
+        this.addHypernymProperties();
+    }
+
+    /**
+     * Adds to every definition the properties of its hypernyms up to <code>hypernymDepth</code> levels up,
+     * after all immediate properties have been extracted so that the depth of every property is known.
+     */
+    private void addHypernymProperties() {
+        if (hypernymDepth == 0) {
+            return;
+        }
+        int cyclic = new HypernymInheritance(definitions, this::getDefinition, hypernymDepth).inherit();
+        if (cyclic > 0) {
+            System.err.println(cyclic + " definitions of " + graphLocation + " are in or below a cycle of hypernyms,"
+                    + " they inherit from each hypernym in the cycle once");
+        }
+    }
+
+    /**
+     * Adds the immediate properties and hypernyms of <code>currentDefinition</code> by running up to three SPARQL
+     * queries, which tell reified values apart by failing to read them as literals.
+     */
+    private void extractWithQueries(Definition currentDefinition) {
         String propertyTemplate = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
                 "SELECT ?value ?role ?subject " +
                 "WHERE{" +
@@ -73,90 +345,157 @@ public abstract class Graph {
                 "<%s>             dsr:has_supertype     ?hypernym" +
                 "}";
 
-        for (Definition currentDefinition : this.definitions) {
-            String currentQueryString = String.format(propertyTemplate, currentDefinition.getURI());
-            Query currentQuery = QueryFactory.create(currentQueryString);
-            try (QueryExecution qexec = QueryExecutionFactory.create(currentQuery, this.model)) {
-                ResultSet properties = qexec.execSelect();
-                Boolean hasReifiedProperties = false;
-                while (properties.hasNext()) {
-                    QuerySolution currentProperty = properties.nextSolution();
-                    String currentValue;
-                    // in case an attempt of obtaining a literal of value fails it means that the value is reified
-                    try {
-                        currentValue = currentProperty.getLiteral("value").toString();
-                    } catch (ClassCastException exception) {
-                        hasReifiedProperties = true;
-                        break;
-
-                    }
+        String currentQueryString = String.format(propertyTemplate, currentDefinition.getURI());
+        Query currentQuery = QueryFactory.create(currentQueryString);
+        try (QueryExecution qexec = QueryExecutionFactory.create(currentQuery, this.model)) {
+            ResultSet properties = qexec.execSelect();
+            Boolean hasReifiedProperties = false;
+            while (properties.hasNext()) {
+                QuerySolution currentProperty = properties.nextSolution();
+                String currentValue;
+                // in case an attempt of obtaining a literal of value fails it means that the value is reified
+                try {
+                    currentValue = currentProperty.getLiteral("value").toString();
+                } catch (ClassCastException exception) {
+                    hasReifiedProperties = true;
+                    break;
 
-                    String currentRole = currentProperty.getResource("role").getLocalName();
-                    String currentSubject = currentProperty.getResource("subject").getLocalName();
-                    // it is safe to use currentValue despite it being initialized only within the try block
-                    // because the catch clause breaks the iteration of the loop
-                    currentDefinition.addProperty(new Property(currentValue, currentRole, currentSubject));
                 }
-                // finds all the reified values for the definition and creates properties representing them
-                if (hasReifiedProperties) {
-                    String reifiedQueryString = String.format(reifiedPropertyTemplate, currentDefinition.getURI());
-                    Query reifiedQuery = QueryFactory.create(reifiedQueryString);
-                    try (QueryExecution reifiedQueryExec = QueryExecutionFactory.create(reifiedQuery, this.model)) {
-                        ResultSet reifiedProperties = reifiedQueryExec.execSelect();
-                        while (reifiedProperties.hasNext()) {
-                            QuerySolution reifiedProperty = reifiedProperties.nextSolution();
-                            String currentValue = reifiedProperty.getLiteral("subValue").toString() + " "
-                                    + reifiedProperty.getResource("subSubject").getLocalName();
-                            String currentRole = reifiedProperty.getResource("role").getLocalName();
-                            String currentSubject = reifiedProperty.getResource("subject").getLocalName();
-                            currentDefinition.addProperty(new Property(currentValue, currentRole, currentSubject));
-                        }
+
+                String currentRole = currentProperty.getResource("role").getLocalName();
+                String currentSubject = currentProperty.getResource("subject").getLocalName();
+                // it is safe to use currentValue despite it being initialized only within the try block
+                // because the catch clause breaks the iteration of the loop
+                currentDefinition.addProperty(new Property(currentValue, currentRole, currentSubject));
+            }
+            // finds all the reified values for the definition and creates properties representing them
+            if (hasReifiedProperties) {
+                String reifiedQueryString = String.format(reifiedPropertyTemplate, currentDefinition.getURI());
+                Query reifiedQuery = QueryFactory.create(reifiedQueryString);
+                try (QueryExecution reifiedQueryExec = QueryExecutionFactory.create(reifiedQuery, this.model)) {
+                    ResultSet reifiedProperties = reifiedQueryExec.execSelect();
+                    while (reifiedProperties.hasNext()) {
+                        QuerySolution reifiedProperty = reifiedProperties.nextSolution();
+                        String currentValue = reifiedProperty.getLiteral("subValue").toString() + " "
+                                + reifiedProperty.getResource("subSubject").getLocalName();
+                        String currentRole = reifiedProperty.getResource("role").getLocalName();
+                        String currentSubject = reifiedProperty.getResource("subject").getLocalName();
+                        currentDefinition.addProperty(new Property(currentValue, currentRole, currentSubject));
                     }
                 }
             }
+        }
+
+        String currentHypernymString = String.format(hypernymTemplate, currentDefinition.getURI());
+        Query currentHypernymQuery = QueryFactory.create(currentHypernymString);
+        try(QueryExecution qexec = QueryExecutionFactory.create(currentHypernymQuery, this.model)){
+            ResultSet hypernyms = qexec.execSelect();
+            while (hypernyms.hasNext()){
+                QuerySolution currentHypernym = hypernyms.nextSolution();
+                String currentValue = currentHypernym.getResource("hypernym").getLocalName();
+                currentDefinition.addProperty(new Property(currentValue, "has_supertype"));
+            }
+        }
+    }
 
-            String currentHypernymString = String.format(hypernymTemplate, currentDefinition.getURI());
-            Query currentHypernymQuery = QueryFactory.create(currentHypernymString);
-            try(QueryExecution qexec = QueryExecutionFactory.create(currentHypernymQuery, this.model)){
-                ResultSet hypernyms = qexec.execSelect();
-                while (hypernyms.hasNext()){
-                    QuerySolution currentHypernym = hypernyms.nextSolution();
-                    String currentValue = currentHypernym.getResource("hypernym").getLocalName();
-                    currentDefinition.addProperty(new Property(currentValue, "has_supertype"));
+    /**
+     * Adds the immediate properties and hypernyms of <code>definition</code> in a single pass over the statements
+     * about it and its property nodes, the same properties <code>extractWithQueries</code> adds.
+     * A property node whose object is a resource holds a reified value, which is described by the object's own
+     * statements, otherwise its object is the literal value.
+     */
+    private void extractByScan(Definition definition) {
+        Resource definitionResource = model.getResource(definition.getURI());
+        List<Property> reifiedProperties = new ArrayList<>();
+        for (RDFNode type : objects(definitionResource, RDF.type)) {
+            if (!type.isResource()) {
+                continue;
+            }
+            Resource property = type.asResource();
+            for (RDFNode value : objects(property, RDF.object)) {
+                for (RDFNode role : objects(property, RDF.predicate)) {
+                    for (RDFNode subject : objects(property, RDF.subject)) {
+                        if (value.isLiteral()) {
+                            definition.addProperty(new Property(value.asLiteral().toString(),
+                                    role.asResource().getLocalName(), subject.asResource().getLocalName()));
+                        } else {
+                            addReifiedProperties(value.asResource(), role.asResource().getLocalName(),
+                                    subject.asResource().getLocalName(), reifiedProperties);
+                        }
+                    }
                 }
             }
         }
+        // Reified values follow the literal ones, like the results of their separate query
+        definition.addProperty(reifiedProperties);
 
-        // after adding the immediate properties to all definitions, add hypernym properties
-        // initialy adds properties to the buffer, so that properties added from a hypernym
-        // aren't passed on to a hyponym in a subsequent iteration
-        for (Definition definition : this.definitions) {
-            // the try catch clause skips all definitions with no hypernyms
-            // if definition doesn't include a hypernym getPropertiesWithRole will return an empty
-            // list and calling get(0) will invoke a IndexOutOfBoundsException
-            try {
-                String hypernymDefiniendum = definition.getPropertiesWithRole("has_supertype").get(0).getValue();
-                Definition hypernymDefinition = this.getDefinition(hypernymDefiniendum);
-                if (hypernymDefinition != null) {
-                    definition.addBufferProperty(hypernymDefinition.getProperties());
+        for (RDFNode hypernym : objects(definitionResource, HAS_SUPERTYPE)) {
+            definition.addProperty(new Property(hypernym.asResource().getLocalName(), "has_supertype"));
+        }
+    }
+
+    /**
+     * Creates a property for every value of the reified property node <code>subProperty</code>,
+     * combining the value with the subject it's describing.
+     */
+    private void addReifiedProperties(Resource subProperty, String role, String subject, List<Property> properties) {
+        for (RDFNode subValue : objects(subProperty, RDF.object)) {
+            // Only property nodes with a role hold reified values
+            for (RDFNode ignored : objects(subProperty, RDF.predicate)) {
+                for (RDFNode subSubject : objects(subProperty, RDF.subject)) {
+                    if (subValue.isLiteral()) {
+                        properties.add(new Property(subValue.asLiteral().toString() + " "
+                                + subSubject.asResource().getLocalName(), role, subject));
+                    }
                 }
-            } catch (IndexOutOfBoundsException exception) {
             }
         }
+    }
 
-        // only after all of the hypernym properties have been added to the buffer add them to main properties
-        for (Definition definition : this.definitions) {
-            definition.addPropertiesFromBuffer();
+    /**
+     * Lists the objects of the statements about <code>resource</code> with <code>predicate</code>,
+     * in the order the model keeps them.
+     */
+    private List<RDFNode> objects(Resource resource, org.apache.jena.rdf.model.Property predicate) {
+        List<RDFNode> objects = new ArrayList<>();
+        StmtIterator statements = model.listStatements(resource, predicate, (RDFNode) null);
+        try {
+            while (statements.hasNext()) {
+                objects.add(statements.nextStatement().getObject());
+            }
+        } finally {
+            statements.close();
         }
+        return objects;
     }
 
+    /**
+     * Finds the first definition of <code>definiendum</code>.
+     *
+     * @param definiendum term to look up
+     * @return the first of the definitions of <code>definiendum</code>, null if it isn't defined
+     */
     public Definition getDefinition(String definiendum) {
-        for (Definition currentDefinition : definitions) {
-            if (currentDefinition.getDefinienda().contains(definiendum)) {
-                return currentDefinition;
-            }
+        List<Definition> termDefinitions = getDefinitions(definiendum);
+        return termDefinitions.isEmpty() ? null : termDefinitions.get(0);
+    }
+
+    /**
+     * Finds all definitions of <code>definiendum</code>, which may be several for an ambiguous term.
+     *
+     * @param definiendum term to look up
+     * @return the definitions of <code>definiendum</code> in the order they were found in the graph,
+     * empty if it isn't defined or the graph hasn't been populated
+     */
+    public List<Definition> getDefinitions(String definiendum) {
+        if (snapshot != null) {
+            return snapshot.getDefinitions(definiendum);
+        }
+        if (definitionsByDefiniendum == null) {
+            return Collections.emptyList();
         }
-        return null;
+        return Collections.unmodifiableList(definitionsByDefiniendum.getOrDefault(definiendum,
+                Collections.emptyList()));
     }
 
     public boolean isPopulated() {
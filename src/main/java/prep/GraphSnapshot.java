@@ -0,0 +1,455 @@
+package prep;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Binary snapshot of a populated graph, which is loaded in a fraction of the time it takes to parse the graph and
+ * extract its definitions.
+ * <p>
+ * A snapshot holds the definitions of the graph, their definienda and their properties, including the ones
+ * inherited from hypernyms, so loading it doesn't resolve hypernyms again. Every string is stored once in a string
+ * table and referred to by its number. The snapshot is memory mapped when it's loaded, and a definition is only
+ * decoded the first time it's read. Definienda are looked up by binary search in a sorted index of the snapshot.
+ * <p>
+ * A snapshot also records what it was populated from: the size and modification time of the graph's source and the
+ * extraction that populated it. <code>Graph.populate(Path)</code> populates the graph again when they've changed.
+ * <p>
+ * Layout, with big endian ints and longs:
+ * <ul>
+ * <li>header: magic number, format version, number of the string naming the graph class, the number of strings,
+ * definitions and definienda, the offset of the definienda, the hypernym depth of the graph, the number of the
+ * string naming the extraction, and the size and modification time in milliseconds of the source as longs, -1 if
+ * the source wasn't found</li>
+ * <li>string table: offsets of the strings followed by their UTF-8 bytes</li>
+ * <li>definitions: offsets of the definitions, each the URI, the definienda and the value, role, subject and
+ * depth of each property</li>
+ * <li>definienda: the definienda sorted, each with the offset of the numbers of the definitions defining it</li>
+ * </ul>
+ */
+public class GraphSnapshot {
+    // "HWKG"
+    private static final int MAGIC = 0x48574b47;
+    // Bumped whenever the layout or the meaning of what's stored changes, older snapshots are then rejected
+    static final int VERSION = 3;
+    private static final int HEADER_INTS = 9;
+    private static final int HEADER_BYTES = HEADER_INTS * Integer.BYTES + 2 * Long.BYTES;
+
+    private final ByteBuffer buffer;
+    private final String graphClass;
+    private final int hypernymDepth;
+    private final String extraction;
+    private final SourceStamp source;
+    private final int stringCount;
+    private final int definitionCount;
+    private final int definiendumCount;
+    private final int stringsStart;
+    private final int definitionsStart;
+    private final int definiendaStart;
+    private final AtomicReferenceArray<Definition> definitions;
+
+    private GraphSnapshot(ByteBuffer buffer, Path location) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(location + " isn't a graph snapshot");
+        }
+        int version = buffer.getInt(Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException(location + " is a snapshot of version " + version + ", expected " + VERSION);
+        }
+        stringCount = buffer.getInt(3 * Integer.BYTES);
+        definitionCount = buffer.getInt(4 * Integer.BYTES);
+        definiendumCount = buffer.getInt(5 * Integer.BYTES);
+        stringsStart = HEADER_BYTES;
+        checkBounds(stringCount >= 0 && definitionCount >= 0 && definiendumCount >= 0
+                && stringsStart + (stringCount + 1L) * Integer.BYTES <= buffer.capacity(), location);
+        definitionsStart = checkStrings(location);
+        definiendaStart = buffer.getInt(6 * Integer.BYTES);
+        checkDefinitions(location);
+        checkDefinienda(location);
+        hypernymDepth = buffer.getInt(7 * Integer.BYTES);
+        graphClass = string(buffer.getInt(2 * Integer.BYTES));
+        extraction = string(buffer.getInt(8 * Integer.BYTES));
+        source = new SourceStamp(buffer.getLong(HEADER_INTS * Integer.BYTES),
+                buffer.getLong(HEADER_INTS * Integer.BYTES + Long.BYTES));
+        definitions = new AtomicReferenceArray<>(definitionCount);
+    }
+
+    // A snapshot cut short or overwritten would otherwise fail when one of its definitions is first read
+    private static void checkBounds(boolean inBounds, Path location) throws IOException {
+        if (!inBounds) {
+            throw new IOException(location + " is truncated or corrupt");
+        }
+    }
+
+    // Checks that the string offsets increase within the string bytes, and returns where the definitions start
+    private int checkStrings(Path location) throws IOException {
+        int previous = 0;
+        for (int i = 0; i <= stringCount; i++) {
+            int offset = buffer.getInt(stringsStart + i * Integer.BYTES);
+            checkBounds(offset >= previous && (i > 0 || offset == 0), location);
+            previous = offset;
+        }
+        long start = stringsStart + (stringCount + 1L) * Integer.BYTES + previous;
+        checkBounds(start <= buffer.capacity(), location);
+        return (int) start;
+    }
+
+    // Checks that the definition offsets increase between the end of the offsets and the start of the definienda
+    private void checkDefinitions(Path location) throws IOException {
+        long previous = definitionsStart + (long) definitionCount * Integer.BYTES;
+        checkBounds(previous <= definiendaStart && definiendaStart <= buffer.capacity(), location);
+        for (int i = 0; i < definitionCount; i++) {
+            int offset = buffer.getInt(definitionsStart + i * Integer.BYTES);
+            checkBounds(offset >= previous && offset < definiendaStart, location);
+            previous = offset;
+        }
+    }
+
+    // Checks that the lists of definitions of the definienda follow each other up to the end of the snapshot
+    private void checkDefinienda(Path location) throws IOException {
+        long end = definiendaStart + 2L * definiendumCount * Integer.BYTES;
+        checkBounds(end <= buffer.capacity(), location);
+        for (int i = 0; i < definiendumCount; i++) {
+            int list = buffer.getInt(definiendaStart + (2 * i + 1) * Integer.BYTES);
+            checkBounds(list == end && end + Integer.BYTES <= buffer.capacity() && buffer.getInt(list) >= 0,
+                    location);
+            end += (1L + buffer.getInt(list)) * Integer.BYTES;
+            checkBounds(end <= buffer.capacity(), location);
+        }
+        checkBounds(end == buffer.capacity(), location);
+    }
+
+    /**
+     * Maps the snapshot at <code>location</code>, without decoding any of its definitions.
+     *
+     * @param location snapshot written by <code>write</code>
+     * @return the mapped snapshot
+     * @throws IOException if the snapshot can't be read, is truncated or corrupt, or isn't a snapshot of the current
+     *                     version
+     */
+    public static GraphSnapshot open(Path location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(location + " is too large to be a graph snapshot");
+            }
+            return new GraphSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), location);
+        }
+    }
+
+    /**
+     * Writes the definitions of <code>graph</code> to a snapshot at <code>location</code>. The snapshot is written
+     * next to <code>location</code> and renamed once complete, so that a snapshot being written is never loaded.
+     *
+     * @param graph    populated graph
+     * @param location file the snapshot is written to, replaced if it exists, its directory is created if needed
+     * @throws IOException if the snapshot can't be written
+     */
+    public static void write(Graph graph, Path location) throws IOException {
+        List<Definition> graphDefinitions = graph.getAllDefinitions();
+        SourceStamp source = graph.getSourceStamp();
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        number(strings, graph.getClass().getName());
+        number(strings, graph.getExtraction().name());
+        // Definienda sorted the way lookups compare them, each with the definitions defining it
+        Map<String, List<Integer>> definienda = new TreeMap<>();
+        for (int i = 0; i < graphDefinitions.size(); i++) {
+            Definition definition = graphDefinitions.get(i);
+            number(strings, definition.getURI());
+            for (String definiendum : definition.getDefinienda()) {
+                number(strings, definiendum);
+                List<Integer> defining = definienda.computeIfAbsent(definiendum, key -> new ArrayList<>(1));
+                if (defining.isEmpty() || defining.get(defining.size() - 1) != i) {
+                    defining.add(i);
+                }
+            }
+            for (Property property : definition.getProperties()) {
+                number(strings, property.getValue());
+                number(strings, property.getRole());
+                number(strings, property.getSubject());
+            }
+        }
+
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        long stringBytes = 0;
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += bytes.length;
+        }
+        // Offsets are computed before anything is written, so that the snapshot is written in a single pass
+        long definitionsStart = HEADER_BYTES + (strings.size() + 1L) * Integer.BYTES + stringBytes;
+        long definiendaStart = definitionsStart + (long) graphDefinitions.size() * Integer.BYTES;
+        for (Definition definition : graphDefinitions) {
+            definiendaStart += definitionSize(definition);
+        }
+        long size = definiendaStart;
+        for (List<Integer> defining : definienda.values()) {
+            size += (3L + defining.size()) * Integer.BYTES;
+        }
+        checkSize(size, location);
+
+        if (location.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(location.toAbsolutePath().getParent());
+        }
+        Path partial = location.resolveSibling("." + location.getFileName() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.get(graph.getClass().getName()));
+            out.writeInt(strings.size());
+            out.writeInt(graphDefinitions.size());
+            out.writeInt(definienda.size());
+            out.writeInt((int) definiendaStart);
+            out.writeInt(graph.getHypernymDepth());
+            out.writeInt(strings.get(graph.getExtraction().name()));
+            out.writeLong(source == null ? -1 : source.size);
+            out.writeLong(source == null ? -1 : source.lastModified);
+
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+
+            long position = definitionsStart + (long) graphDefinitions.size() * Integer.BYTES;
+            for (Definition definition : graphDefinitions) {
+                out.writeInt((int) position);
+                position += definitionSize(definition);
+            }
+            for (Definition definition : graphDefinitions) {
+                out.writeInt(strings.get(definition.getURI()));
+                out.writeInt(definition.getDefinienda().size());
+                for (String definiendum : definition.getDefinienda()) {
+                    out.writeInt(strings.get(definiendum));
+                }
+                out.writeInt(definition.getProperties().size());
+                for (Property property : definition.getProperties()) {
+                    out.writeInt(strings.get(property.getValue()));
+                    out.writeInt(strings.get(property.getRole()));
+                    out.writeInt(strings.get(property.getSubject()));
+                    out.writeInt(property.getDepth());
+                }
+            }
+
+            position += 2L * definienda.size() * Integer.BYTES;
+            for (Map.Entry<String, List<Integer>> definiendum : definienda.entrySet()) {
+                out.writeInt(strings.get(definiendum.getKey()));
+                out.writeInt((int) position);
+                position += (1L + definiendum.getValue().size()) * Integer.BYTES;
+            }
+            for (List<Integer> defining : definienda.values()) {
+                out.writeInt(defining.size());
+                for (int definition : defining) {
+                    out.writeInt(definition);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void number(Map<String, Integer> strings, String string) {
+        strings.putIfAbsent(string, strings.size());
+    }
+
+    private static long definitionSize(Definition definition) {
+        return (3L + definition.getDefinienda().size() + 4L * definition.getProperties().size()) * Integer.BYTES;
+    }
+
+    // Snapshots are mapped as a single buffer, which limits their size
+    private static void checkSize(long size, Path location) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The graph is too large for a snapshot at " + location);
+        }
+    }
+
+    /**
+     * @return name of the class of the graph the snapshot was written from
+     */
+    public String getGraphClass() {
+        return graphClass;
+    }
+
+    /**
+     * @return number of levels of hypernyms the definitions of the snapshot inherit properties from
+     */
+    public int getHypernymDepth() {
+        return hypernymDepth;
+    }
+
+    /**
+     * @return name of the <code>Graph.Extraction</code> that populated the graph the snapshot was written from
+     */
+    public String getExtraction() {
+        return extraction;
+    }
+
+    /**
+     * @return size and modification time of the source of the graph when the snapshot was written
+     */
+    SourceStamp getSource() {
+        return source;
+    }
+
+    /**
+     * Lists the definitions of the snapshot in the order of the graph. A definition is decoded the first time it's
+     * read, and the same instance is returned afterwards.
+     *
+     * @return unmodifiable list of the definitions
+     */
+    public List<Definition> getAllDefinitions() {
+        return new Definitions();
+    }
+
+    /**
+     * Finds all definitions of <code>definiendum</code>, decoding only those.
+     *
+     * @param definiendum term to look up
+     * @return the definitions of <code>definiendum</code> in the order of the graph, empty if it isn't defined
+     */
+    public List<Definition> getDefinitions(String definiendum) {
+        int low = 0;
+        int high = definiendumCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = definiendaStart + 2 * middle * Integer.BYTES;
+            int comparison = string(buffer.getInt(entry)).compareTo(definiendum);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                int list = buffer.getInt(entry + Integer.BYTES);
+                Definition[] defining = new Definition[buffer.getInt(list)];
+                for (int i = 0; i < defining.length; i++) {
+                    defining[i] = definition(buffer.getInt(list + (1 + i) * Integer.BYTES));
+                }
+                return Collections.unmodifiableList(Arrays.asList(defining));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private Definition definition(int index) {
+        Definition definition = definitions.get(index);
+        if (definition == null) {
+            definitions.compareAndSet(index, null, decode(index));
+            definition = definitions.get(index);
+        }
+        return definition;
+    }
+
+    private Definition decode(int index) {
+        int position = buffer.getInt(definitionsStart + index * Integer.BYTES);
+        String uri = string(buffer.getInt(position));
+        String[] definienda = new String[buffer.getInt(position + Integer.BYTES)];
+        position += 2 * Integer.BYTES;
+        for (int i = 0; i < definienda.length; i++, position += Integer.BYTES) {
+            definienda[i] = string(buffer.getInt(position));
+        }
+        int propertyCount = buffer.getInt(position);
+        position += Integer.BYTES;
+        List<Property> properties = new ArrayList<>(propertyCount);
+        Map<Integer, String> decoded = new HashMap<>();
+        for (int i = 0; i < propertyCount; i++, position += 4 * Integer.BYTES) {
+            properties.add(new Property(string(buffer.getInt(position), decoded),
+                    string(buffer.getInt(position + Integer.BYTES), decoded),
+                    string(buffer.getInt(position + 2 * Integer.BYTES), decoded),
+                    buffer.getInt(position + 3 * Integer.BYTES)));
+        }
+        return new Definition(uri, Arrays.asList(definienda), properties);
+    }
+
+    // Roles and subjects repeat within a definition, so they're decoded once
+    private String string(int number, Map<Integer, String> decoded) {
+        return decoded.computeIfAbsent(number, this::string);
+    }
+
+    private String string(int number) {
+        if (number < 0 || number >= stringCount) {
+            throw new IllegalArgumentException("String " + number + " isn't in the snapshot");
+        }
+        int offsets = stringsStart + number * Integer.BYTES;
+        int start = buffer.getInt(offsets);
+        byte[] bytes = new byte[buffer.getInt(offsets + Integer.BYTES) - start];
+        ByteBuffer source = buffer.duplicate();
+        source.position(stringsStart + (stringCount + 1) * Integer.BYTES + start);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private class Definitions extends AbstractList<Definition> implements RandomAccess {
+        @Override
+        public Definition get(int index) {
+            if (index < 0 || index >= definitionCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + definitionCount);
+            }
+            return definition(index);
+        }
+
+        @Override
+        public int size() {
+            return definitionCount;
+        }
+    }
+
+    /**
+     * Size and modification time of the source of a graph, which tell whether the source changed since a snapshot
+     * was written.
+     */
+    static final class SourceStamp {
+        private final long size;
+        private final long lastModified;
+
+        SourceStamp(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SourceStamp)) {
+                return false;
+            }
+            SourceStamp stamp = (SourceStamp) other;
+            return size == stamp.size && lastModified == stamp.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return size + " bytes modified at " + lastModified;
+        }
+    }
+}
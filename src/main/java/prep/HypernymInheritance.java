@@ -0,0 +1,193 @@
+package prep;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Adds to every definition the properties of its hypernyms, of their hypernyms, and so on up to a maximum depth.
+ * <p>
+ * Definitions are processed in topological order, hypernyms before their hyponyms, with Kahn's algorithm. The
+ * properties a definition inherits are then computed from the memoized inherited properties of its direct hypernyms,
+ * rather than by walking up the hierarchy again for every definition. The memo of a definition is dropped once all
+ * of its hyponyms have used it.
+ * <p>
+ * Definitions left over by Kahn's algorithm are in a cycle of hypernyms, or below one. Their hypernyms are searched
+ * breadth first, visiting every definition once, so that inherited properties don't go round the cycle.
+ * <p>
+ * Inherited properties are added after the immediate ones, nearest hypernyms first, each with the depth of the
+ * nearest hypernym it's inherited from. The hypernyms of a definition are the first definitions of the values of its
+ * <code>has_supertype</code> properties.
+ * <p>
+ * At a depth of 1, definitions inherit the way they always have instead: every immediate property of the hypernym
+ * of their first <code>has_supertype</code> property, repeated properties included.
+ */
+class HypernymInheritance {
+    private static final String HAS_SUPERTYPE = "has_supertype";
+
+    private final List<Definition> definitions;
+    private final int maxDepth;
+    // Properties of every definition before inheritance, by position in definitions
+    private final List<List<Property>> immediate;
+    private final int[][] hypernyms;
+    // Position of the hypernym of the first has_supertype property of every definition, -1 if it isn't defined
+    private final int[] firstHypernyms;
+    private final List<List<Integer>> hyponyms;
+
+    /**
+     * @param definitions definitions with their immediate properties
+     * @param lookup      finds the definition of a hypernym, null if it isn't defined
+     * @param maxDepth    number of levels of hypernyms inherited from, at least 1
+     */
+    HypernymInheritance(List<Definition> definitions, Function<String, Definition> lookup, int maxDepth) {
+        this.definitions = definitions;
+        this.maxDepth = maxDepth;
+        int count = definitions.size();
+        Map<Definition, Integer> positions = new IdentityHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            positions.put(definitions.get(i), i);
+        }
+
+        immediate = new ArrayList<>(count);
+        hypernyms = new int[count][];
+        firstHypernyms = new int[count];
+        hyponyms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            immediate.add(new ArrayList<>(definitions.get(i).getProperties()));
+            hyponyms.add(new ArrayList<>(0));
+        }
+        for (int i = 0; i < count; i++) {
+            List<Integer> direct = new ArrayList<>(1);
+            firstHypernyms[i] = -1;
+            List<Property> supertypes = definitions.get(i).getPropertiesWithRole(HAS_SUPERTYPE);
+            for (Property supertype : supertypes) {
+                Integer hypernym = positions.get(lookup.apply(supertype.getValue()));
+                if (supertype == supertypes.get(0) && hypernym != null) {
+                    firstHypernyms[i] = hypernym;
+                }
+                if (hypernym != null && !direct.contains(hypernym)) {
+                    direct.add(hypernym);
+                    hyponyms.get(hypernym).add(i);
+                }
+            }
+            hypernyms[i] = direct.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Adds the inherited properties to every definition.
+     *
+     * @return number of definitions in or below a cycle of hypernyms
+     */
+    int inherit() {
+        if (maxDepth == 1) {
+            inheritFromFirstHypernyms();
+            return 0;
+        }
+        int count = definitions.size();
+        List<Map<Property, Integer>> inherited = new ArrayList<>(count);
+        int[] pendingHypernyms = new int[count];
+        int[] pendingHyponyms = new int[count];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < count; i++) {
+            inherited.add(null);
+            pendingHypernyms[i] = hypernyms[i].length;
+            pendingHyponyms[i] = hyponyms.get(i).size();
+            if (pendingHypernyms[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        boolean[] done = new boolean[count];
+        while (!ready.isEmpty()) {
+            int current = ready.poll();
+            Map<Property, Integer> depths = new LinkedHashMap<>();
+            for (int hypernym : hypernyms[current]) {
+                for (Property property : immediate.get(hypernym)) {
+                    depths.merge(property, 1, Math::min);
+                }
+                for (Map.Entry<Property, Integer> ancestor : inherited.get(hypernym).entrySet()) {
+                    if (ancestor.getValue() < maxDepth) {
+                        depths.merge(ancestor.getKey(), ancestor.getValue() + 1, Math::min);
+                    }
+                }
+                if (--pendingHyponyms[hypernym] == 0) {
+                    inherited.set(hypernym, null);
+                }
+            }
+            addInherited(current, depths);
+            done[current] = true;
+            if (pendingHyponyms[current] > 0) {
+                inherited.set(current, depths);
+            }
+            for (int hyponym : hyponyms.get(current)) {
+                if (--pendingHypernyms[hyponym] == 0) {
+                    ready.add(hyponym);
+                }
+            }
+        }
+
+        int cyclic = 0;
+        for (int i = 0; i < count; i++) {
+            if (!done[i]) {
+                addInherited(i, searchHypernyms(i));
+                cyclic++;
+            }
+        }
+        return cyclic;
+    }
+
+    private void inheritFromFirstHypernyms() {
+        for (int i = 0; i < definitions.size(); i++) {
+            if (firstHypernyms[i] != -1) {
+                List<Property> properties = new ArrayList<>(immediate.get(firstHypernyms[i]).size());
+                for (Property property : immediate.get(firstHypernyms[i])) {
+                    properties.add(new Property(property.getValue(), property.getRole(), property.getSubject(), 1));
+                }
+                definitions.get(i).addProperty(properties);
+            }
+        }
+    }
+
+    // Searches the hypernyms of a definition level by level, visiting each of them once
+    private Map<Property, Integer> searchHypernyms(int definition) {
+        Map<Property, Integer> depths = new LinkedHashMap<>();
+        boolean[] visited = new boolean[definitions.size()];
+        visited[definition] = true;
+        int[] level = {definition};
+        for (int depth = 1; depth <= maxDepth && level.length > 0; depth++) {
+            List<Integer> next = new ArrayList<>();
+            for (int current : level) {
+                for (int hypernym : hypernyms[current]) {
+                    if (!visited[hypernym]) {
+                        visited[hypernym] = true;
+                        next.add(hypernym);
+                        for (Property property : immediate.get(hypernym)) {
+                            depths.putIfAbsent(property, depth);
+                        }
+                    }
+                }
+            }
+            level = next.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return depths;
+    }
+
+    private void addInherited(int definition, Map<Property, Integer> depths) {
+        List<Map.Entry<Property, Integer>> entries = new ArrayList<>(depths.entrySet());
+        // Stable, so properties at the same depth keep the order of the hypernyms they're inherited from
+        entries.sort(Map.Entry.comparingByValue());
+        List<Property> properties = new ArrayList<>(entries.size());
+        for (Map.Entry<Property, Integer> entry : entries) {
+            Property property = entry.getKey();
+            properties.add(new Property(property.getValue(), property.getRole(), property.getSubject(),
+                    entry.getValue()));
+        }
+        definitions.get(definition).addProperty(properties);
+    }
+}
@@ -0,0 +1,227 @@
+package prep;
+
+import edu.stanford.nlp.simple.Document;
+import edu.stanford.nlp.simple.Sentence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lemmatizes text with CoreNLP, remembering the lemmas of recently lemmatized text.
+ * <p>
+ * The cache is bounded by the number of texts it holds. Once it is full, texts that haven't been looked up
+ * since the previous eviction are evicted first, so that frequent texts stay cached.
+ * All methods may be called concurrently, the indexers and classifiers share the instance returned by
+ * <code>getInstance</code>.
+ */
+public class Lemmatizer {
+    // Default number of texts whose lemmas are cached
+    public static final int DEFAULT_CAPACITY = 500_000;
+
+    private static final Lemmatizer INSTANCE = new Lemmatizer(DEFAULT_CAPACITY);
+    // Treats every line as a sentence, so that a batch of texts is lemmatized with a single CoreNLP call
+    private static final Properties BATCH_PROPERTIES = new Properties();
+
+    static {
+        BATCH_PROPERTIES.setProperty("ssplit.eolonly", "true");
+    }
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity number of texts whose lemmas are cached
+     */
+    public Lemmatizer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity has to be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return lemmatizer shared by the whole application
+     */
+    public static Lemmatizer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Lemmatizes <code>text</code> as a single sentence, like <code>new Sentence(text).lemmas()</code>.
+     *
+     * @param text text to lemmatize
+     * @return lemmas of the words of <code>text</code>, empty if <code>text</code> has no words
+     */
+    public List<String> lemmas(String text) {
+        List<String> lemmas = lookup(text);
+        return lemmas == null ? lemmatize(text) : lemmas;
+    }
+
+    /**
+     * Lemmatizes the first word of <code>text</code>, like <code>new Sentence(text).lemma(0)</code>.
+     *
+     * @throws IndexOutOfBoundsException if <code>text</code> has no words
+     */
+    public String lemma(String text) {
+        return lemmas(text).get(0);
+    }
+
+    /**
+     * Lemmatizes each of <code>texts</code> as a single sentence, annotating all texts that aren't cached
+     * with a single CoreNLP call.
+     *
+     * @param texts texts to lemmatize
+     * @return lemmas of each text, see <code>lemmas</code>
+     */
+    public Map<String, List<String>> lemmatizeAll(Collection<String> texts) {
+        Map<String, List<String>> result = new HashMap<>();
+        Set<String> uncached = new LinkedHashSet<>();
+        for (String text : texts) {
+            List<String> lemmas = lookup(text);
+            if (lemmas != null) {
+                result.put(text, lemmas);
+            } else if (text.trim().isEmpty()) {
+                result.put(text, Collections.emptyList());
+            } else {
+                uncached.add(text);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return result;
+        }
+
+        List<String> lines = new ArrayList<>(uncached.size());
+        for (String text : uncached) {
+            lines.add(oneLine(text));
+        }
+        List<Sentence> sentences = new Document(BATCH_PROPERTIES, String.join("\n", lines))
+                .sentences(BATCH_PROPERTIES);
+
+        Iterator<String> iterator = uncached.iterator();
+        if (sentences.size() == uncached.size()) {
+            for (Sentence sentence : sentences) {
+                String text = iterator.next();
+                List<String> lemmas = Collections.unmodifiableList(sentence.lemmas());
+                store(text, lemmas);
+                result.put(text, lemmas);
+            }
+        } else {
+            // A text without any tokens has no sentence, so the sentences can't be matched to the texts
+            while (iterator.hasNext()) {
+                String text = iterator.next();
+                result.put(text, lemmatize(text));
+            }
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return fraction of lookups answered from the cache, 0 if there haven't been any
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lemmatizer: %d cached texts, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                size(), getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+
+    private List<String> lookup(String text) {
+        Entry entry = cache.get(text);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.referenced = true;
+        return entry.lemmas;
+    }
+
+    // Lemmatizes a text that has already missed the cache, and caches its lemmas
+    private List<String> lemmatize(String text) {
+        List<Sentence> sentences = text.trim().isEmpty()
+                ? Collections.emptyList()
+                : new Document(BATCH_PROPERTIES, oneLine(text)).sentences(BATCH_PROPERTIES);
+        // A text without any tokens has no sentence
+        List<String> lemmas = sentences.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(sentences.get(0).lemmas());
+        store(text, lemmas);
+        return lemmas;
+    }
+
+    // Line breaks would split a text into several sentences
+    private static String oneLine(String text) {
+        return text.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private void store(String text, List<String> lemmas) {
+        cache.put(text, new Entry(lemmas));
+        if (cache.size() > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts texts until the cache is below its capacity again, giving texts that have been looked up
+     * since the last eviction a second chance.
+     */
+    private synchronized void evict() {
+        // Leaves some room, so that not every store has to evict
+        int target = capacity - Math.max(1, capacity / 10);
+        for (int pass = 0; pass < 2 && cache.size() > target; pass++) {
+            Iterator<Entry> iterator = cache.values().iterator();
+            while (iterator.hasNext() && cache.size() > target) {
+                Entry entry = iterator.next();
+                if (entry.referenced && pass == 0) {
+                    entry.referenced = false;
+                } else {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final List<String> lemmas;
+        private volatile boolean referenced = false;
+
+        private Entry(List<String> lemmas) {
+            this.lemmas = lemmas;
+        }
+    }
+}
@@ -2,17 +2,31 @@ package prep;
 
 public class Property {
     private final String value, role, subject;
+    // Number of hypernym levels the property is inherited through, 0 for the definition's own properties
+    private final int depth;
+    // Cached like String's, properties are hashed repeatedly while hypernym properties are inherited
+    private int hash;
 
     public Property(String value, String role, String subject){
+        this(value, role, subject, 0);
+    }
+
+    /**
+     * @param depth number of hypernym levels the property is inherited through, which doesn't take part in
+     *              <code>equals</code>
+     */
+    public Property(String value, String role, String subject, int depth){
         this.value = value;
         this.role = role;
         this.subject = subject;
+        this.depth = depth;
     }
 
     public Property(String value, String role){
         this.value = value;
         this.role = role;
         subject = "";
+        depth = 0;
     }
 
 
@@ -28,6 +42,14 @@ public class Property {
         return this.subject;
     }
 
+    /**
+     * @return 0 for a property of the definition itself, otherwise the number of levels of hypernyms between the
+     * definition and the nearest one the property is inherited from
+     */
+    public int getDepth(){
+        return this.depth;
+    }
+
     @Override
     public String toString(){
         return "Property(" + value + ", " + role + ", " + subject + ")";
@@ -39,6 +61,9 @@ public class Property {
     }
     @Override
     public int hashCode(){
-        return this.toString().hashCode();
+        if (hash == 0) {
+            hash = this.toString().hashCode();
+        }
+        return hash;
     }
 }
@@ -0,0 +1,76 @@
+package prep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens the source files of the graphs and indexes, which may be gzip compressed.
+ * <p>
+ * Files are read through a <code>FileChannel</code> with large buffers, and decompressed on the fly if they start
+ * with the gzip magic number, so that multi gigabyte sources don't have to be kept uncompressed on disk.
+ */
+public class SourceFiles {
+    // Size of the buffers between the file, the decompressor and the decoder
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private SourceFiles() {
+    }
+
+    /**
+     * Opens <code>file</code> as a stream of bytes, decompressing it if it's gzip compressed.
+     *
+     * @param file plain or gzip compressed file
+     * @return stream of the uncompressed content
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream newInputStream(Path file) throws IOException {
+        return newInputStream(Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)));
+    }
+
+    /**
+     * Buffers <code>source</code>, decompressing it if it's gzip compressed, for sources that aren't files such as
+     * class path resources. Closing the returned stream closes <code>source</code>.
+     *
+     * @param source plain or gzip compressed stream of bytes
+     * @return stream of the uncompressed content
+     * @throws IOException if the start of <code>source</code> can't be read
+     */
+    public static InputStream newInputStream(InputStream source) throws IOException {
+        InputStream stream = new BufferedInputStream(source, BUFFER_SIZE);
+        try {
+            stream.mark(2);
+            int magic = stream.read() | (stream.read() << 8);
+            stream.reset();
+            return magic == GZIP_MAGIC ? new BufferedInputStream(new GZIPInputStream(stream, BUFFER_SIZE), BUFFER_SIZE)
+                    : stream;
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens <code>file</code> as UTF-8 encoded text, decompressing it if it's gzip compressed.
+     * Malformed input is replaced rather than reported, like <code>FileReader</code> does.
+     *
+     * @param file plain or gzip compressed text file
+     * @return reader of the uncompressed text
+     * @throws IOException if the file can't be opened
+     */
+    public static BufferedReader newReader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(newInputStream(file), StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)), BUFFER_SIZE);
+    }
+}
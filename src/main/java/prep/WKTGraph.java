@@ -1,7 +1,9 @@
 package prep;
 
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDFS;
 
 import java.util.ArrayList;
 
@@ -30,4 +32,13 @@ public class WKTGraph extends Graph {
             }
         }
     }
+
+    @Override
+    protected Definition createDefinition(Triple triple) {
+        if (triple.getSubject().isURI() && triple.getPredicate().equals(RDFS.Nodes.label)
+                && triple.getObject().isLiteral()) {
+            return new Definition(DefinitionCollector.literal(triple.getObject()), triple.getSubject().getURI());
+        }
+        return null;
+    }
 }
@@ -1,7 +1,10 @@
 package prep;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.RDF;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -34,4 +37,13 @@ public class WNGraph extends Graph {
         }
     }
 
+    @Override
+    protected Definition createDefinition(Triple triple) {
+        Node type = triple.getObject();
+        if (triple.getSubject().isURI() && triple.getPredicate().equals(RDF.Nodes.type)
+                && !type.equals(RDF.Nodes.Statement)) {
+            return new Definition(triple.getSubject().getURI());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,67 @@
+package search;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a request has to be answered, shared by all index lookups of the request.
+ * <p>
+ * Lookups that run out of time return what they have found so far and mark the deadline,
+ * so that the request can report its results as partial.
+ */
+public class Deadline {
+    private final long expiresAt;
+    private final boolean limited;
+    private volatile boolean partial = false;
+
+    private Deadline(long expiresAt, boolean limited) {
+        this.expiresAt = expiresAt;
+        this.limited = limited;
+    }
+
+    /**
+     * @param millis time left until the deadline, in milliseconds
+     * @return deadline <code>millis</code> milliseconds from now
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), true);
+    }
+
+    /**
+     * @return deadline that never expires
+     */
+    public static Deadline unlimited() {
+        return new Deadline(0, false);
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public boolean isExpired() {
+        return limited && System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * @return milliseconds left until the deadline, 0 if it has expired, <code>Long.MAX_VALUE</code> if unlimited
+     */
+    public long remainingMillis() {
+        if (!limited) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * Records that a lookup has been cut off by the deadline, so its results are incomplete.
+     */
+    public void markPartial() {
+        partial = true;
+    }
+
+    /**
+     * @return whether any lookup has been cut off by the deadline
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+}
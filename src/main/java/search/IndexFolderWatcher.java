@@ -0,0 +1,66 @@
+package search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Background thread reloading the indexes of a <code>SearcherRegistry</code>
+ * whose directories have been created, replaced or removed inside the index folder.
+ */
+class IndexFolderWatcher extends Thread implements Closeable {
+    private final SearcherRegistry searchers;
+    private final WatchService watchService;
+
+    IndexFolderWatcher(SearcherRegistry searchers, Path indexFolder) throws IOException {
+        super("index-folder-watcher");
+        setDaemon(true);
+        this.searchers = searchers;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        // Renaming a directory over another one is reported as the creation of the new one
+        indexFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events have been lost, so every index might have been replaced
+                        for (String indexName : searchers.getIndexNames()) {
+                            reload(indexName);
+                        }
+                        continue;
+                    }
+                    reload(((Path) event.context()).getFileName().toString());
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The registry has been closed
+        }
+    }
+
+    private void reload(String indexName) {
+        try {
+            searchers.reload(indexName);
+        } catch (IOException e) {
+            System.err.println("Failed to reload index " + indexName);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
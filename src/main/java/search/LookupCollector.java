@@ -0,0 +1,74 @@
+package search;
+
+import indexation.IndexFormat;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EarlyTerminatingSortingCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+
+import java.io.IOException;
+
+/**
+ * Collects the top documents of a lookup of a term.
+ * <p>
+ * Within an index sorted by definiendum the documents are collected in index order, so the documents of
+ * a definiendum are read next to each other, and a segment is no longer searched once enough documents
+ * have been collected from it. Within any other index the documents are collected by score.
+ * <p>
+ * Since the first documents in index order aren't the best scoring ones, collecting in index order is only
+ * suitable for queries whose matches are all equally good, such as <code>IndexFormat.definiendumKeyQuery</code>,
+ * or when any match will do. A term query on the analyzed definienda would otherwise collect definitions of
+ * alphabetically earlier definienda containing the term, e.g. "big dog", instead of those of the term itself.
+ */
+public class LookupCollector implements Collector {
+    private final TopDocsCollector<?> topDocsCollector;
+    private final Collector collector;
+    private final boolean sorted;
+
+    /**
+     * @param reader  reader of the index that is going to be searched
+     * @param numHits maximum number of documents to collect
+     */
+    public LookupCollector(IndexReader reader, int numHits) {
+        sorted = IndexFormat.isSortedByDefiniendum(reader);
+        if (sorted) {
+            Sort sort = IndexFormat.definiendumSort();
+            // Neither scores nor sort values are needed, the documents are only loaded
+            topDocsCollector = TopFieldCollector.create(sort, numHits, false, false, false);
+            collector = new EarlyTerminatingSortingCollector(topDocsCollector, sort, numHits);
+        } else {
+            topDocsCollector = TopScoreDocCollector.create(numHits);
+            collector = topDocsCollector;
+        }
+    }
+
+    /**
+     * @return whether the documents are collected in index order, terminating early
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * @return the documents collected so far, in index order if the index is sorted, by score otherwise
+     */
+    public TopDocs topDocs() {
+        return topDocsCollector.topDocs();
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        return collector.getLeafCollector(context);
+    }
+
+    @Override
+    public boolean needsScores() {
+        return collector.needsScores();
+    }
+}
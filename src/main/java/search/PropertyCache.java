@@ -0,0 +1,336 @@
+package search;
+
+import indexation.IndexFormat;
+import metrics.Metrics;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import prep.Property;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, least recently used cache of the decoded properties of definienda, keyed by index and definiendum.
+ * <p>
+ * The size of the cache is bounded by an estimate of the memory taken up by the cached properties.
+ * Every entry remembers the version of the reader it was loaded from, so entries loaded before an index
+ * has been refreshed are never returned. Definitions within sharded indexes are looked up in the shard
+ * of their definiendum only, and remember the version of that shard.
+ */
+public class PropertyCache {
+    // Maximum number of definitions loaded for a single definiendum
+    public static final int MAX_DEFINITIONS = 50;
+    // Rough estimate of the memory taken up by an entry and a property, excluding their strings
+    private static final long ENTRY_OVERHEAD = 128;
+    private static final long PROPERTY_OVERHEAD = 64;
+
+    private final long maxWeight;
+    private final Metrics metrics;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxWeight approximate number of bytes the cached properties may take up
+     */
+    public PropertyCache(long maxWeight) {
+        this(maxWeight, new Metrics());
+    }
+
+    /**
+     * @param maxWeight approximate number of bytes the cached properties may take up
+     * @param metrics   metrics the time spent searching and loading stored fields on a miss is recorded in
+     */
+    public PropertyCache(long maxWeight, Metrics metrics) {
+        this.maxWeight = maxWeight;
+        this.metrics = metrics;
+        // Access order makes the first entry the least recently used one
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true);
+    }
+
+    /**
+     * Obtains the properties of the definitions of <code>definiendum</code> within <code>indexName</code>,
+     * loading them from <code>searcher</code> if they aren't cached yet.
+     *
+     * @param indexName   name of the index <code>searcher</code> searches
+     * @param searcher    searcher over the index
+     * @param definiendum term whose definitions should be looked up
+     * @return properties of each of the (at most <code>MAX_DEFINITIONS</code>) definitions,
+     * including the definiendum and blind fields, in the order of the search results
+     * @throws IOException if the index can't be searched
+     */
+    public List<List<Property>> get(String indexName, IndexSearcher searcher, String definiendum) throws IOException {
+        return get(indexName, searcher, definiendum, Deadline.unlimited());
+    }
+
+    /**
+     * Obtains the properties of the definitions of <code>definiendum</code> within <code>indexName</code>,
+     * loading them from <code>searcher</code> if they aren't cached yet, unless <code>deadline</code> expires.
+     * Properties that couldn't be loaded completely before the deadline are returned as far as they've been loaded,
+     * but aren't cached, and the deadline is marked as partial.
+     *
+     * @param indexName   name of the index <code>searcher</code> searches
+     * @param searcher    searcher over the index
+     * @param definiendum term whose definitions should be looked up
+     * @param deadline    deadline of the request the definitions are looked up for
+     * @return properties of each of the (at most <code>MAX_DEFINITIONS</code>) definitions,
+     * including the definiendum and blind fields, in the order of the search results,
+     * which is the order of the index if it's sorted by definiendum
+     * @throws IOException if the index can't be searched
+     */
+    public List<List<Property>> get(String indexName, IndexSearcher searcher, String definiendum, Deadline deadline)
+            throws IOException {
+        if (searcher.getIndexReader() instanceof ShardedReader) {
+            // All definitions of the definiendum are held by its shard, so the other shards aren't searched
+            searcher = new IndexSearcher(((ShardedReader) searcher.getIndexReader()).getShardOf(definiendum));
+        }
+        Key key = new Key(indexName, definiendum);
+        long version = getVersion(searcher.getIndexReader());
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                hits.incrementAndGet();
+                return entry.definitions;
+            }
+        }
+        misses.incrementAndGet();
+
+        if (deadline.isExpired()) {
+            deadline.markPartial();
+            return Collections.emptyList();
+        }
+        Loaded loaded = load(indexName, searcher, definiendum, deadline);
+        List<List<Property>> definitions = loaded.definitions;
+        if (!loaded.complete) {
+            deadline.markPartial();
+            return definitions;
+        }
+        Entry entry = new Entry(version, definitions, estimateWeight(key, definitions));
+        synchronized (this) {
+            Entry replaced = entries.put(key, entry);
+            if (replaced != null) {
+                weight -= replaced.weight;
+            }
+            weight += entry.weight;
+            evictEldest();
+        }
+        return definitions;
+    }
+
+    /**
+     * Removes all entries of <code>indexName</code>, e.g. after the index has been refreshed.
+     */
+    public synchronized void invalidate(String indexName) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> current = iterator.next();
+            if (current.getKey().indexName.equals(indexName)) {
+                weight -= current.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private void evictEldest() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        // The most recently added entry is kept, even if it exceeds the maximum weight by itself
+        while (weight > maxWeight && entries.size() > 1) {
+            Entry eldest = iterator.next();
+            weight -= eldest.weight;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Loads the properties of <code>definiendum</code>, as far as possible before <code>deadline</code> expires.
+     */
+    private Loaded load(String indexName, IndexSearcher searcher, String definiendum, Deadline deadline)
+            throws IOException {
+        boolean complete = true;
+        long start = System.nanoTime();
+        IndexReader reader = searcher.getIndexReader();
+        TermQuery query = new TermQuery(new Term("definiendum", definiendum));
+        ScoreDoc[] results;
+        if (IndexFormat.isSortedByDefiniendum(reader)) {
+            // The definitions whose first definiendum is the term are stored next to each other,
+            // so collecting them in index order terminates early
+            LookupCollector exact = new LookupCollector(reader, MAX_DEFINITIONS);
+            complete = search(searcher, IndexFormat.definiendumKeyQuery(definiendum), exact, deadline);
+            results = exact.topDocs().scoreDocs;
+            if (complete && results.length < MAX_DEFINITIONS) {
+                // The remaining definitions mention the term in another definiendum, and are ranked by score
+                TopScoreDocCollector scored = TopScoreDocCollector.create(MAX_DEFINITIONS);
+                complete = search(searcher, query, scored, deadline);
+                results = append(results, scored.topDocs().scoreDocs);
+            }
+        } else {
+            LookupCollector collector = new LookupCollector(reader, MAX_DEFINITIONS);
+            complete = search(searcher, query, collector, deadline);
+            results = collector.topDocs().scoreDocs;
+        }
+        long searched = System.nanoTime();
+        metrics.recordStage(Metrics.SEARCH, indexName, searched - start);
+
+        List<List<Property>> definitions = new ArrayList<>(results.length);
+        for (ScoreDoc result : results) {
+            if (deadline.isExpired()) {
+                complete = false;
+                break;
+            }
+            // Version 2 indexes are decoded from doc values, without loading the stored fields
+            List<Property> properties = IndexFormat.readProperties(searcher.getIndexReader(), result.doc);
+            definitions.add(Collections.unmodifiableList(properties));
+        }
+        metrics.recordStage(Metrics.LOAD, indexName, System.nanoTime() - searched);
+        return new Loaded(Collections.unmodifiableList(definitions), complete);
+    }
+
+    /**
+     * Searches <code>query</code> until <code>deadline</code> expires, keeping the results collected so far.
+     *
+     * @return false if the search was cut off by the deadline
+     */
+    private static boolean search(IndexSearcher searcher, Query query, Collector collector, Deadline deadline)
+            throws IOException {
+        if (!deadline.isLimited()) {
+            searcher.search(query, collector);
+            return true;
+        }
+        TimeLimitingCollector limitedCollector = new TimeLimitingCollector(collector,
+                TimeLimitingCollector.getGlobalCounter(), Math.max(1, deadline.remainingMillis()));
+        try {
+            searcher.search(query, limitedCollector);
+            return true;
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            return false;
+        }
+    }
+
+    // Appends the documents of more that aren't in first yet, up to MAX_DEFINITIONS documents
+    private static ScoreDoc[] append(ScoreDoc[] first, ScoreDoc[] more) {
+        List<ScoreDoc> results = new ArrayList<>(Arrays.asList(first));
+        Set<Integer> collected = new HashSet<>();
+        for (ScoreDoc result : first) {
+            collected.add(result.doc);
+        }
+        for (ScoreDoc result : more) {
+            if (results.size() == MAX_DEFINITIONS) {
+                break;
+            }
+            if (collected.add(result.doc)) {
+                results.add(result);
+            }
+        }
+        return results.toArray(new ScoreDoc[0]);
+    }
+
+    private static long estimateWeight(Key key, List<List<Property>> definitions) {
+        long estimate = ENTRY_OVERHEAD + 2L * (key.indexName.length() + key.definiendum.length());
+        for (List<Property> properties : definitions) {
+            for (Property property : properties) {
+                estimate += PROPERTY_OVERHEAD + 2L * (property.getValue().length() + property.getRole().length());
+            }
+        }
+        return estimate;
+    }
+
+    private static long getVersion(IndexReader reader) {
+        if (reader instanceof DirectoryReader) {
+            return ((DirectoryReader) reader).getVersion();
+        }
+        if (reader instanceof ShardedReader) {
+            return ((ShardedReader) reader).getVersion();
+        }
+        // Readers other than directory readers don't change, so they have a single version
+        return 0;
+    }
+
+    private static class Key {
+        private final String indexName;
+        private final String definiendum;
+
+        private Key(String indexName, String definiendum) {
+            this.indexName = indexName;
+            this.definiendum = definiendum;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return indexName.equals(other.indexName) && definiendum.equals(other.definiendum);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * indexName.hashCode() + definiendum.hashCode();
+        }
+    }
+
+    private static class Loaded {
+        private final List<List<Property>> definitions;
+        // Whether all definitions have been loaded before the deadline
+        private final boolean complete;
+
+        private Loaded(List<List<Property>> definitions, boolean complete) {
+            this.definitions = definitions;
+            this.complete = complete;
+        }
+    }
+
+    private static class Entry {
+        private final long version;
+        private final List<List<Property>> definitions;
+        private final long weight;
+
+        private Entry(long version, List<List<Property>> definitions, long weight) {
+            this.version = version;
+            this.definitions = definitions;
+            this.weight = weight;
+        }
+    }
+}
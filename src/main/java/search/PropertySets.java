@@ -0,0 +1,44 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set operations over lists of properties, e.g. the "value(role)" strings of two terms.
+ * <p>
+ * The properties of the second operand are put in a <code>HashSet</code>, so that each property of the first operand
+ * is tested with a single hash lookup rather than compared to every property of the second operand.
+ * Results keep the order, the duplicates and the instances of the first operand,
+ * just like <code>retainAll</code> and <code>removeAll</code> would.
+ */
+public final class PropertySets {
+
+    private PropertySets() {
+    }
+
+    /**
+     * @return the properties of <code>first</code> that are also contained in <code>second</code>
+     */
+    public static <E> List<E> intersection(List<E> first, List<?> second) {
+        return select(first, new HashSet<>(second), true);
+    }
+
+    /**
+     * @return the properties of <code>first</code> that aren't contained in <code>second</code>
+     */
+    public static <E> List<E> difference(List<E> first, List<?> second) {
+        return select(first, new HashSet<>(second), false);
+    }
+
+    private static <E> List<E> select(List<E> properties, Set<?> members, boolean contained) {
+        List<E> selected = new ArrayList<>(properties.size());
+        for (E property : properties) {
+            if (members.contains(property) == contained) {
+                selected.add(property);
+            }
+        }
+        return selected;
+    }
+}
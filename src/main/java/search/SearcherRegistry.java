@@ -0,0 +1,460 @@
+package search;
+
+import indexation.IndexFormat;
+import metrics.Metrics;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+import prep.Property;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Long-lived registry of <code>IndexSearcher</code>s, one <code>SearcherManager</code> per index.
+ * <p>
+ * Searchers are shared between concurrent requests, so every searcher obtained with <code>acquire</code>
+ * has to be handed back with <code>release</code>, preferably in a finally block.
+ * Calling <code>refresh</code> makes subsequently acquired searchers see the latest commit of each index,
+ * without restarting the server.
+ * <p>
+ * A registry created for an index folder searches every index directory inside the folder, opening each of them
+ * the first time it is searched. Index directories that are replaced as a whole, e.g. by renaming a freshly
+ * built index to the name of the old one, are swapped in by <code>reload</code>, which <code>watch</code> calls
+ * whenever the contents of the folder change.
+ * <p>
+ * The properties of looked up definienda are kept in a <code>PropertyCache</code> shared by all indexes.
+ * <p>
+ * Every shard of a sharded index has a <code>SearcherManager</code> of its own. Searchers acquired for a sharded
+ * index search a <code>ShardedReader</code> over the shards, on the executor set by <code>setShardExecutor</code>.
+ */
+public class SearcherRegistry implements Closeable {
+    // Default bound on the memory taken up by cached properties
+    public static final long DEFAULT_CACHE_WEIGHT = 64L * 1024 * 1024;
+
+    // Directories of all known indexes, whether they have been opened or not
+    private final Map<String, Path> locations;
+    // Indexes that have been opened, with a manager per shard
+    private final Map<String, SearcherManager[]> managers;
+    private final PropertyCache propertyCache;
+    private final Metrics metrics;
+    // Folder searched for indexes that haven't been registered, null if there's none
+    private final Path indexFolder;
+    private IndexFolderWatcher watcher;
+    // Executor on which the shards of sharded indexes are searched in parallel, null to search them sequentially
+    private volatile ExecutorService shardExecutor;
+
+    /**
+     * Creates an empty registry, indexes have to be added with <code>register</code>.
+     */
+    public SearcherRegistry() {
+        this(new Metrics());
+    }
+
+    /**
+     * Creates an empty registry recording the time spent on each index in <code>metrics</code>.
+     *
+     * @param metrics metrics shared by all users of the registry
+     */
+    public SearcherRegistry(Metrics metrics) {
+        this(null, metrics);
+    }
+
+    /**
+     * Creates a registry of all indexes inside <code>indexFolder</code>, which are opened once they're searched.
+     * Indexes added to the folder later on are found the first time they're searched.
+     *
+     * @param metrics     metrics shared by all users of the registry
+     * @param indexFolder folder containing an index directory per index
+     * @throws IOException if the folder can't be listed
+     */
+    public SearcherRegistry(Metrics metrics, Path indexFolder) throws IOException {
+        this(indexFolder, metrics);
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(indexFolder, Files::isDirectory)) {
+            for (Path directory : directories) {
+                String indexName = directory.getFileName().toString();
+                if (isIndex(indexFolder, indexName)) {
+                    locations.put(indexName, directory);
+                }
+            }
+        }
+    }
+
+    private SearcherRegistry(Path indexFolder, Metrics metrics) {
+        this.metrics = metrics;
+        this.indexFolder = indexFolder;
+        locations = new ConcurrentHashMap<>();
+        managers = new ConcurrentHashMap<>();
+        propertyCache = new PropertyCache(DEFAULT_CACHE_WEIGHT, metrics);
+    }
+
+    /**
+     * Opens a <code>SearcherManager</code> for each of the <code>indexNames</code> within the index folder.
+     *
+     * @param indexFolderLocation location of the folder containing the indexes
+     * @param indexNames          names of the index directories inside the index folder
+     * @throws IOException if one of the indexes can't be opened
+     */
+    public SearcherRegistry(String indexFolderLocation, String... indexNames) throws IOException {
+        this(new Metrics(), indexFolderLocation, indexNames);
+    }
+
+    /**
+     * Opens a <code>SearcherManager</code> for each of the <code>indexNames</code> within the index folder.
+     *
+     * @param metrics             metrics shared by all users of the registry
+     * @param indexFolderLocation location of the folder containing the indexes
+     * @param indexNames          names of the index directories inside the index folder
+     * @throws IOException if one of the indexes can't be opened
+     */
+    public SearcherRegistry(Metrics metrics, String indexFolderLocation, String... indexNames) throws IOException {
+        this(metrics);
+        for (String indexName : indexNames) {
+            register(indexName, Paths.get(indexFolderLocation, indexName));
+        }
+    }
+
+    /**
+     * Opens a <code>SearcherManager</code> for the index at <code>location</code>,
+     * unless an index has already been registered under <code>indexName</code>.
+     *
+     * @param indexName name under which the index is searched
+     * @param location  directory of the index
+     * @throws IOException if the index can't be opened
+     */
+    public synchronized void register(String indexName, Path location) throws IOException {
+        if (!managers.containsKey(indexName)) {
+            managers.put(indexName, openManagers(location));
+            locations.put(indexName, location);
+        }
+    }
+
+    /**
+     * Makes searchers acquired afterwards search the shards of sharded indexes in parallel on <code>executor</code>.
+     * The executor shouldn't run tasks that wait for searches themselves, since those could starve the shards.
+     *
+     * @param executor executor the shards are searched on, null to search them on the searching thread
+     */
+    public void setShardExecutor(ExecutorService executor) {
+        this.shardExecutor = executor;
+    }
+
+    /**
+     * Swaps in the current contents of the directory of <code>indexName</code>, after the directory has been
+     * replaced. Requests that have already acquired a searcher keep using the replaced index until they release it,
+     * requests acquiring a searcher afterwards search the new index.
+     * An index whose directory has been removed is dropped from the registry.
+     *
+     * @param indexName name of the index inside the index folder
+     * @throws IOException if the replaced index can't be closed
+     */
+    public void reload(String indexName) throws IOException {
+        SearcherManager[] replaced;
+        synchronized (this) {
+            if (indexFolder == null) {
+                return;
+            }
+            Path location = indexFolder.resolve(indexName);
+            SearcherManager[] replacement = null;
+            if (isIndex(indexFolder, indexName)) {
+                locations.put(indexName, location);
+                // Indexes that haven't been searched yet are left to be opened lazily
+                if (managers.containsKey(indexName)) {
+                    replacement = openManagers(location);
+                }
+            } else {
+                locations.remove(indexName);
+            }
+
+            replaced = replacement == null ? managers.remove(indexName) : managers.put(indexName, replacement);
+            // Readers of different directories may have the same version, so the cached properties are dropped
+            propertyCache.invalidate(indexName);
+        }
+
+        // Searchers acquired from the replaced manager hold a reference to their reader,
+        // so it is only closed once they have all been released
+        if (replaced != null) {
+            for (SearcherManager manager : replaced) {
+                manager.close();
+            }
+        }
+    }
+
+    /**
+     * Reloads indexes whenever a directory inside the index folder is created, replaced or removed,
+     * until the registry is closed.
+     *
+     * @throws IOException if the index folder can't be watched
+     */
+    public synchronized void watch() throws IOException {
+        if (indexFolder == null) {
+            throw new IllegalStateException("Only registries created for an index folder can watch it");
+        }
+        if (watcher == null) {
+            watcher = new IndexFolderWatcher(this, indexFolder);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Obtains a searcher for <code>indexName</code>, which has to be released after use.
+     *
+     * @param indexName name of the index to search
+     * @return searcher over the most recently refreshed reader of the index,
+     * which is a <code>ShardedReader</code> if the index is sharded
+     * @throws IOException if the searcher can't be acquired
+     */
+    public IndexSearcher acquire(String indexName) throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher searcher;
+        while (true) {
+            SearcherManager[] shardManagers = getManagers(indexName);
+            try {
+                searcher = shardManagers.length == 1 ? shardManagers[0].acquire() : acquireShards(shardManagers);
+                break;
+            } catch (AlreadyClosedException e) {
+                // reload closed the managers after they were looked up, the replacement is acquired instead
+                if (managers.get(indexName) == shardManagers) {
+                    throw e;
+                }
+            }
+        }
+        metrics.recordStage(Metrics.ACQUIRE, indexName, System.nanoTime() - start);
+        return searcher;
+    }
+
+    /**
+     * Hands back a searcher obtained by <code>acquire</code>.
+     *
+     * @param indexName name of the index the searcher was acquired for
+     * @param searcher  searcher to release
+     * @throws IOException if the underlying reader fails to close
+     */
+    public void release(String indexName, IndexSearcher searcher) throws IOException {
+        // Same as SearcherManager.release, but also works after the index has been reloaded or removed,
+        // in which case the reader of the replaced index is closed by its last release
+        searcher.getIndexReader().decRef();
+    }
+
+    /**
+     * Acquires a searcher for <code>indexName</code>, applies <code>function</code> to it and releases it.
+     *
+     * @param indexName name of the index to search
+     * @param function  work to perform with the searcher
+     * @param <T>       type of the result of <code>function</code>
+     * @return result of <code>function</code>
+     * @throws IOException if the searcher can't be acquired or <code>function</code> fails
+     */
+    public <T> T withSearcher(String indexName, SearcherFunction<T> function) throws IOException {
+        IndexSearcher searcher = acquire(indexName);
+        try {
+            return function.apply(searcher);
+        } finally {
+            release(indexName, searcher);
+        }
+    }
+
+    /**
+     * Obtains the properties of each definition of <code>definiendum</code>, through the property cache.
+     *
+     * @param indexName   name of the index to search
+     * @param definiendum term whose definitions should be looked up
+     * @return properties of each definition, see <code>PropertyCache.get</code>
+     * @throws IOException if the index can't be searched
+     */
+    public List<List<Property>> getDefinitions(String indexName, String definiendum) throws IOException {
+        return withSearcher(indexName, searcher -> propertyCache.get(indexName, searcher, definiendum));
+    }
+
+    /**
+     * Obtains the properties of each definition of <code>definiendum</code> using an already acquired searcher.
+     *
+     * @param indexName   name of the index <code>searcher</code> was acquired for
+     * @param searcher    searcher acquired for <code>indexName</code>
+     * @param definiendum term whose definitions should be looked up
+     * @return properties of each definition, see <code>PropertyCache.get</code>
+     * @throws IOException if the index can't be searched
+     */
+    public List<List<Property>> getDefinitions(String indexName, IndexSearcher searcher, String definiendum)
+            throws IOException {
+        return propertyCache.get(indexName, searcher, definiendum);
+    }
+
+    /**
+     * Obtains the properties of each definition of <code>definiendum</code> using an already acquired searcher,
+     * as far as they can be loaded before <code>deadline</code>.
+     *
+     * @param indexName   name of the index <code>searcher</code> was acquired for
+     * @param searcher    searcher acquired for <code>indexName</code>
+     * @param definiendum term whose definitions should be looked up
+     * @param deadline    deadline of the request, marked as partial if the lookup is cut off
+     * @return properties of each definition, see <code>PropertyCache.get</code>
+     * @throws IOException if the index can't be searched
+     */
+    public List<List<Property>> getDefinitions(String indexName, IndexSearcher searcher, String definiendum,
+                                               Deadline deadline) throws IOException {
+        return propertyCache.get(indexName, searcher, definiendum, deadline);
+    }
+
+    /**
+     * Reopens the readers of all indexes that have changed on disk since the last refresh
+     * and drops their cached properties. Indexes closed by a concurrent <code>reload</code> are skipped,
+     * their replacements are refreshed by the next call.
+     *
+     * @throws IOException if a reader can't be reopened
+     */
+    public void refresh() throws IOException {
+        // Only indexes that have been opened have to be refreshed
+        for (Map.Entry<String, SearcherManager[]> entry : managers.entrySet()) {
+            boolean refreshed = false;
+            for (SearcherManager manager : entry.getValue()) {
+                try {
+                    if (!manager.isSearcherCurrent()) {
+                        manager.maybeRefresh();
+                        refreshed = true;
+                    }
+                } catch (AlreadyClosedException e) {
+                    break;
+                }
+            }
+            if (refreshed) {
+                propertyCache.invalidate(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return names of all known indexes, in alphabetical order
+     */
+    public SortedSet<String> getIndexNames() {
+        return new TreeSet<>(locations.keySet());
+    }
+
+    /**
+     * @return whether <code>indexName</code> can be searched, looking for it in the index folder if it isn't known
+     */
+    public boolean contains(String indexName) {
+        if (!locations.containsKey(indexName) && indexFolder != null && isIndex(indexFolder, indexName)) {
+            locations.putIfAbsent(indexName, indexFolder.resolve(indexName));
+        }
+        return locations.containsKey(indexName);
+    }
+
+    public PropertyCache getPropertyCache() {
+        return propertyCache;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+        for (SearcherManager[] shardManagers : managers.values()) {
+            for (SearcherManager manager : shardManagers) {
+                manager.close();
+            }
+        }
+    }
+
+    /**
+     * Work performed with an acquired searcher.
+     *
+     * @param <T> type of the result
+     */
+    public interface SearcherFunction<T> {
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    private SearcherManager[] getManagers(String indexName) throws IOException {
+        SearcherManager[] shardManagers = managers.get(indexName);
+        if (shardManagers == null) {
+            shardManagers = open(indexName);
+        }
+        return shardManagers;
+    }
+
+    private synchronized SearcherManager[] open(String indexName) throws IOException {
+        SearcherManager[] shardManagers = managers.get(indexName);
+        if (shardManagers == null) {
+            if (!contains(indexName)) {
+                throw new IllegalArgumentException("Unknown index: " + indexName);
+            }
+            shardManagers = openManagers(locations.get(indexName));
+            managers.put(indexName, shardManagers);
+        }
+        return shardManagers;
+    }
+
+    /**
+     * Opens a manager for the index at <code>location</code>, or one for each of its shards if it's sharded.
+     */
+    private static SearcherManager[] openManagers(Path location) throws IOException {
+        int shards = IndexFormat.countShards(location);
+        if (shards == 0) {
+            return new SearcherManager[]{new SearcherManager(FSDirectory.open(location), null)};
+        }
+        SearcherManager[] shardManagers = new SearcherManager[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            shardManagers[shard] = new SearcherManager(FSDirectory.open(IndexFormat.shardLocation(location, shard)),
+                    null);
+        }
+        return shardManagers;
+    }
+
+    /**
+     * Acquires the current searcher of every shard and combines their readers into a single searcher,
+     * whose reader holds a reference to each shard until it's released.
+     */
+    private IndexSearcher acquireShards(SearcherManager[] shardManagers) throws IOException {
+        IndexSearcher[] acquired = new IndexSearcher[shardManagers.length];
+        try {
+            DirectoryReader[] shards = new DirectoryReader[shardManagers.length];
+            for (int shard = 0; shard < shardManagers.length; shard++) {
+                acquired[shard] = shardManagers[shard].acquire();
+                shards[shard] = (DirectoryReader) acquired[shard].getIndexReader();
+            }
+            return new IndexSearcher(new ShardedReader(shards, false), shardExecutor);
+        } finally {
+            for (int shard = 0; shard < shardManagers.length; shard++) {
+                if (acquired[shard] != null) {
+                    shardManagers[shard].release(acquired[shard]);
+                }
+            }
+        }
+    }
+
+    private static boolean isIndex(Path indexFolder, String indexName) {
+        Path location = indexFolder.resolve(indexName);
+        // Hidden directories are left for indexes that are still being built
+        if (indexName.startsWith(".") || !Files.isDirectory(location)) {
+            return false;
+        }
+        // The first shard of a sharded index stands for the whole index
+        if (IndexFormat.countShards(location) > 0) {
+            location = IndexFormat.shardLocation(location, 0);
+        }
+        try (FSDirectory directory = FSDirectory.open(location)) {
+            return DirectoryReader.indexExists(directory);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
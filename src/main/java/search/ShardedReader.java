@@ -0,0 +1,147 @@
+package search;
+
+import indexation.IndexFormat;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reader over all shards of a sharded index.
+ * <p>
+ * Scans of the whole index, e.g. of the blind field, search every shard through this reader, in parallel
+ * if it's searched by an <code>IndexSearcher</code> with an executor. Lookups of a definiendum only have
+ * to search the shard of the definiendum, which holds all of its definitions.
+ * Definitions with several definienda may be held by several shards. Only the copy in the shard of their first
+ * term is marked as primary, so scans of the whole index should be restricted by <code>primaryOnly</code>, and
+ * statistics taken with <code>numDocs</code> and <code>docFreq</code>, to count every definition once.
+ * An index of a single shard holds a single copy of each definition, which isn't marked.
+ */
+public class ShardedReader extends MultiReader {
+    private final DirectoryReader[] shards;
+    // Whether the shards mark primary copies, false for a single shard, whose documents have no other copy
+    private final boolean marksPrimaryCopies;
+
+    /**
+     * @param shards      readers of the shards, in the order of their numbers
+     * @param closeShards whether the shards are closed along with this reader,
+     *                    otherwise this reader holds a reference to each shard until it is closed
+     * @throws IOException if the shards can't be combined
+     */
+    public ShardedReader(DirectoryReader[] shards, boolean closeShards) throws IOException {
+        super(shards, closeShards);
+        this.shards = shards.clone();
+        marksPrimaryCopies = shards.length > 1;
+    }
+
+    /**
+     * Restricts <code>query</code> to the primary copies of the documents if <code>reader</code> is sharded,
+     * so that documents held by several shards are found once.
+     *
+     * @param reader reader that is going to be searched
+     * @param query  query over the whole index
+     * @return the restricted query, <code>query</code> itself if no document has several copies
+     */
+    public static Query primaryOnly(IndexReader reader, Query query) {
+        if (!marksPrimaryCopies(reader)) {
+            return query;
+        }
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(new TermQuery(IndexFormat.primaryTerm()), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    /**
+     * Counts the documents of an index, counting each document of a sharded index once.
+     *
+     * @param reader reader of the index
+     * @return number of live documents
+     * @throws IOException if the index can't be searched
+     */
+    public static int numDocs(IndexReader reader) throws IOException {
+        if (!marksPrimaryCopies(reader)) {
+            return reader.numDocs();
+        }
+        return new IndexSearcher(reader).count(new TermQuery(IndexFormat.primaryTerm()));
+    }
+
+    /**
+     * Counts the documents containing <code>term</code>, counting each document of a sharded index once.
+     * Unlike <code>IndexReader.docFreq</code>, deleted documents of a sharded index aren't counted.
+     *
+     * @param reader reader of the index
+     * @param term   term to count the documents of
+     * @return number of documents containing <code>term</code>
+     * @throws IOException if the index can't be searched
+     */
+    public static int docFreq(IndexReader reader, Term term) throws IOException {
+        if (!marksPrimaryCopies(reader)) {
+            return reader.docFreq(term);
+        }
+        return new IndexSearcher(reader).count(primaryOnly(reader, new TermQuery(term)));
+    }
+
+    private static boolean marksPrimaryCopies(IndexReader reader) {
+        return reader instanceof ShardedReader && ((ShardedReader) reader).marksPrimaryCopies;
+    }
+
+    /**
+     * Opens the index at <code>location</code>, whether it's sharded or not.
+     *
+     * @return a <code>ShardedReader</code> closing its shards along with it if the index is sharded,
+     * a <code>DirectoryReader</code> otherwise
+     * @throws IOException if the index or one of its shards can't be opened
+     */
+    public static IndexReader open(Path location) throws IOException {
+        int shardCount = IndexFormat.countShards(location);
+        if (shardCount == 0) {
+            return DirectoryReader.open(FSDirectory.open(location));
+        }
+        DirectoryReader[] shards = new DirectoryReader[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                shards[shard] = DirectoryReader.open(FSDirectory.open(IndexFormat.shardLocation(location, shard)));
+            }
+            return new ShardedReader(shards, true);
+        } catch (IOException e) {
+            for (DirectoryReader shard : shards) {
+                if (shard != null) {
+                    shard.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return reader of the shard holding the definitions of <code>definiendum</code>
+     */
+    public DirectoryReader getShardOf(String definiendum) {
+        return shards[IndexFormat.shardOf(definiendum, shards.length)];
+    }
+
+    /**
+     * @return a version combining the versions of all shards, which changes whenever one of the shards changes
+     */
+    public long getVersion() {
+        long version = 0;
+        for (DirectoryReader shard : shards) {
+            version = 31 * version + shard.getVersion();
+        }
+        return version;
+    }
+}
@@ -0,0 +1,59 @@
+package demo;
+
+import metrics.Metrics;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import prep.Property;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiscriminativeFeatureTest {
+    private static DirectoryReader createIndex() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (String definiendum : new String[]{"hawk", "eagle", "sparrow"}) {
+                Document document = new Document();
+                document.add(new TextField("definiendum", definiendum, Field.Store.YES));
+                document.add(new TextField("has_supertype", "bird", Field.Store.YES));
+                if (definiendum.equals("hawk")) {
+                    document.add(new TextField("has_diff_qual", "diurnal", Field.Store.YES));
+                }
+                writer.addDocument(document);
+            }
+        }
+        return DirectoryReader.open(directory);
+    }
+
+    @Test
+    void findsRareFeaturesPivotHasInOtherRoles() throws Exception {
+        List<Property> hawk = Arrays.asList(new Property("hawk", "definiendum"),
+                new Property("bird", "has_supertype"), new Property("diurnal", "has_diff_qual"),
+                new Property("prey", "has_diff_qual"));
+        List<Property> eagle = Arrays.asList(new Property("eagle", "definiendum"),
+                new Property("bird", "has_supertype"), new Property("prey", "has_supertype"));
+
+        try (DirectoryReader reader = createIndex()) {
+            List<DiscriminativeFeature> features = DiscriminativeFeature.find("hawk", "eagle", hawk, eagle,
+                    reader, new StandardAnalyzer(), new Metrics(), "WN");
+
+            assertEquals(2, features.size(), "Shared properties and the definiendum shouldn't be features");
+            assertEquals("diurnal", features.get(0).getFeature(), "Features should keep pivot's order");
+            assertEquals("prey", features.get(1).getFeature(), "A feature in a different role discriminates");
+            assertEquals(Arrays.asList("has_diff_qual"), features.get(1).getRoles(),
+                    "Only the roles comparison lacks should be listed");
+            assertTrue(features.get(1).getIdf() > features.get(0).getIdf(),
+                    "A feature missing from the index should be rarer than one in a document");
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import search.ShardedReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalIndexTest {
+    private static final IndexingOptions INCREMENTAL = new IndexingOptions().setIncremental(true);
+
+    @Test
+    void rewritesOnlyChangedDefinitions() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IncrementalIndex index = IncrementalIndex.open(directory, new IndexingOptions())) {
+            index.update("hawk", document("hawk", "bird"));
+            index.update("eagle", document("eagle", "bird"));
+            index.update("sparrow", document("sparrow", "bird"));
+            index.finish();
+        }
+
+        try (IncrementalIndex index = IncrementalIndex.open(directory, INCREMENTAL)) {
+            index.update("hawk", document("hawk", "bird"));
+            index.update("eagle", document("eagle", "huge bird"));
+            index.update("owl", document("owl", "bird"));
+            index.finish();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(3, reader.numDocs(), "The removed definition should be deleted");
+            assertEquals("bird", find(reader, "hawk").get("supertype"), "Unchanged definitions should be kept");
+            assertEquals("huge bird", find(reader, "eagle").get("supertype"),
+                    "Changed definitions should replace their old document");
+            assertEquals("bird", find(reader, "owl").get("supertype"), "New definitions should be added");
+            assertEquals(0, count(reader, "sparrow"), "Definitions missing from the source should be deleted");
+        }
+    }
+
+    @Test
+    void tellsRepeatedKeysApartByTheirOrder() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IncrementalIndex index = IncrementalIndex.open(directory, INCREMENTAL)) {
+            index.update("hawk", document("hawk", "bird"));
+            index.update("hawk", document("hawk", "person"));
+            index.finish();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2, reader.numDocs(), "Every definition of a repeated definiendum should be indexed");
+        }
+    }
+
+    @Test
+    void replacesIndexesWrittenWithoutIds() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.addDocument(document("sparrow", "bird"));
+        }
+
+        try (IncrementalIndex index = IncrementalIndex.open(directory, INCREMENTAL)) {
+            index.update("hawk", document("hawk", "bird"));
+            index.finish();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(1, reader.numDocs(), "An index without IDs can't be updated, so it should be replaced");
+            assertEquals(1, count(reader, "hawk"), "The new definition should be indexed");
+        }
+    }
+
+    @Test
+    void sortsDocumentsByDefiniendum() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexingOptions sorted = new IndexingOptions().setIncremental(true).setSortedByDefiniendum(true);
+        try (IncrementalIndex index = IncrementalIndex.open(directory, sorted)) {
+            index.update("sparrow", document("sparrow", "bird"));
+            index.update("Hawk", document("Hawk", "bird"));
+            index.update("eagle", document("eagle", "bird"));
+            index.finish();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertTrue(IndexFormat.isSortedByDefiniendum(reader), "The index should be sorted by definiendum");
+            assertEquals(Arrays.asList("eagle", "Hawk", "sparrow"), Arrays.asList(reader.document(0).get("definiendum"),
+                    reader.document(1).get("definiendum"), reader.document(2).get("definiendum")),
+                    "The documents should be ordered by their lower cased definiendum");
+        }
+
+        try (IncrementalIndex index = IncrementalIndex.open(directory, INCREMENTAL)) {
+            index.update("hawk", document("hawk", "bird"));
+            index.finish();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertFalse(IndexFormat.isSortedByDefiniendum(reader), "The sort of an index can't be changed, " +
+                    "so the index should be replaced by an unsorted one");
+            assertEquals(1, reader.numDocs(), "Only the new definition should be indexed");
+        }
+    }
+
+    @Test
+    void movesDefinitionsBetweenShards() throws Exception {
+        Path location = Files.createTempDirectory("hawk-shards");
+        IndexingOptions sharded = new IndexingOptions().setIncremental(true).setShards(4);
+        try (FSDirectory directory = FSDirectory.open(location)) {
+            try (IncrementalIndex index = IncrementalIndex.open(directory, sharded)) {
+                index.update("1", document("hawk", "bird"));
+                index.update("2", document("sparrow", "bird"));
+                index.finish();
+            }
+            assertEquals(1, count(location, "hawk"), "The definition should be written to the shard of hawk");
+
+            try (IncrementalIndex index = IncrementalIndex.open(directory, sharded)) {
+                index.update("1", document("hawk", "bird"));
+                index.update("2", document("eagle", "bird"));
+                index.finish();
+            }
+            assertEquals(1, count(location, "eagle"), "The changed definition should be written to its new shard");
+            assertEquals(0, count(location, "sparrow"), "The changed definition should be removed from its old shard");
+
+            try (IncrementalIndex index = IncrementalIndex.open(directory, INCREMENTAL)) {
+                index.update("1", document("hawk", "bird"));
+                index.finish();
+            }
+            assertEquals(0, IndexFormat.countShards(location), "The shards should be removed along with the sharding");
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(1, reader.numDocs(), "The index should have been rebuilt without shards");
+            }
+        }
+    }
+
+    @Test
+    void countsDefinitionsHeldByManyShardsOnce() throws Exception {
+        Path location = Files.createTempDirectory("hawk-shards");
+        IndexingOptions sharded = new IndexingOptions().setIncremental(true).setShards(8);
+        try (FSDirectory directory = FSDirectory.open(location)) {
+            try (IncrementalIndex index = IncrementalIndex.open(directory, sharded)) {
+                index.update("1", document("hawk eagle sparrow owl falcon", "bird"));
+                index.update("2", document("oak", "tree"));
+                index.finish();
+            }
+        }
+        try (IndexReader reader = ShardedReader.open(location)) {
+            assertTrue(reader.numDocs() > 2, "The definition should be written to the shard of every term");
+            assertEquals(2, new IndexSearcher(reader).count(ShardedReader.primaryOnly(reader,
+                    new MatchAllDocsQuery())), "Scans should only find the primary copy of the definition");
+            assertEquals(2, ShardedReader.numDocs(reader), "Every definition should be counted once");
+            assertEquals(1, ShardedReader.docFreq(reader, new Term("supertype", "bird")),
+                    "The definition should be counted once in the statistics");
+        }
+    }
+
+    private static Document document(String definiendum, String supertype) {
+        Document document = new Document();
+        document.add(new StringField("definiendum", definiendum, Field.Store.YES));
+        document.add(new StringField("supertype", supertype, Field.Store.YES));
+        return document;
+    }
+
+    private static Document find(DirectoryReader reader, String definiendum) throws IOException {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        TopDocs results = searcher.search(new TermQuery(new Term("definiendum", definiendum)), 2);
+        assertEquals(1, results.totalHits, "Expected a single document of " + definiendum);
+        return searcher.doc(results.scoreDocs[0].doc);
+    }
+
+    /**
+     * Counts the definitions of <code>definiendum</code> in its shard, and checks that no other shard holds any.
+     */
+    private static long count(Path location, String definiendum) throws IOException {
+        int shards = IndexFormat.countShards(location);
+        long count = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            try (FSDirectory directory = FSDirectory.open(IndexFormat.shardLocation(location, shard));
+                 DirectoryReader reader = DirectoryReader.open(directory)) {
+                long shardCount = count(reader, definiendum);
+                if (shard != IndexFormat.shardOf(definiendum, shards)) {
+                    assertEquals(0, shardCount, "Only the shard of " + definiendum + " should hold its definitions");
+                }
+                count += shardCount;
+            }
+        }
+        return count;
+    }
+
+    private static long count(DirectoryReader reader, String definiendum) throws IOException {
+        return new IndexSearcher(reader).search(new TermQuery(new Term("definiendum", definiendum)), 2).totalHits;
+    }
+}
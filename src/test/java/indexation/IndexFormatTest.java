@@ -0,0 +1,68 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import prep.Property;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexFormatTest {
+
+    private static String repeat(String text, int times) {
+        StringBuilder repeated = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    @Test
+    void truncatesValuesLongerThanLuceneAccepts() throws Exception {
+        // Two and four byte characters, so that a prefix cut at the limit would split one
+        String value = repeat("é🦅", 10_000);
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.addDocument(IndexFormat.addSortKey(IndexFormat.roleDocument(Collections.singletonList(value),
+                    Collections.singletonList(new Property(value, "differentia_quality")))));
+            writer.addDocument(IndexFormat.blindDocument(Collections.singletonList(value)));
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            List<Property> properties = IndexFormat.readProperties(reader, 0);
+            assertEquals(2, properties.size(), "Oversized values should be kept, truncated");
+            String truncated = properties.get(1).getValue();
+            assertTrue(value.startsWith(truncated), "Values should be truncated to a prefix");
+            assertTrue(truncated.getBytes(StandardCharsets.UTF_8).length <= IndexFormat.MAX_TERM_BYTES,
+                    "Truncated values should fit in a term");
+            assertEquals(truncated, new String(truncated.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                    "No character should be split");
+            assertEquals(1, new IndexSearcher(reader).count(IndexFormat.definiendumKeyQuery(value)),
+                    "The definiendum should be found by its truncated key");
+            assertTrue(value.startsWith(IndexFormat.readBlindValues(reader, 1).get(0)),
+                    "Oversized lemmas should be truncated");
+        }
+    }
+
+    @Test
+    void readsBlindValuesOfVersion2Sorted() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.addDocument(IndexFormat.blindDocument(Arrays.asList("hawk", "bird", "prey", "bird")));
+        }
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(Arrays.asList("bird", "hawk", "prey"), IndexFormat.readBlindValues(reader, 0),
+                    "Version 2 blind values should be read back sorted and without repetitions");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import prep.Property;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexMigrationTest {
+
+    @Test
+    void readsTheSamePropertiesAfterMigrating() throws Exception {
+        RAMDirectory original = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(original, new IndexWriterConfig(new StandardAnalyzer()))) {
+            Document hawk = new Document();
+            hawk.add(new TextField("definiendum", "hawk", Field.Store.YES));
+            hawk.add(new TextField("supertype", "bird of prey", Field.Store.YES));
+            hawk.add(new TextField("differentia_quality", "hooked beak", Field.Store.YES));
+            hawk.add(new TextField("supertype", "bird of prey", Field.Store.YES));
+            writer.addDocument(IncrementalIndex.identify(hawk, "hawk", "42"));
+
+            Document lemmas = new Document();
+            lemmas.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, "hawk", Field.Store.YES));
+            lemmas.add(new TextField(GraphIndexer.BLIND_FIELD_NAME, "bird", Field.Store.YES));
+            writer.addDocument(lemmas);
+        }
+
+        RAMDirectory migrated = new RAMDirectory();
+        assertEquals(2, IndexMigration.migrate(original, migrated, 0, 1), "Every document should be migrated");
+
+        try (DirectoryReader before = DirectoryReader.open(original);
+             DirectoryReader after = DirectoryReader.open(migrated)) {
+            assertEquals(1, IndexFormat.version(before), "Indexes without a recorded version are of version 1");
+            assertEquals(IndexFormat.VERSION, IndexFormat.version(after), "The migrated index should be current");
+            assertFalse(IndexFormat.hasKeywordRoles(before), "Version 1 roles are analyzed");
+            assertTrue(IndexFormat.hasKeywordRoles(after), "Version 2 roles are keywords");
+
+            List<Property> expected = Arrays.asList(new Property("hawk", "definiendum"),
+                    new Property("bird of prey", "supertype"), new Property("hooked beak", "differentia_quality"),
+                    new Property("bird of prey", "supertype"));
+            assertEquals(expected, IndexFormat.readProperties(before, 0), "Stored fields should be read in order");
+            assertEquals(expected, IndexFormat.readProperties(after, 0),
+                    "Doc values should keep the order and duplicates of the properties");
+            assertEquals(Arrays.asList("bird", "hawk"), IndexFormat.readBlindValues(after, 1),
+                    "The lemmas should be read from doc values");
+
+            assertEquals(1, after.docFreq(new Term("supertype", "bird of prey")), "Roles should hold whole values");
+            assertEquals(1, after.docFreq(new Term("definiendum", "hawk")), "Definienda should still be searchable");
+            assertEquals(1, after.docFreq(new Term(GraphIndexer.BLIND_FIELD_NAME, "bird")),
+                    "Lemmas should still be searchable");
+            assertEquals("hawk", after.document(0).get(IncrementalIndex.ID_FIELD_NAME),
+                    "The ID should be kept for incremental updates");
+            assertEquals(null, after.document(0).get("supertype"), "Properties shouldn't be stored anymore");
+        }
+    }
+
+    @Test
+    void marksTheCopiesOfThePrimaryShard() throws Exception {
+        Document hawk = new Document();
+        hawk.add(new TextField("definiendum", "hawk", Field.Store.YES));
+        hawk.add(new TextField("supertype", "bird of prey", Field.Store.YES));
+        RAMDirectory original = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(original, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.addDocument(hawk);
+        }
+
+        int primary = IndexFormat.primaryShardOf(hawk, 2);
+        for (int shard = 0; shard < 2; shard++) {
+            RAMDirectory migrated = new RAMDirectory();
+            IndexMigration.migrate(original, migrated, shard, 2);
+            try (DirectoryReader reader = DirectoryReader.open(migrated)) {
+                assertEquals(shard == primary ? 1 : 0, reader.docFreq(IndexFormat.primaryTerm()),
+                        "Only the copy in the primary shard should be marked");
+            }
+        }
+    }
+}
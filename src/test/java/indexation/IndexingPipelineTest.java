@@ -0,0 +1,142 @@
+package indexation;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexingPipelineTest {
+    private static final IndexingOptions OPTIONS = new IndexingOptions()
+            .setWorkers(4).setQueueCapacity(2).setProgressIntervalSeconds(0);
+
+    @Test
+    void addsDocumentsInTheOrderOfSubmission() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+             IndexingPipeline<Integer> pipeline = new IndexingPipeline<>(writer, OPTIONS, item -> {
+                 // Makes the workers finish out of order
+                 LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(3_000_000));
+                 Document document = new Document();
+                 document.add(new StringField("item", String.valueOf(item), Field.Store.YES));
+                 return Collections.singletonList(document);
+             })) {
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit(i);
+            }
+            assertEquals(100, pipeline.finish());
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(String.valueOf(i), reader.document(i).get("item"),
+                        "Documents should be added in the order their items were submitted");
+            }
+        }
+    }
+
+    @Test
+    void writesEveryViewToItsOwnIndex() throws Exception {
+        RAMDirectory roleDirectory = new RAMDirectory();
+        RAMDirectory blindDirectory = new RAMDirectory();
+        try (IndexWriter roleWriter = new IndexWriter(roleDirectory, new IndexWriterConfig(new StandardAnalyzer()));
+             IndexWriter blindWriter = new IndexWriter(blindDirectory, new IndexWriterConfig(new StandardAnalyzer()));
+             IndexingPipeline<Integer> pipeline = new IndexingPipeline<>(
+                     Arrays.<IndexingPipeline.DocumentWriter>asList(roleWriter::addDocument, blindWriter::addDocument),
+                     OPTIONS, item -> Arrays.asList(
+                     Collections.singletonList(document("role", item)),
+                     Collections.singletonList(document("blind", item))))) {
+            for (int i = 0; i < 50; i++) {
+                pipeline.submit(i);
+            }
+            assertEquals(100, pipeline.finish(), "Documents of both views should be counted");
+        }
+
+        try (DirectoryReader roleReader = DirectoryReader.open(roleDirectory);
+             DirectoryReader blindReader = DirectoryReader.open(blindDirectory)) {
+            assertEquals(50, roleReader.numDocs(), "Every item should have a role document");
+            assertEquals(50, blindReader.numDocs(), "Every item should have a blind document");
+            for (int i = 0; i < 50; i++) {
+                assertEquals("role " + i, roleReader.document(i).get("item"),
+                        "Role documents should only be written to the role index");
+                assertEquals("blind " + i, blindReader.document(i).get("item"),
+                        "Blind documents should only be written to the blind index, in the same order");
+            }
+        }
+    }
+
+    @Test
+    void boundsTheItemsWaitingForASlowItem() throws Exception {
+        CountDownLatch slowItem = new CountDownLatch(1);
+        AtomicInteger built = new AtomicInteger();
+        try (IndexWriter writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(new StandardAnalyzer()));
+             IndexingPipeline<Integer> pipeline = new IndexingPipeline<>(writer, OPTIONS, item -> {
+                 if (item == 0) {
+                     try {
+                         slowItem.await();
+                     } catch (InterruptedException e) {
+                         throw new InterruptedIOException();
+                     }
+                 }
+                 built.incrementAndGet();
+                 return Collections.singletonList(document("role", item));
+             })) {
+            Thread submitter = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        pipeline.submit(i);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            submitter.start();
+            submitter.join(500);
+            assertTrue(submitter.isAlive(), "Items shouldn't be submitted while the first one hasn't been written");
+            assertTrue(built.get() < OPTIONS.getQueueCapacity(),
+                    "No more items than the queue capacity should wait for the first one");
+            slowItem.countDown();
+            submitter.join();
+            assertEquals(20, pipeline.finish(), "Every item should be written once the first one is");
+        }
+    }
+
+    @Test
+    void reportsFailuresOfTheWorkers() throws Exception {
+        try (IndexWriter writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(new StandardAnalyzer()));
+             IndexingPipeline<Integer> pipeline = new IndexingPipeline<>(writer, OPTIONS, item -> {
+                 throw new IOException("Broken definition");
+             })) {
+            assertThrows(IOException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    pipeline.submit(i);
+                }
+                pipeline.finish();
+            }, "A failed worker should fail the whole pipeline");
+        }
+    }
+
+    private static Document document(String view, int item) {
+        Document document = new Document();
+        document.add(new StringField("item", view + " " + item, Field.Store.YES));
+        return document;
+    }
+}
@@ -0,0 +1,68 @@
+package indexation;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VisualGenomeIndexerTest {
+    private static final IndexingOptions OPTIONS = new IndexingOptions().setWorkers(2).setProgressIntervalSeconds(0);
+
+    @Test
+    void indexesEveryObjectOfCompressedAttributes() throws Exception {
+        File source = compressed("[{\"image_id\": 1, \"attributes\": [" +
+                "{\"synsets\": [\"hawk.n.01\"], \"h\": 5, \"object_id\": 7, \"names\": [\"hawks\"], " +
+                "\"attributes\": [\"flying\", \" \"]}, " +
+                "{\"synsets\": [], \"names\": [\"\"]}, " +
+                "{\"synsets\": [\"geese.n.01\"], \"names\": [\"geese\"], \"attributes\": [\"white\"]}]}, " +
+                "{\"image_id\": 2, \"attributes\": []}]");
+
+        RAMDirectory directory = new RAMDirectory();
+        VisualGenomeIndexer.indexGenomeAttributes(source, directory, OPTIONS);
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2, reader.numDocs(), "Objects without names or attributes shouldn't be indexed");
+            assertEquals(Arrays.asList("hawk", "fly"),
+                    Arrays.asList(reader.document(0).getValues(GraphIndexer.BLIND_FIELD_NAME)),
+                    "Names and attributes should be lemmatized in order");
+            assertEquals(Arrays.asList("goose", "white"),
+                    Arrays.asList(reader.document(1).getValues(GraphIndexer.BLIND_FIELD_NAME)),
+                    "The last object should be indexed too");
+        }
+    }
+
+    @Test
+    void indexesThePredicateAndNamesOfRelationships() throws Exception {
+        File source = compressed("[{\"relationships\": [{\"predicate\": \"ON\", " +
+                "\"object\": {\"object_id\": 1, \"name\": \"branches\"}, \"relationship_id\": 3, " +
+                "\"synsets\": [\"along.r.01\"], \"subject\": {\"object_id\": 2, \"names\": [\"hawks\"]}}]}]");
+
+        RAMDirectory directory = new RAMDirectory();
+        VisualGenomeIndexer.indexGenomeRelationships(source, directory, OPTIONS);
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(1, reader.numDocs(), "Every relationship should be indexed");
+            assertEquals("ON", reader.document(0).get("relationship"), "The predicate should be kept as it is");
+            assertEquals(Arrays.asList("branch", "hawk"),
+                    Arrays.asList(reader.document(0).getValues(GraphIndexer.BLIND_FIELD_NAME)),
+                    "The names of the object and subject should be lemmatized");
+        }
+    }
+
+    private static File compressed(String json) throws Exception {
+        File source = File.createTempFile("genome", ".json.gz");
+        source.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(source.toPath()))) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return source;
+    }
+}
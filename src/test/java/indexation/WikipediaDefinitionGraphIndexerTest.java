@@ -0,0 +1,53 @@
+package indexation;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import prep.Property;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WikipediaDefinitionGraphIndexerTest {
+
+    @Test
+    void pairsDefinitionsOfBothSources() throws Exception {
+        File csv = File.createTempFile("wkp", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), ("1;x;hawk;gloss\n2;x;eagle;gloss\n3;x;hawk;gloss\n\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        // The definitions are compressed, and the last one isn't followed by EOS O
+        File fixed = File.createTempFile("wkp", ".txt.gz");
+        fixed.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(fixed.toPath()))) {
+            out.write(("BOS O\nbird supertype\nof O\nprey differentia_quality\nEOS O\n" +
+                    "BOS O\nraptor supertype\nEOS O\n" +
+                    "BOS O\nperson supertype\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        RAMDirectory directory = new RAMDirectory();
+        // Repeated definienda are only told apart when the index can be updated incrementally later on
+        WikipediaDefinitionGraphIndexer.indexDefinitions(csv, fixed, directory,
+                new IndexingOptions().setWorkers(3).setProgressIntervalSeconds(0).setIncremental(true));
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(3, reader.numDocs(), "Every row of the CSV should be indexed");
+            assertEquals(Arrays.asList(new Property("hawk", "definiendum"), new Property("bird", "supertype"),
+                    new Property("of", "O"), new Property("prey", "differentia_quality")),
+                    IndexFormat.readProperties(reader, 0), "The first row should get the first definition");
+            assertEquals(Arrays.asList(new Property("eagle", "definiendum"), new Property("raptor", "supertype")),
+                    IndexFormat.readProperties(reader, 1), "The second row should get the second definition");
+            assertEquals(Arrays.asList(new Property("hawk", "definiendum"), new Property("person", "supertype")),
+                    IndexFormat.readProperties(reader, 2), "The last definition should end with the file");
+            assertEquals("hawk#2", reader.document(2).get(IncrementalIndex.ID_FIELD_NAME),
+                    "Repeated definienda should be told apart by their order");
+        }
+    }
+}
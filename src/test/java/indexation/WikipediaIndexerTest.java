@@ -0,0 +1,79 @@
+package indexation;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WikipediaIndexerTest {
+    private static final String SOURCE = "# comment\n" +
+            "hawk:1\tTARGET\tDT_the_the\tNN_x_Bird\tJJ_y_Diurnal\r\n" +
+            "Ærø:2\tTARGET\tNNP_z_Île-de-França\tnounderscore\t\n" +
+            "\n" +
+            "hawk:1\tTARGET\tNN_x_Prey\rsparrow:3\tTARGET\tNN_x_Finch_like\n" +
+            "eagle:4";
+
+    @Test
+    void parsesChunksLikeASingleThread() throws Exception {
+        File source = File.createTempFile("wiki", ".pos");
+        source.deleteOnExit();
+        Files.write(source.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        RAMDirectory directory = new RAMDirectory();
+        // Chunks of a few bytes end within most lines, and within multi byte characters
+        WikipediaIndexer.indexWikipediaDefinitions(source, directory,
+                new IndexingOptions().setWorkers(3).setChunkSize(5).setProgressIntervalSeconds(0));
+
+        List<List<String>> expected = readSingleThreaded(source);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(expected.size(), reader.numDocs(), "Every definition should be indexed once");
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i),
+                        Arrays.asList(reader.document(i).getValues(GraphIndexer.BLIND_FIELD_NAME)),
+                        "Document " + i + " should be the same as the one of the single threaded parser");
+            }
+        }
+    }
+
+    /**
+     * Parses the source like the single threaded indexer did, skipping empty lines it couldn't parse.
+     */
+    private static List<List<String>> readSingleThreaded(File source) throws IOException {
+        List<List<String>> documents = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+            String currentLine;
+            while ((currentLine = reader.readLine()) != null) {
+                if (currentLine.isEmpty() || currentLine.charAt(0) == '#') {
+                    continue;
+                }
+                String[] properties = currentLine.split("\t");
+                Document currentDocument = new Document();
+                String target = properties[0].substring(0, properties[0].indexOf(':'));
+                currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME, target, Field.Store.YES));
+                for (int i = 2; i < properties.length; i++) {
+                    int propertyInd = StringUtils.ordinalIndexOf(properties[i], "_", 2);
+                    if (propertyInd != -1) {
+                        currentDocument.add(new StringField(GraphIndexer.BLIND_FIELD_NAME,
+                                properties[i].substring(propertyInd + 1).toLowerCase(), Field.Store.YES));
+                    }
+                }
+                documents.add(Arrays.asList(currentDocument.getValues(GraphIndexer.BLIND_FIELD_NAME)));
+            }
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,42 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    private static final long MILLISECOND = 1_000_000L;
+
+    @Test
+    void countsAndSumsRecordedLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2 * MILLISECOND);
+        histogram.record(3 * MILLISECOND);
+
+        assertEquals(2, histogram.getCount(), "Every recording should be counted");
+        assertEquals(5 * MILLISECOND, histogram.getSum(), "The sum should add up the recorded latencies");
+    }
+
+    @Test
+    void estimatesQuantilesWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(MILLISECOND);
+        }
+        histogram.record(1000 * MILLISECOND);
+
+        // Buckets grow by a factor of 1.5, so an estimate is off by at most that factor
+        long median = histogram.getQuantile(0.5);
+        assertTrue(median > MILLISECOND / 1.5 && median <= 1.5 * MILLISECOND,
+                "The median should be close to 1ms, got " + median);
+        long max = histogram.getQuantile(1.0);
+        assertTrue(max > 1000 * MILLISECOND / 1.5 && max <= 1500 * MILLISECOND,
+                "The maximum should be close to 1s, got " + max);
+    }
+
+    @Test
+    void reportsZeroWithoutRecordings() {
+        assertEquals(0, new LatencyHistogram().getQuantile(0.99), "An empty histogram has no latencies");
+    }
+}
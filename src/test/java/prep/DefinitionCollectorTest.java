@@ -0,0 +1,33 @@
+package prep;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefinitionCollectorTest {
+
+    @Test
+    void resolvesPropertyNodesAsSoonAsTheyAreComplete() throws IOException {
+        DefinitionCollector collector = new DefinitionCollector(new WNGraph("tiny_WN_model.rdf")::createDefinition);
+        // Every definition comes before its property nodes, and every property node before its reified object
+        try (InputStream graph = getClass().getClassLoader().getResourceAsStream("tiny_WN_model.rdf")) {
+            RDFDataMgr.parse(collector, graph, Lang.RDFXML);
+        }
+        assertEquals(0, collector.countBuffered(), "No statement of a well ordered stream should stay buffered");
+
+        List<Definition> definitions = collector.resolve();
+        assertEquals(3, definitions.size(), "Every definition should be found");
+        Definition mortarboard = definitions.get(1);
+        assertTrue(mortarboard.getProperties().contains(new Property("square board", "supertype", "hawk")),
+                "Reified values should be resolved along with the property node they're the object of");
+        assertTrue(definitions.get(0).getProperties().contains(new Property("bird", "has_supertype")),
+                "Hypernyms should be added as they arrive");
+    }
+}
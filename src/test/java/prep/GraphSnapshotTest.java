@@ -0,0 +1,126 @@
+package prep;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphSnapshotTest {
+    private static Graph graph;
+
+    @BeforeAll
+    static void populate() {
+        graph = new WNGraph("tiny_WN_model.rdf");
+        graph.populate();
+    }
+
+    @Test
+    void loadsTheDefinitionsOfThePopulatedGraph() throws IOException {
+        Path snapshot = Files.createTempDirectory("hawk-graphs").resolve("WN.snapshot");
+        GraphSnapshot.write(graph, snapshot);
+        Graph loaded = new WNGraph("tiny_WN_model.rdf");
+        loaded.load(snapshot);
+
+        assertTrue(loaded.isPopulated(), "A loaded graph should be populated");
+        List<Definition> expected = graph.getAllDefinitions();
+        assertEquals(expected.size(), loaded.getAllDefinitions().size(), "Every definition should be loaded");
+        for (int i = 0; i < expected.size(); i++) {
+            Definition definition = loaded.getAllDefinitions().get(i);
+            assertEquals(expected.get(i).getURI(), definition.getURI(), "Definitions should keep their order");
+            assertEquals(expected.get(i).getDefinienda(), definition.getDefinienda(),
+                    "The definienda of " + definition.getURI() + " should be loaded");
+            assertEquals(expected.get(i).getProperties(), definition.getProperties(),
+                    "The properties of " + definition.getURI() + " should be loaded, inherited ones included");
+        }
+        assertEquals(2, loaded.getDefinitions("hawk").size(), "Both definitions of hawk should be found");
+        assertSame(loaded.getAllDefinitions().get(0), loaded.getAllDefinitions().get(0),
+                "A definition should only be decoded once");
+        assertEquals(0, loaded.getDefinitions("owl").size(), "Undefined terms shouldn't have definitions");
+    }
+
+    @Test
+    void rejectsSnapshotsOfAnotherVersionOrGraph() throws IOException {
+        Path snapshot = Files.createTempDirectory("hawk-graphs").resolve("WN.snapshot");
+        GraphSnapshot.write(graph, snapshot);
+        assertThrows(IllegalArgumentException.class, () -> new WKTGraph("tiny_WN_model.rdf").load(snapshot),
+                "A snapshot of another graph class shouldn't be loaded");
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(GraphSnapshot.VERSION + 1).flip(),
+                    Integer.BYTES);
+        }
+        assertThrows(IOException.class, () -> new WNGraph("tiny_WN_model.rdf").load(snapshot),
+                "A snapshot of another version shouldn't be loaded");
+
+        // populating from the snapshot falls back to the source and replaces the snapshot
+        Graph repopulated = new WNGraph("tiny_WN_model.rdf");
+        repopulated.populate(snapshot);
+        assertEquals(graph.getAllDefinitions().size(), repopulated.getAllDefinitions().size(),
+                "The graph should be populated from its source");
+        new WNGraph("tiny_WN_model.rdf").load(snapshot);
+    }
+
+    @Test
+    void rebuildsTruncatedSnapshots() throws IOException {
+        Path snapshot = Files.createTempDirectory("hawk-graphs").resolve("WN.snapshot");
+        GraphSnapshot.write(graph, snapshot);
+        long size = Files.size(snapshot);
+        for (long truncated : new long[]{size - Integer.BYTES, size / 2, size / 8}) {
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+                channel.truncate(truncated);
+            }
+            assertThrows(IOException.class, () -> new WNGraph("tiny_WN_model.rdf").load(snapshot),
+                    "A snapshot truncated to " + truncated + " of " + size + " bytes shouldn't be loaded");
+
+            Graph repopulated = new WNGraph("tiny_WN_model.rdf");
+            repopulated.populate(snapshot);
+            assertEquals(size, Files.size(snapshot), "The truncated snapshot should be rebuilt");
+            Graph loaded = new WNGraph("tiny_WN_model.rdf");
+            loaded.load(snapshot);
+            assertEquals(graph.getAllDefinitions().get(0).getProperties(),
+                    loaded.getAllDefinitions().get(0).getProperties(), "The rebuilt snapshot should be readable");
+        }
+    }
+
+    @Test
+    void populatesAgainWhenTheSourceOrExtractionChanges() throws IOException {
+        Path directory = Files.createTempDirectory("hawk-graphs");
+        Path source = directory.resolve("WN.rdf");
+        try (InputStream model = getClass().getClassLoader().getResourceAsStream("tiny_WN_model.rdf")) {
+            Files.copy(model, source);
+        }
+        Path snapshot = directory.resolve("WN.snapshot");
+        new WNGraph(source.toString()).populate(snapshot);
+        new WNGraph(source.toString()).load(snapshot);
+
+        Graph streamed = new WNGraph(source.toString());
+        streamed.setExtraction(Graph.Extraction.STREAM);
+        assertThrows(IllegalArgumentException.class, () -> streamed.load(snapshot),
+                "A snapshot populated by another extraction shouldn't be loaded");
+        streamed.populate(snapshot);
+        streamed.load(snapshot);
+
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() - 60_000));
+        Graph changed = new WNGraph(source.toString());
+        changed.setExtraction(Graph.Extraction.STREAM);
+        assertThrows(IllegalArgumentException.class, () -> changed.load(snapshot),
+                "A snapshot of an older version of the source shouldn't be loaded");
+        changed.populate(snapshot);
+        changed.load(snapshot);
+        assertEquals(graph.getAllDefinitions().size(), changed.getAllDefinitions().size(),
+                "The graph should be populated from its changed source");
+    }
+}
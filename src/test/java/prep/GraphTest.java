@@ -0,0 +1,104 @@
+package prep;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphTest {
+    private static Graph graph;
+
+    @BeforeAll
+    static void populate() {
+        graph = new WNGraph("tiny_WN_model.rdf");
+        graph.populate();
+    }
+
+    @Test
+    void findsEveryDefinitionOfAnAmbiguousTerm() {
+        List<Definition> hawks = graph.getDefinitions("hawk");
+        assertEquals(2, hawks.size(), "Both definitions of hawk should be found");
+        assertTrue(hawks.get(0).getDefinienda().contains("hawk") && hawks.get(1).getDefinienda().contains("hawk"),
+                "Only definitions of hawk should be found");
+        assertEquals(1, graph.getDefinitions("bird of prey").size(), "Every definiendum should be indexed");
+        assertEquals(0, graph.getDefinitions("owl").size(), "Undefined terms shouldn't have definitions");
+    }
+
+    @Test
+    void findsTheFirstDefinition() {
+        assertEquals(graph.getDefinitions("hawk").get(0), graph.getDefinition("hawk"),
+                "The first definition in the graph should be returned");
+        assertNull(graph.getDefinition("owl"), "Undefined terms shouldn't have a definition");
+    }
+
+    @Test
+    void inheritsThePropertiesOfTheHypernym() {
+        Definition hawk = graph.getDefinition("bird of prey");
+        assertTrue(hawk.getProperties().contains(new Property("feathers", "differentia_quality", "birds")),
+                "The properties of bird should be added to hawk");
+    }
+
+    @Test
+    void extractsTheSamePropertiesWithEitherExtraction() {
+        Graph queried = new WNGraph("tiny_WN_model.rdf");
+        queried.setExtraction(Graph.Extraction.QUERIES);
+        queried.populate();
+
+        assertEquals(queried.getAllDefinitions().size(), graph.getAllDefinitions().size());
+        for (int i = 0; i < graph.getAllDefinitions().size(); i++) {
+            Definition scanned = graph.getAllDefinitions().get(i);
+            assertEquals(queried.getAllDefinitions().get(i).getProperties(), scanned.getProperties(),
+                    "Both extractions should find the same properties of " + scanned.getURI());
+        }
+        assertTrue(graph.getDefinition("mortarboard").getProperties()
+                        .contains(new Property("square board", "supertype", "hawk")),
+                "Reified values should be combined with the subject they describe");
+    }
+
+    @Test
+    void streamsTheSamePropertiesAsTheModel() throws IOException {
+        Graph streamed = new WNGraph("tiny_WN_model.rdf");
+        streamed.setExtraction(Graph.Extraction.STREAM);
+        streamed.populate();
+        assertSameDefinitions(graph, streamed);
+
+        // the same graph as gzip compressed N-Triples in the file system
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "tiny_WN_model.rdf");
+        Path triples = Files.createTempDirectory("hawk-graphs").resolve("tiny_WN_model.nt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(triples))) {
+            RDFDataMgr.write(out, model, Lang.NTRIPLES);
+        }
+        Graph compressed = new WNGraph(triples.toString());
+        compressed.setExtraction(Graph.Extraction.STREAM);
+        compressed.populate();
+        assertSameDefinitions(graph, compressed);
+    }
+
+    private static void assertSameDefinitions(Graph expected, Graph actual) {
+        assertEquals(expected.getAllDefinitions().size(), actual.getAllDefinitions().size(),
+                "The same definitions should be found");
+        for (Definition definition : expected.getAllDefinitions()) {
+            Definition found = actual.getAllDefinitions().stream()
+                    .filter(candidate -> candidate.getURI().equals(definition.getURI()))
+                    .findFirst().orElse(null);
+            assertTrue(found != null, definition.getURI() + " should be found");
+            assertEquals(new HashSet<>(definition.getProperties()), new HashSet<>(found.getProperties()),
+                    "The same properties of " + definition.getURI() + " should be found");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package prep;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class HypernymInheritanceTest {
+
+    private static Graph populate(int hypernymDepth) {
+        Graph graph = new WNGraph("tiny_WN_hierarchy.rdf");
+        graph.setHypernymDepth(hypernymDepth);
+        graph.populate();
+        return graph;
+    }
+
+    // Depth of the property of definiendum with value, -1 if it has no such property
+    private static int depth(Graph graph, String definiendum, String value) {
+        for (Property property : graph.getDefinition(definiendum).getProperties()) {
+            if (property.getValue().equals(value)) {
+                return property.getDepth();
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    void inheritsFromTheFirstHypernymByDefault() {
+        Graph graph = populate(1);
+        assertEquals(0, depth(graph, "sparrow", "small"), "Immediate properties shouldn't be inherited");
+        assertEquals(1, depth(graph, "sparrow", "sings"), "The properties of the hypernym should be inherited");
+        assertEquals(-1, depth(graph, "sparrow", "feathers"), "Only one level of hypernyms should be inherited");
+
+        Definition hawk = graph.getDefinition("hawk");
+        String firstHypernym = hawk.getPropertiesWithRole("has_supertype").get(0).getValue();
+        List<Property> expected = graph.getDefinition(firstHypernym).getProperties().stream()
+                .filter(property -> property.getDepth() == 0).collect(Collectors.toList());
+        List<Property> inherited = hawk.getProperties().stream()
+                .filter(property -> property.getDepth() == 1).collect(Collectors.toList());
+        assertEquals(expected, inherited, "Only the properties of the first hypernym should be inherited");
+    }
+
+    @Test
+    void inheritsFromEveryHypernymBeyondTheFirstLevel() {
+        Graph graph = populate(2);
+        assertEquals(1, depth(graph, "hawk", "feathers"), "Every hypernym should be inherited from");
+        assertEquals(1, depth(graph, "hawk", "hunts"), "Every hypernym should be inherited from");
+    }
+
+    @Test
+    void inheritsUpToTheDepth() {
+        Graph graph = populate(2);
+        assertEquals(2, depth(graph, "sparrow", "feathers"), "The hypernym of the hypernym should be inherited");
+        assertEquals(-1, depth(graph, "sparrow", "alive"), "Hypernyms beyond the depth shouldn't be inherited");
+
+        Graph none = populate(0);
+        assertEquals(-1, depth(none, "sparrow", "sings"), "Nothing should be inherited at depth 0");
+    }
+
+    @Test
+    void inheritsFromAllAncestorsNearestFirst() {
+        Graph graph = populate(Graph.ALL_HYPERNYMS);
+        assertEquals(3, depth(graph, "sparrow", "alive"), "All ancestors should be inherited");
+        assertEquals(2, depth(graph, "hawk", "alive"), "Ancestors should be inherited through every hypernym");
+        List<Integer> depths = graph.getDefinition("sparrow").getProperties().stream()
+                .map(Property::getDepth).collect(Collectors.toList());
+        assertEquals(depths.stream().sorted().collect(Collectors.toList()), depths,
+                "Properties of nearer hypernyms should come first");
+        assertEquals(new Property("alive", "differentia_quality", "animal"),
+                new Property("alive", "differentia_quality", "animal", 3),
+                "The depth shouldn't take part in equality");
+    }
+
+    @Test
+    void inheritsOnceAroundCyclesOfHypernyms() {
+        Graph graph = populate(Graph.ALL_HYPERNYMS);
+        assertEquals(1, depth(graph, "chicken", "shell"), "Definitions in a cycle should inherit from each other");
+        List<Property> chicken = graph.getDefinition("chicken").getPropertiesWithRole("differentia_quality");
+        assertEquals(2, chicken.size(), "A definition shouldn't inherit its own properties around the cycle");
+        assertEquals(1, depth(graph, "omelette", "shell"), "Definitions below a cycle should inherit from it");
+        assertEquals(2, depth(graph, "omelette", "lays eggs"), "Definitions below a cycle should inherit from it");
+        assertFalse(graph.getDefinition("animal").getProperties().stream().anyMatch(p -> p.getDepth() > 0),
+                "Definitions without hypernyms shouldn't inherit");
+    }
+}
@@ -0,0 +1,65 @@
+package prep;
+
+import edu.stanford.nlp.simple.Sentence;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LemmatizerTest {
+
+    @Test
+    void batchesLemmatizeLikeSingleSentences() {
+        Lemmatizer lemmatizer = new Lemmatizer(100);
+        List<String> texts = Arrays.asList("running dogs", "The geese were flying. Yes they were", "", "bigger\nhouses");
+        Map<String, List<String>> lemmas = lemmatizer.lemmatizeAll(texts);
+
+        assertEquals(new Sentence("running dogs").lemmas(), lemmas.get("running dogs"),
+                "A batch should lemmatize a text like a single sentence");
+        assertEquals(new Sentence("The geese were flying. Yes they were").lemmas(),
+                lemmas.get("The geese were flying. Yes they were"),
+                "Texts with several sentences should stay a single sentence");
+        assertEquals(new Sentence("bigger houses").lemmas(), lemmas.get("bigger\nhouses"),
+                "Line breaks shouldn't split a text");
+        assertEquals(Collections.emptyList(), lemmas.get(""), "Blank texts have no lemmas");
+    }
+
+    @Test
+    void answersRepeatedTextsFromTheCache() {
+        Lemmatizer lemmatizer = new Lemmatizer(100);
+        assertEquals("dog", lemmatizer.lemma("dogs"), "The first word should be lemmatized");
+        lemmatizer.lemma("dogs");
+        lemmatizer.lemmatizeAll(Arrays.asList("dogs", "cats"));
+
+        assertEquals(2, lemmatizer.getHits(), "Repeated texts should be found in the cache");
+        assertEquals(2, lemmatizer.getMisses(), "Every new text should miss the cache once");
+        assertEquals(0.5, lemmatizer.getHitRate(), 1e-9, "Half of the lookups were hits");
+    }
+
+    @Test
+    void countsTextsWithoutTokensAsASingleMiss() {
+        Lemmatizer lemmatizer = new Lemmatizer(100);
+        // The tokenizer drops the only character of the second text, so the batch has fewer sentences than texts
+        Map<String, List<String>> lemmas = lemmatizer.lemmatizeAll(Arrays.asList("dogs", "\u200B"));
+
+        assertEquals(Collections.singletonList("dog"), lemmas.get("dogs"), "The other texts should be lemmatized");
+        assertEquals(Collections.emptyList(), lemmas.get("\u200B"), "A text without tokens has no lemmas");
+        assertEquals(2, lemmatizer.getMisses(), "Every new text should miss the cache once");
+    }
+
+    @Test
+    void staysWithinItsCapacity() {
+        Lemmatizer lemmatizer = new Lemmatizer(10);
+        for (int i = 0; i < 50; i++) {
+            lemmatizer.lemmas("dog" + i);
+        }
+
+        assertTrue(lemmatizer.size() <= 10, "The cache shouldn't grow past its capacity, got " + lemmatizer.size());
+        assertEquals(50 - lemmatizer.size(), lemmatizer.getEvictions(), "Every text not cached should be evicted");
+    }
+}
@@ -0,0 +1,159 @@
+package search;
+
+import indexation.IndexFormat;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import prep.Property;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PropertyCacheTest {
+    private RAMDirectory directory;
+    private IndexWriter writer;
+
+    private void addDefinition(String definiendum, String role, String value) throws Exception {
+        Document document = new Document();
+        document.add(new TextField("definiendum", definiendum, Field.Store.YES));
+        document.add(new TextField(role, value, Field.Store.YES));
+        writer.addDocument(document);
+        writer.commit();
+    }
+
+    @BeforeEach
+    void createIndex() throws Exception {
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        addDefinition("hawk", "has_supertype", "bird");
+        addDefinition("eagle", "has_supertype", "bird");
+    }
+
+    @Test
+    void decodesAndReusesProperties() throws Exception {
+        PropertyCache cache = new PropertyCache(1024 * 1024);
+        IndexSearcher searcher = new IndexSearcher(DirectoryReader.open(directory));
+
+        List<List<Property>> hawk = cache.get("WN", searcher, "hawk");
+        assertEquals(1, hawk.size(), "hawk should have a single definition");
+        assertEquals(new Property("bird", "has_supertype"), hawk.get(0).get(1),
+                "Stored fields should be decoded to properties");
+        assertSame(hawk, cache.get("WN", searcher, "hawk"), "Repeated lookups should be served from the cache");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void ignoresEntriesOfOlderReaders() throws Exception {
+        PropertyCache cache = new PropertyCache(1024 * 1024);
+        DirectoryReader reader = DirectoryReader.open(directory);
+        cache.get("WN", new IndexSearcher(reader), "hawk");
+
+        addDefinition("hawk", "has_diff_qual", "diurnal");
+        DirectoryReader refreshed = DirectoryReader.openIfChanged(reader);
+        assertEquals(2, cache.get("WN", new IndexSearcher(refreshed), "hawk").size(),
+                "Entries loaded from an older reader generation should not be returned");
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() throws Exception {
+        // Leaves room for a single entry
+        PropertyCache cache = new PropertyCache(300);
+        IndexSearcher searcher = new IndexSearcher(DirectoryReader.open(directory));
+
+        cache.get("WN", searcher, "hawk");
+        cache.get("WN", searcher, "eagle");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictions());
+        cache.get("WN", searcher, "eagle");
+        assertEquals(1, cache.getHits(), "The most recently used entry should have been kept");
+    }
+
+    @Test
+    void doesNotCachePropertiesCutOffByTheDeadline() throws Exception {
+        PropertyCache cache = new PropertyCache(1024 * 1024);
+        IndexSearcher searcher = new IndexSearcher(DirectoryReader.open(directory));
+
+        Deadline expired = Deadline.after(0);
+        assertEquals(0, cache.get("WN", searcher, "hawk", expired).size(),
+                "Nothing should be loaded after the deadline");
+        assertTrue(expired.isPartial(), "The deadline should be marked as partial");
+
+        Deadline unlimited = Deadline.unlimited();
+        assertEquals(1, cache.get("WN", searcher, "hawk", unlimited).size(),
+                "Partial results should not have been cached");
+        assertFalse(unlimited.isPartial());
+    }
+
+    @Test
+    void findsDefinitionsWithinIndexesSortedByDefiniendum() throws Exception {
+        RAMDirectory sortedDirectory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setIndexSort(IndexFormat.definiendumSort());
+        try (IndexWriter sortedWriter = new IndexWriter(sortedDirectory, config)) {
+            // Every commit writes a segment of its own, so that each segment terminates early
+            for (String supertype : new String[]{"bird", "raptor", "animal"}) {
+                for (String definiendum : new String[]{"sparrow", "hawk", "eagle"}) {
+                    Document document = new Document();
+                    document.add(new TextField("definiendum", definiendum, Field.Store.YES));
+                    document.add(new TextField("has_supertype", supertype, Field.Store.YES));
+                    document.add(new SortedDocValuesField(IndexFormat.SORT_KEY_FIELD_NAME, new BytesRef(definiendum)));
+                    sortedWriter.addDocument(document);
+                }
+                sortedWriter.commit();
+            }
+        }
+
+        DirectoryReader reader = DirectoryReader.open(sortedDirectory);
+        assertTrue(IndexFormat.isSortedByDefiniendum(reader), "Every segment should be sorted");
+        List<List<Property>> hawk = new PropertyCache(1024 * 1024).get("WN", new IndexSearcher(reader), "hawk");
+        assertEquals(3, hawk.size(), "The definitions of every segment should be found");
+        for (List<Property> definition : hawk) {
+            assertEquals(new Property("hawk", "definiendum"), definition.get(0),
+                    "Only definitions of hawk should be collected");
+        }
+    }
+
+    @Test
+    void prefersTheTermsOwnDefinitionsWithinSortedIndexes() throws Exception {
+        RAMDirectory sortedDirectory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setIndexSort(IndexFormat.definiendumSort());
+        try (IndexWriter sortedWriter = new IndexWriter(sortedDirectory, config)) {
+            // More definienda containing dog than are loaded, all sorted before dog itself
+            List<String> definienda = new ArrayList<>();
+            for (int i = 0; i < PropertyCache.MAX_DEFINITIONS + 10; i++) {
+                definienda.add("a dog " + i);
+            }
+            definienda.add("dog");
+            definienda.add("dog");
+            for (String definiendum : definienda) {
+                Document document = new Document();
+                document.add(new TextField("definiendum", definiendum, Field.Store.YES));
+                sortedWriter.addDocument(IndexFormat.addSortKey(document));
+            }
+        }
+
+        DirectoryReader reader = DirectoryReader.open(sortedDirectory);
+        List<List<Property>> dog = new PropertyCache(1024 * 1024).get("WN", new IndexSearcher(reader), "dog");
+        assertEquals(PropertyCache.MAX_DEFINITIONS, dog.size(), "As many definitions as allowed should be loaded");
+        assertEquals(new Property("dog", "definiendum"), dog.get(0).get(0), "Definitions of dog should come first");
+        assertEquals(new Property("dog", "definiendum"), dog.get(1).get(0), "Definitions of dog should come first");
+    }
+}
@@ -0,0 +1,38 @@
+package search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PropertySetsTest {
+    private final List<String> pivot = Arrays.asList("bird(has_supertype)", "prey(has_diff_qual)",
+            "bird(has_supertype)", "hook(has_quality)");
+    private final List<String> comparison = Arrays.asList("small(has_diff_qual)", "bird(has_supertype)");
+
+    @Test
+    void intersectionKeepsTheOrderAndDuplicatesOfTheFirstOperand() {
+        assertEquals(Arrays.asList("bird(has_supertype)", "bird(has_supertype)"),
+                PropertySets.intersection(pivot, comparison), "Should behave like retainAll");
+        assertEquals(Arrays.asList("bird(has_supertype)"),
+                PropertySets.intersection(comparison, pivot), "Should behave like retainAll");
+    }
+
+    @Test
+    void differenceKeepsTheOrderAndDuplicatesOfTheFirstOperand() {
+        assertEquals(Arrays.asList("prey(has_diff_qual)", "hook(has_quality)"),
+                PropertySets.difference(pivot, comparison), "Should behave like removeAll");
+        assertEquals(Arrays.asList("small(has_diff_qual)"),
+                PropertySets.difference(comparison, pivot), "Should behave like removeAll");
+    }
+
+    @Test
+    void resultsContainTheInstancesOfTheFirstOperand() {
+        String property = new String("bird(has_supertype)");
+        List<String> result = PropertySets.intersection(Arrays.asList(property), comparison);
+        assertSame(property, result.get(0), "Equal properties of the second operand shouldn't be returned");
+    }
+}
@@ -0,0 +1,129 @@
+package search;
+
+import indexation.IndexFormat;
+import metrics.Metrics;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearcherRegistryTest {
+
+    private static void addDefinition(IndexWriter writer, String definiendum) throws Exception {
+        Document document = new Document();
+        document.add(new TextField("definiendum", definiendum, Field.Store.YES));
+        writer.addDocument(document);
+        writer.commit();
+    }
+
+    @Test
+    void sharesSearchersAndRefreshes() throws Exception {
+        Path indexFolder = Files.createTempDirectory("hawk-indexes");
+        IndexWriter writer = new IndexWriter(FSDirectory.open(indexFolder.resolve("WN")),
+                new IndexWriterConfig(new StandardAnalyzer()));
+        addDefinition(writer, "hawk");
+
+        try (SearcherRegistry searchers = new SearcherRegistry(indexFolder.toString(), "WN")) {
+            IndexSearcher first = searchers.acquire("WN");
+            IndexSearcher second = searchers.acquire("WN");
+            assertSame(first, second, "Concurrent requests should share the same searcher");
+            assertEquals(1, first.getIndexReader().numDocs());
+            searchers.release("WN", first);
+            searchers.release("WN", second);
+
+            addDefinition(writer, "eagle");
+            searchers.refresh();
+
+            IndexSearcher refreshed = searchers.acquire("WN");
+            assertEquals(2, refreshed.getIndexReader().numDocs(), "Refresh should expose the latest commit");
+            searchers.release("WN", refreshed);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void discoversAndSwapsReplacedIndexes() throws Exception {
+        Path indexFolder = Files.createTempDirectory("hawk-indexes");
+        try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexFolder.resolve("WN")),
+                new IndexWriterConfig(new StandardAnalyzer()))) {
+            addDefinition(writer, "hawk");
+        }
+        // Not an index, so it can't be searched
+        Files.createDirectory(indexFolder.resolve("empty"));
+
+        try (SearcherRegistry searchers = new SearcherRegistry(new Metrics(), indexFolder)) {
+            assertEquals(Collections.singleton("WN"), searchers.getIndexNames(), "Only indexes should be found");
+            IndexSearcher old = searchers.acquire("WN");
+
+            // Replaces the index with one built next to it
+            try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexFolder.resolve(".WN-new")),
+                    new IndexWriterConfig(new StandardAnalyzer()))) {
+                addDefinition(writer, "hawk");
+                addDefinition(writer, "eagle");
+            }
+            Files.move(indexFolder.resolve("WN"), indexFolder.resolve(".WN-old"));
+            Files.move(indexFolder.resolve(".WN-new"), indexFolder.resolve("WN"));
+            searchers.reload("WN");
+
+            IndexSearcher replacement = searchers.acquire("WN");
+            assertEquals(2, replacement.getIndexReader().numDocs(), "Reload should swap in the new index");
+            assertEquals(1, old.getIndexReader().numDocs(), "Acquired searchers should keep working");
+            searchers.release("WN", old);
+            searchers.release("WN", replacement);
+        }
+    }
+
+    @Test
+    void routesLookupsWithinShardedIndexes() throws Exception {
+        Path indexFolder = Files.createTempDirectory("hawk-indexes");
+        String[] definienda = {"hawk", "eagle", "sparrow", "owl", "falcon"};
+        IndexWriter[] writers = new IndexWriter[3];
+        for (int shard = 0; shard < writers.length; shard++) {
+            writers[shard] = new IndexWriter(FSDirectory.open(IndexFormat.shardLocation(indexFolder.resolve("WN"),
+                    shard)), new IndexWriterConfig(new StandardAnalyzer()));
+        }
+        for (String definiendum : definienda) {
+            addDefinition(writers[IndexFormat.shardOf(definiendum, writers.length)], definiendum);
+        }
+        for (IndexWriter writer : writers) {
+            writer.commit();
+            writer.close();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (SearcherRegistry searchers = new SearcherRegistry(new Metrics(), indexFolder)) {
+            searchers.setShardExecutor(executor);
+            assertEquals(Collections.singleton("WN"), searchers.getIndexNames(), "A sharded index is a single index");
+
+            IndexSearcher searcher = searchers.acquire("WN");
+            assertTrue(searcher.getIndexReader() instanceof ShardedReader, "All shards should be searched together");
+            assertEquals(definienda.length, searcher.search(new MatchAllDocsQuery(), 10).totalHits,
+                    "Searching the index should search every shard");
+            for (String definiendum : definienda) {
+                assertEquals(1, searchers.getDefinitions("WN", searcher, definiendum).size(),
+                        "Lookups should be routed to the shard of " + definiendum);
+            }
+            searchers.release("WN", searcher);
+            assertEquals(0, searcher.getIndexReader().getRefCount(), "Releasing should close the combined reader");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}